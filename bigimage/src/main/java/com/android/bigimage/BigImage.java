@@ -16,26 +16,36 @@
 package com.android.bigimage;
 
 import android.content.Context;
-import android.graphics.Bitmap.Config;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapFactory.Options;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.RectF;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.support.annotation.Nullable;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.util.Log;
 import android.view.GestureDetector;
 import android.view.GestureDetector.OnGestureListener;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.View.OnTouchListener;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import com.android.imagemap.core.tiles.TilePyramid;
+import com.android.imagemap.core.tiles.TileStore;
+import com.android.imagemap.core.tiles.TileStores;
+
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -50,6 +60,11 @@ public class BigImage extends android.support.v7.widget.AppCompatImageView imple
         OnTouchListener {
 
     private static final Map<String, SoftReference<Drawable>> DRAWABLE_CACHE = new HashMap<>();
+    private static final int PREFETCH_THREADS = 2;
+    private static final long SCROLL_HORIZON_MS = 300;
+    private static final long FLING_HORIZON_MS = 500;
+    private static final long MAX_SCROLL_SAMPLE_MS = 100;
+    private static final String RETAIN_KEY_PREFIX = "BigImage:";
 
     protected float scale;
     protected float viewWidth;
@@ -62,80 +77,443 @@ public class BigImage extends android.support.v7.widget.AppCompatImageView imple
     private final GestureDetector gestureDetector;
     private int imageWidth;
     private int imageHeight;
-    private int bitmapResource;
+    private ImageSource source;
     private double scaleFactor;
-    private String file;
     private double prevDelta = 0;
     private String TAG = "BigImage";
+    private TileStore tileStore;
+    private TileLayer tileLayer;
+    private int tileCacheBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+    private final Matrix tileMatrix = new Matrix();
+    private PrefetchScheduler prefetchScheduler;
+    private long lastScrollTime;
+    private DecodeStrategy decodeStrategy = new DefaultDecodeStrategy();
+    private int decodedSampleSize = 1;
+    private int pendingSampleSize;
+    /**
+     * Size and type of the image as read for the last decode, so the decode
+     * strategy can be asked for options without reading the image again.
+     */
+    private Options imageBounds;
+    private final ArrayList<OnViewportChangedListener> viewportListeners = new ArrayList<>();
+    private final Matrix overviewMatrix = new Matrix();
+    private SavedState restoredState;
+    private final float[] matrixValues = new float[9];
+    private volatile boolean redrawPending;
+    private final Runnable redraw = new Runnable() {
+
+        @Override
+        public void run() {
+            redrawPending = false;
+            invalidate();
+            dispatchViewportChanged();
+        }
+    };
 
     public BigImage(Context context, AttributeSet attrs) {
         super(context, attrs);
-        bitmapResource = attrs.getAttributeResourceValue("http://schemas.android.com/apk/res/android",
+        int bitmapResource = attrs.getAttributeResourceValue("http://schemas.android.com/apk/res/android",
                 "src", 0);
         setFocusable(true);
         setFocusableInTouchMode(true);
         gestureDetector = new GestureDetector(context, this);
         this.setOnTouchListener(this);
         if (bitmapResource != 0) {
+            source = ImageSources.resource(bitmapResource);
             super.setImageDrawable(getImage());
         }
     }
 
     protected void updateMatrix() {
+        if (applyMatrix()) {
+            scheduleRedraw();
+        }
+    }
+
+    /**
+     * Writes scale and deltas into the image matrix without redrawing.
+     *
+     * @return false if the matrix already had these values, so nothing moved
+     */
+    protected boolean applyMatrix() {
         adjustDeltas();
         Matrix m = getImageMatrix();
+        m.getValues(matrixValues);
+        ensureResolution();
+        if (matrixValues[Matrix.MSCALE_X] == scale && matrixValues[Matrix.MSCALE_Y] == scale
+                && matrixValues[Matrix.MTRANS_X] == dx && matrixValues[Matrix.MTRANS_Y] == dy
+                && matrixValues[Matrix.MSKEW_X] == 0 && matrixValues[Matrix.MSKEW_Y] == 0) {
+            return false;
+        }
         m.reset();
         m.postScale(scale, scale);
         m.postTranslate(dx, dy);
-        post(new Runnable() {
+        return true;
+    }
 
-            @Override
-            public void run() {
-                invalidate();
-            }
-        });
+    /**
+     * Redraws the whole view and notifies viewport listeners on the UI
+     * thread. Matrix updates arriving before the redraw ran, as several
+     * scroll events per frame do, are folded into it.
+     */
+    protected void scheduleRedraw() {
+        if (!redrawPending) {
+            redrawPending = true;
+            post(redraw);
+        }
+    }
+
+    public void addOnViewportChangedListener(OnViewportChangedListener listener) {
+        if (!viewportListeners.contains(listener)) {
+            viewportListeners.add(listener);
+        }
+    }
+
+    public void removeOnViewportChangedListener(OnViewportChangedListener listener) {
+        viewportListeners.remove(listener);
+    }
+
+    void dispatchViewportChanged() {
+        for (int i = viewportListeners.size() - 1; i >= 0; i--) {
+            viewportListeners.get(i).onViewportChanged(this);
+        }
     }
 
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    /**
+     * Stores the visible part of the image, in image coordinates, into out.
+     */
+    public void getViewport(RectF out) {
+        out.set(-dx / scale, -dy / scale, (viewWidth - dx) / scale, (viewHeight - dy) / scale);
+    }
+
+    /**
+     * Scrolls so that the given point, in image coordinates, is in the center
+     * of the view, keeping the current scale.
+     */
+    public void centerOn(float x, float y) {
+        if (!boundsInitialized) {
+            return;
+        }
+        dx = -x * scale + viewWidth / 2;
+        dy = -y * scale + viewHeight / 2;
+        updateMatrix();
+    }
+
+    /**
+     * Draws the whole image into canvas at the given scale from the data this
+     * view already holds: the decoded bitmap, or cached tiles of the pyramid
+     * level matching the scale. Nothing is decoded apart from missing tiles,
+     * which are loaded through the tile cache of this view.
+     */
+    public void drawBaseLayer(Canvas canvas, float scale) {
+        if (tileLayer != null) {
+            overviewMatrix.setScale(scale, scale);
+            tileLayer.draw(canvas, overviewMatrix, scale, 0, 0, imageWidth * scale, imageHeight * scale);
+            return;
+        }
+        Drawable drawable = getDrawable();
+        if (drawable != null) {
+            int saveCount = canvas.save();
+            canvas.scale(scale, scale);
+            drawable.draw(canvas);
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    /**
+     * Returns the decoded image, decoding it if it is not cached. The image is
+     * decoded at the smallest resolution that still fills the view at the
+     * initial scale, see {@link #setDecodeStrategy(DecodeStrategy)}; zooming
+     * in later decodes it again at a higher resolution when needed. An image
+     * passed to {@link ImagePreloader} is taken from there, waiting for it
+     * if it is still being decoded.
+     */
     public Drawable getImage() {
         String drawableKey = getDrawableKey();
+        Drawable result = getCachedImage(drawableKey);
+        if (result == null) {
+            result = ImagePreloader.take(drawableKey);
+            if (result != null) {
+                setImageSize(result);
+                DRAWABLE_CACHE.put(drawableKey, new SoftReference<>(result));
+            }
+        }
+        if (result == null) {
+            Options bounds = loadBitmapOpts();
+            imageWidth = bounds.outWidth;
+            imageHeight = bounds.outHeight;
+            imageBounds = bounds;
+            result = decode(bounds, decodeStrategy.getDecodeOptions(bounds, getFitScale()));
+            DRAWABLE_CACHE.put(drawableKey, new SoftReference<>(result));
+        }
+        decodedSampleSize = getSampleSize(result);
+        return result;
+    }
+
+    /**
+     * @return the image decoded before, null if it is not in memory anymore
+     */
+    private Drawable getCachedImage(String drawableKey) {
         Drawable result = DRAWABLE_CACHE.containsKey(drawableKey) ? DRAWABLE_CACHE.get(drawableKey).get() : null;
         if (result == null) {
-            Options options = new Options();
-            options.inInputShareable = true;
-            options.inPurgeable = true;
-            options.inPreferredConfig = Config.RGB_565;
-            options.inDither = true;
-            if (bitmapResource > 0) {
-                result = new BitmapDrawable(getResources(), BitmapFactory.decodeStream(getResources().openRawResource(bitmapResource), null, options));
-            } else {
-                try {
-                    InputStream stream = new BufferedInputStream(new FileInputStream(file), 4096);
-                    result = new BitmapDrawable(getResources(), BitmapFactory.decodeStream(stream, null, options));
-                    stream.close();
-                } catch (IOException e) {
-                    throw new IllegalStateException(e);
+            // Handed over by the view this one replaces after a rotation.
+            Object retained = ConfigurationRetainer.claim(RETAIN_KEY_PREFIX + drawableKey);
+            if (retained instanceof Drawable) {
+                result = (Drawable) retained;
+                DRAWABLE_CACHE.put(drawableKey, new SoftReference<>(result));
+            }
+        }
+        if (result != null) {
+            setImageSize(result);
+        }
+        return result;
+    }
+
+    private void setImageSize(Drawable drawable) {
+        if (drawable instanceof SampledBitmapDrawable) {
+            imageWidth = drawable.getIntrinsicWidth();
+            imageHeight = drawable.getIntrinsicHeight();
+        } else if (drawable instanceof BitmapDrawable) {
+            imageWidth = ((BitmapDrawable) drawable).getBitmap().getWidth();
+            imageHeight = ((BitmapDrawable) drawable).getBitmap().getHeight();
+        }
+    }
+
+    private static int getSampleSize(Drawable drawable) {
+        return drawable instanceof SampledBitmapDrawable ? ((SampledBitmapDrawable) drawable).getSampleSize() : 1;
+    }
+
+    /**
+     * Shows the image read from the source. Local sources are decoded right
+     * away; others, such as {@link ImageSources#url(Context, String)}, are
+     * read and decoded in the background and shown once ready.
+     */
+    public void setImageSource(final ImageSource source) {
+        clearTiles();
+        this.source = source;
+        imageBounds = null;
+        if (source.isLocal()) {
+            super.setImageDrawable(getImage());
+            return;
+        }
+        final String drawableKey = source.getKey();
+        Drawable cached = getCachedImage(drawableKey);
+        if (cached != null) {
+            decodedSampleSize = getSampleSize(cached);
+            super.setImageDrawable(cached);
+            return;
+        }
+        super.setImageDrawable(null);
+        final Context context = getContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Drawable drawable = ImagePreloader.take(drawableKey);
+                Options bounds = null;
+                if (drawable == null) {
+                    try {
+                        bounds = loadBitmapOpts(context, source);
+                        drawable = decode(context, source, bounds, decodeStrategy.getDecodeOptions(bounds,
+                                getFitScale(bounds.outWidth, bounds.outHeight)), bounds.outWidth, bounds.outHeight);
+                    } catch (RuntimeException e) {
+                        Log.w(TAG, "Failed to load " + drawableKey, e);
+                        return;
+                    }
                 }
+                final Drawable image = drawable;
+                final Options imageBounds = bounds;
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (BigImage.this.source != source) {
+                            return;
+                        }
+                        DRAWABLE_CACHE.put(drawableKey, new SoftReference<>(image));
+                        BigImage.this.imageBounds = imageBounds;
+                        setImageSize(image);
+                        decodedSampleSize = getSampleSize(image);
+                        BigImage.super.setImageDrawable(image);
+                        initBounds();
+                    }
+                });
             }
-            result.setBounds(0, 0, imageWidth, imageHeight);
-            DRAWABLE_CACHE.put(drawableKey, new SoftReference<>(result));
+        }, TAG).start();
+    }
+
+    private Drawable decode(Options bounds, Options options) {
+        return decode(getContext(), source, bounds, options, imageWidth, imageHeight);
+    }
+
+    /**
+     * Decodes the image of the source into a drawable with bounds of the
+     * given size.
+     */
+    static Drawable decode(Context context, ImageSource source, Options bounds, Options options,
+                           int width, int height) {
+        Resources resources = context.getResources();
+        Drawable result;
+        InputStream stream = null;
+        try {
+            stream = source.open(context);
+            Bitmap bitmap = BitmapFactory.decodeStream(stream, null, options);
+            if (bitmap == null) {
+                throw new IllegalStateException("Failed to decode " + source.getKey());
+            }
+            result = new SampledBitmapDrawable(resources, bitmap, bounds.outWidth, bounds.outHeight,
+                    options.inSampleSize);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            closeQuietly(stream);
         }
+        result.setBounds(0, 0, width, height);
         return result;
     }
 
+    private static void closeQuietly(InputStream stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Scale at which the whole image fits into the view, or into the display
+     * while the view has not been measured yet.
+     */
+    private float getFitScale() {
+        return getFitScale(imageWidth, imageHeight);
+    }
+
+    private float getFitScale(int imageWidth, int imageHeight) {
+        if (imageWidth <= 0 || imageHeight <= 0) {
+            return 1;
+        }
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        float width = viewWidth > 0 ? viewWidth : metrics.widthPixels;
+        float height = viewHeight > 0 ? viewHeight : metrics.heightPixels;
+        return Math.min(1, Math.min(width / imageWidth, height / imageHeight));
+    }
+
+    /**
+     * Replaces the sampling strategy used when the image is decoded.
+     *
+     * @param decodeStrategy
+     */
+    public void setDecodeStrategy(DecodeStrategy decodeStrategy) {
+        this.decodeStrategy = decodeStrategy;
+    }
+
+    /**
+     * Decodes the image again in the background if the decode strategy
+     * samples the current scale finer than the bitmap shown.
+     */
+    private void ensureResolution() {
+        if (decodedSampleSize <= 1 || tileStore != null || source == null) {
+            return;
+        }
+        final Options bounds = getImageBounds();
+        final Options options = decodeStrategy.getDecodeOptions(bounds, Math.min(1, scale));
+        final int needed = Math.max(options.inSampleSize, 1);
+        if (needed >= decodedSampleSize || needed == pendingSampleSize) {
+            return;
+        }
+        pendingSampleSize = needed;
+        final String drawableKey = getDrawableKey();
+        getPrefetchScheduler().submit(PrefetchScheduler.PRIORITY_VISIBLE, new PrefetchScheduler.Task() {
+            @Override
+            public void run() {
+                final Drawable drawable;
+                try {
+                    drawable = decode(bounds, options);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Failed to decode " + drawableKey + " at higher resolution", e);
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Lets a later gesture try again.
+                            if (pendingSampleSize == needed) {
+                                pendingSampleSize = 0;
+                            }
+                        }
+                    });
+                    return;
+                }
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        pendingSampleSize = 0;
+                        if (!drawableKey.equals(getDrawableKey()) || tileStore != null) {
+                            return;
+                        }
+                        DRAWABLE_CACHE.put(drawableKey, new SoftReference<>(drawable));
+                        decodedSampleSize = ((SampledBitmapDrawable) drawable).getSampleSize();
+                        BigImage.super.setImageDrawable(drawable);
+                        // Setting the drawable recomputes the draw matrix,
+                        // which also notifies the viewport listeners.
+                        updateMatrix();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the bounds read for the last decode, or bounds built from the
+     * image size if the image was decoded elsewhere, for example preloaded
+     */
+    private Options getImageBounds() {
+        Options bounds = imageBounds;
+        if (bounds == null || bounds.outWidth != imageWidth || bounds.outHeight != imageHeight) {
+            bounds = new Options();
+            bounds.outWidth = imageWidth;
+            bounds.outHeight = imageHeight;
+            imageBounds = bounds;
+        }
+        return bounds;
+    }
+
     private String getDrawableKey() {
-        return file == null ? String.valueOf(bitmapResource) : file;
+        return source == null ? "" : source.getKey();
     }
 
     protected synchronized void initBounds() {
-        if (viewWidth > 0 && viewHeight > 0 && (bitmapResource > 0 || file != null)) {
-            Options opt = loadBitmapOpts();
-            if (opt != null) {
+        if (viewWidth > 0 && viewHeight > 0 && tileStore != null) {
+            initScale = Math.min(viewWidth / imageWidth, viewHeight / imageHeight);
+            dx = 0;
+            dy = 0;
+            scale = initScale;
+            adjustDeltas();
+            tileMatrix.setScale(scale, scale);
+            tileMatrix.postTranslate(dx, dy);
+            scaleFactor = 1 / initScale;
+            this.boundsInitialized = true;
+            notify();
+        } else if (viewWidth > 0 && viewHeight > 0 && source != null) {
+            // The size is known once the image is shown, read from the file
+            // only otherwise; a view recreated after a rotation must not
+            // touch the source again.
+            if (source.isLocal() && (imageWidth <= 0 || imageHeight <= 0)) {
+                Options opt = loadBitmapOpts();
                 imageWidth = opt.outWidth;
                 imageHeight = opt.outHeight;
             }
-            float[] f = new float[9];
-            getImageMatrix().getValues(f);
-            initScale = f[0];
+            getImageMatrix().getValues(matrixValues);
+            initScale = matrixValues[Matrix.MSCALE_X];
             dx = 0;
             dy = 0;
             scale = initScale;
@@ -154,6 +532,87 @@ public class BigImage extends android.support.v7.widget.AppCompatImageView imple
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
         super.onLayout(changed, left, top, right, bottom);
         initBounds();
+        if (restoredState != null && boundsInitialized) {
+            SavedState state = restoredState;
+            restoredState = null;
+            scale = initScale * state.zoom;
+            dx = -state.centerX * scale + viewWidth / 2;
+            dy = -state.centerY * scale + viewHeight / 2;
+            updateMatrix();
+        }
+    }
+
+    /**
+     * Saves the zoom relative to the initial scale and the image point in the
+     * center of the view, so the same part of the image stays centered when
+     * the view comes back with another size, for example after a rotation.
+     */
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        if (boundsInitialized && initScale > 0) {
+            state.zoom = scale / initScale;
+            state.centerX = (viewWidth / 2 - dx) / scale;
+            state.centerY = (viewHeight / 2 - dy) / scale;
+        } else if (restoredState != null) {
+            state.zoom = restoredState.zoom;
+            state.centerX = restoredState.centerX;
+            state.centerY = restoredState.centerY;
+        } else {
+            state.zoom = 0;
+        }
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState saved = (SavedState) state;
+        super.onRestoreInstanceState(saved.getSuperState());
+        restoredState = saved.zoom > 0 ? saved : null;
+        if (restoredState != null && boundsInitialized) {
+            requestLayout();
+        }
+    }
+
+    static class SavedState extends BaseSavedState {
+        float zoom;
+        float centerX;
+        float centerY;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            zoom = in.readFloat();
+            centerX = in.readFloat();
+            centerY = in.readFloat();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeFloat(zoom);
+            out.writeFloat(centerX);
+            out.writeFloat(centerY);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
     }
 
     @Override
@@ -171,9 +630,141 @@ public class BigImage extends android.support.v7.widget.AppCompatImageView imple
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
+        if (tileStore != null && tileLayer == null) {
+            tileLayer = new TileLayer(this, tileStore, tileCacheBytes, getPrefetchScheduler());
+        }
+        initBounds();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        Drawable drawable = getDrawable();
+        if (drawable != null && tileStore == null && ConfigurationRetainer.isChangingConfigurations(this)) {
+            // The soft cache may be cleared before the new view asks for it.
+            ConfigurationRetainer.retain(RETAIN_KEY_PREFIX + getDrawableKey(), drawable);
+        }
+        if (tileLayer != null) {
+            tileLayer.release();
+            tileLayer = null;
+        }
+        if (prefetchScheduler != null) {
+            prefetchScheduler.shutdown();
+            prefetchScheduler = null;
+        }
+    }
+
+    /**
+     * Scheduler shared by tile decoding and subclasses preparing overlays,
+     * created on first use and shut down when the view is detached.
+     */
+    protected PrefetchScheduler getPrefetchScheduler() {
+        if (prefetchScheduler == null) {
+            prefetchScheduler = new PrefetchScheduler(PREFETCH_THREADS);
+        }
+        return prefetchScheduler;
+    }
+
+    /**
+     * Queues work for the viewport reached after the horizon when the content
+     * keeps moving at the given velocity.
+     *
+     * @param velocityX content velocity in view pixels per second
+     * @param velocityY content velocity in view pixels per second
+     * @param horizon   look-ahead in milliseconds
+     */
+    private void predictViewport(float velocityX, float velocityY, long horizon) {
+        if (!boundsInitialized || (tileLayer == null && !hasViewportPrediction())) {
+            return;
+        }
+        getPrefetchScheduler().updateVelocity(velocityX, velocityY);
+        float predictedDx = dx + velocityX * horizon / 1000f;
+        float predictedDy = dy + velocityY * horizon / 1000f;
+        if (tileLayer != null) {
+            tileLayer.prefetchViewport(scale, predictedDx, predictedDy, viewWidth, viewHeight);
+        }
+        onPredictViewport(-predictedDx / scale, -predictedDy / scale,
+                (viewWidth - predictedDx) / scale, (viewHeight - predictedDy) / scale);
+    }
+
+    /**
+     * @return true if the subclass wants {@link #onPredictViewport} callbacks
+     * even when the image is not tiled
+     */
+    protected boolean hasViewportPrediction() {
+        return false;
+    }
+
+    /**
+     * Invoked on the UI thread with the viewport, in image coordinates, the
+     * current gesture is expected to reach. Subclasses can queue preparation
+     * work through {@link PrefetchScheduler#submitPredicted}.
+     */
+    protected void onPredictViewport(float left, float top, float right, float bottom) {
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (tileLayer != null && boundsInitialized) {
+            tileLayer.draw(canvas, tileMatrix, scale, dx, dy, viewWidth, viewHeight);
+        }
+    }
+
+    @Override
+    public Matrix getImageMatrix() {
+        return tileStore != null ? tileMatrix : super.getImageMatrix();
+    }
+
+    /**
+     * Streams the image from a precomputed tile pyramid instead of decoding
+     * it as a whole. Only tiles intersecting the viewport, at the resolution
+     * matching the current scale, are decoded and kept in a bounded cache.
+     *
+     * @param path pyramid directory or packed tile file written by the tiler tool
+     * @throws IOException if the pyramid cannot be opened
+     */
+    public void setImageTiles(String path) throws IOException {
+        setImageTiles(TileStores.open(new File(path)));
+    }
+
+    /**
+     * Streams the image from the given tile store, see {@link #setImageTiles(String)}.
+     *
+     * @param store
+     */
+    public void setImageTiles(TileStore store) {
+        clearTiles();
+        this.source = null;
+        this.tileStore = store;
+        TilePyramid pyramid = store.getPyramid();
+        imageWidth = pyramid.getWidth();
+        imageHeight = pyramid.getHeight();
+        super.setImageDrawable(null);
+        if (getWindowToken() != null) {
+            tileLayer = new TileLayer(this, store, tileCacheBytes, getPrefetchScheduler());
+        }
         initBounds();
     }
 
+    /**
+     * Limits the memory used by decoded tiles, applies to tile stores set
+     * afterwards.
+     *
+     * @param bytes
+     */
+    public void setTileCacheSize(int bytes) {
+        tileCacheBytes = bytes;
+    }
+
+    private void clearTiles() {
+        if (tileLayer != null) {
+            tileLayer.release();
+            tileLayer = null;
+        }
+        tileStore = null;
+    }
+
     /**
      * To set local image file as source image
      *
@@ -187,28 +778,29 @@ public class BigImage extends android.support.v7.widget.AppCompatImageView imple
      * To set source image dynamically. Make sure while setting remote image file that resolution is
      * same as original resolution in order to find exact coordinates while applying map definition
      *
-     * @param url      fully-qualified url, in case of remote url, it will only be used as key
-     * @param drawable drawable file in case of remote resource, can be null otherwise
+     * @param url      local file or http url; remote images are downloaded through the default
+     *                 cache of {@link ImageSources#url(Context, String)} unless a drawable is given
+     * @param drawable already decoded image, can be null
      */
     public void setImageFile(String url, Drawable drawable) {
-        this.file = url;
-        this.bitmapResource = 0;
-        if (drawable != null) {
-            if (drawable instanceof BitmapDrawable) {
-                imageWidth = ((BitmapDrawable) drawable).getBitmap().getWidth();
-                imageHeight = ((BitmapDrawable) drawable).getBitmap().getHeight();
-            }
-            DRAWABLE_CACHE.put(getDrawableKey(),
-                    new SoftReference<>(drawable));
+        ImageSource source = url.startsWith("http") ? ImageSources.url(getContext(), url) : ImageSources.file(url);
+        if (drawable == null) {
+            setImageSource(source);
+            return;
         }
+        clearTiles();
+        this.source = source;
+        imageBounds = null;
+        decodedSampleSize = getSampleSize(drawable);
+        setImageSize(drawable);
+        DRAWABLE_CACHE.put(getDrawableKey(),
+                new SoftReference<>(drawable));
         super.setImageDrawable(drawable);
     }
 
 
     public void setImageResource(int drawable) {
-        this.file = null;
-        this.bitmapResource = drawable;
-        super.setImageDrawable(getImage());
+        setImageSource(ImageSources.resource(drawable));
     }
 
 
@@ -225,23 +817,26 @@ public class BigImage extends android.support.v7.widget.AppCompatImageView imple
     }
 
     private Options loadBitmapOpts() {
+        return loadBitmapOpts(getContext(), source);
+    }
+
+    /**
+     * @return the size and mime type of the image
+     */
+    static Options loadBitmapOpts(Context context, ImageSource source) {
         Options opts = new Options();
         opts.inJustDecodeBounds = true;
         InputStream stream;
-        if (bitmapResource > 0) {
-            stream = getResources().openRawResource(bitmapResource);
-        } else {
-            if (file.startsWith("http")) {
-                return null;
-            }
-            try {
-                stream = new BufferedInputStream(new FileInputStream(file));
-            } catch (FileNotFoundException e) {
-                throw new IllegalStateException(e);
-            }
+        try {
+            stream = source.open(context);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        try {
+            BitmapFactory.decodeStream(stream, null, opts);
+        } finally {
+            closeQuietly(stream);
         }
-
-        BitmapFactory.decodeStream(stream, null, opts);
         return opts;
     }
 
@@ -287,6 +882,7 @@ public class BigImage extends android.support.v7.widget.AppCompatImageView imple
         dx = 0;
         dy = 0;
         invalidate();
+        dispatchViewportChanged();
     }
 
     /**
@@ -354,6 +950,7 @@ public class BigImage extends android.support.v7.widget.AppCompatImageView imple
     @Override
     public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX,
                            float velocityY) {
+        predictViewport(velocityX, velocityY, FLING_HORIZON_MS);
         return true;
     }
 
@@ -366,6 +963,12 @@ public class BigImage extends android.support.v7.widget.AppCompatImageView imple
                             float distanceY) {
         dx -= distanceX;
         dy -= distanceY;
+        long time = e2.getEventTime();
+        long elapsed = time - lastScrollTime;
+        lastScrollTime = time;
+        if (elapsed > 0 && elapsed < MAX_SCROLL_SAMPLE_MS) {
+            predictViewport(-distanceX * 1000 / elapsed, -distanceY * 1000 / elapsed, SCROLL_HORIZON_MS);
+        }
         return true;
     }
 
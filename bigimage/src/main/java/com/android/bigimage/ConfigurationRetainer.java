@@ -0,0 +1,73 @@
+package com.android.bigimage;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+
+import java.util.HashMap;
+
+/**
+ * Carries objects from a view that is detached because its activity is being
+ * recreated for a configuration change, such as a rotation, to the view that
+ * replaces it. Objects are held strongly until they are claimed, or dropped
+ * if nobody claims them shortly after the change.
+ */
+public final class ConfigurationRetainer {
+
+    /**
+     * Recreating an activity takes well under a second; anything not claimed
+     * after this time belongs to a screen that is gone for good.
+     */
+    private static final long EXPIRY_MS = 5000;
+
+    private static final HashMap<Object, Object> RETAINED = new HashMap<>();
+    private static Handler handler;
+
+    private ConfigurationRetainer() {
+    }
+
+    /**
+     * @return true if the view belongs to an activity that is destroyed only
+     * to be recreated with a new configuration
+     */
+    public static boolean isChangingConfigurations(View view) {
+        Context context = view.getContext();
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Activity) {
+                return ((Activity) context).isChangingConfigurations();
+            }
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return false;
+    }
+
+    /**
+     * Keeps value under key until it is claimed or expires.
+     */
+    public static synchronized void retain(final Object key, final Object value) {
+        RETAINED.put(key, value);
+        if (handler == null) {
+            handler = new Handler(Looper.getMainLooper());
+        }
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ConfigurationRetainer.class) {
+                    if (RETAINED.get(key) == value) {
+                        RETAINED.remove(key);
+                    }
+                }
+            }
+        }, EXPIRY_MS);
+    }
+
+    /**
+     * Removes and returns the value retained under key, null if there is none.
+     */
+    public static synchronized Object claim(Object key) {
+        return RETAINED.remove(key);
+    }
+}
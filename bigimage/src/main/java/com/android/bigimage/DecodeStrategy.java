@@ -0,0 +1,19 @@
+package com.android.bigimage;
+
+import android.graphics.BitmapFactory.Options;
+
+/**
+ * Chooses how {@link BigImage} decodes its source image.
+ */
+public interface DecodeStrategy {
+
+    /**
+     * Creates the options used to decode the image.
+     *
+     * @param bounds      result of decoding with inJustDecodeBounds, holding the
+     *                    full image size and mime type
+     * @param targetScale scale, relative to the full image size, at which the
+     *                    image is going to be shown
+     */
+    Options getDecodeOptions(Options bounds, float targetScale);
+}
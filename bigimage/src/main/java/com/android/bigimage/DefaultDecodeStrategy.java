@@ -0,0 +1,64 @@
+package com.android.bigimage;
+
+import android.graphics.Bitmap.Config;
+import android.graphics.BitmapFactory.Options;
+import android.os.Build;
+
+/**
+ * Decodes at the largest power of two sub-sampling that still covers the
+ * target scale. Uses hardware bitmaps where the platform supports them,
+ * otherwise ARGB_8888, falling back to RGB_565 only for opaque images that
+ * would not fit comfortably into the heap.
+ */
+public class DefaultDecodeStrategy implements DecodeStrategy {
+
+    private final boolean allowHardware;
+
+    public DefaultDecodeStrategy() {
+        this(true);
+    }
+
+    /**
+     * @param allowHardware false if the bitmap is drawn on software canvases,
+     *                      which cannot draw hardware bitmaps
+     */
+    public DefaultDecodeStrategy(boolean allowHardware) {
+        this.allowHardware = allowHardware;
+    }
+
+    @Override
+    public Options getDecodeOptions(Options bounds, float targetScale) {
+        Options options = new Options();
+        options.inSampleSize = getSampleSize(targetScale);
+        options.inPreferredConfig = getConfig(bounds, options.inSampleSize);
+        return options;
+    }
+
+    /**
+     * @return the largest power of two that keeps at least one decoded pixel
+     * per screen pixel at the given scale
+     */
+    public static int getSampleSize(float targetScale) {
+        int sampleSize = 1;
+        while (targetScale > 0 && sampleSize * 2 * targetScale <= 1) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    protected Config getConfig(Options bounds, int sampleSize) {
+        if (allowHardware && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return Config.HARDWARE;
+        }
+        if (bounds == null) {
+            return Config.ARGB_8888;
+        }
+        boolean opaque = "image/jpeg".equals(bounds.outMimeType);
+        long pixels = (long) (bounds.outWidth / sampleSize) * (bounds.outHeight / sampleSize);
+        // Keep full quality unless a 32 bit bitmap would take over a quarter of the heap.
+        if (opaque && pixels * 4 > Runtime.getRuntime().maxMemory() / 4) {
+            return Config.RGB_565;
+        }
+        return Config.ARGB_8888;
+    }
+}
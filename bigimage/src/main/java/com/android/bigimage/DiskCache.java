@@ -0,0 +1,187 @@
+package com.android.bigimage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+
+/**
+ * Directory of downloaded files bounded in size. Every entry is a data file
+ * named after the hash of its key, next to a small properties file holding
+ * the validators the server sent with it. The modification time of a data
+ * file is its last use; when the cache grows beyond its size the least
+ * recently used entries are deleted.
+ * <p>
+ * Thread safe. Several caches must not share a directory.
+ */
+public class DiskCache {
+
+    static final String ETAG = "ETag";
+    static final String LAST_MODIFIED = "Last-Modified";
+
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxBytes;
+
+    public DiskCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the file holding the entry, which does not exist if the key is
+     * not cached
+     */
+    public File getFile(String key) {
+        return new File(directory, hash(key));
+    }
+
+    /**
+     * @return the validators stored with the entry, empty if there are none
+     */
+    synchronized Properties getValidators(String key) {
+        Properties validators = new Properties();
+        File meta = new File(directory, hash(key) + META_SUFFIX);
+        if (meta.exists() && getFile(key).exists()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(meta);
+                validators.load(in);
+            } catch (IOException ignored) {
+                validators.clear();
+            } finally {
+                closeQuietly(in);
+            }
+        }
+        return validators;
+    }
+
+    /**
+     * Creates a file to download into, to be passed to
+     * {@link #commit(String, File, Properties)} or deleted.
+     */
+    File createTempFile() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        return File.createTempFile("download", TEMP_SUFFIX, directory);
+    }
+
+    /**
+     * Replaces the entry with the downloaded file and its validators, then
+     * trims the cache to its size.
+     *
+     * @return the file now holding the entry
+     */
+    synchronized File commit(String key, File download, Properties validators) throws IOException {
+        File file = getFile(key);
+        File meta = new File(directory, file.getName() + META_SUFFIX);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace " + file);
+        }
+        if (!download.renameTo(file)) {
+            throw new IOException("Cannot move " + download + " to " + file);
+        }
+        OutputStream out = new FileOutputStream(meta);
+        try {
+            validators.store(out, key);
+        } finally {
+            out.close();
+        }
+        trim(file);
+        return file;
+    }
+
+    /**
+     * Marks the entry as just used.
+     */
+    synchronized void touch(String key) {
+        getFile(key).setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Deletes least recently used entries until the cache fits its size,
+     * always keeping the given file.
+     */
+    private void trim(File keep) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        int count = 0;
+        for (File file : files) {
+            if (isData(file)) {
+                total += file.length();
+                files[count++] = file;
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        File[] entries = Arrays.copyOf(files, count);
+        Arrays.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long ta = a.lastModified();
+                long tb = b.lastModified();
+                return ta < tb ? -1 : ta == tb ? 0 : 1;
+            }
+        });
+        for (int i = 0; i < entries.length && total > maxBytes; i++) {
+            File file = entries[i];
+            if (file.equals(keep)) {
+                continue;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                new File(directory, file.getName() + META_SUFFIX).delete();
+            }
+        }
+    }
+
+    private static boolean isData(File file) {
+        String name = file.getName();
+        return file.isFile() && !name.endsWith(META_SUFFIX) && !name.endsWith(TEMP_SUFFIX);
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
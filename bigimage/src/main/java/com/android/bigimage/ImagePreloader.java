@@ -0,0 +1,107 @@
+package com.android.bigimage;
+
+import android.content.Context;
+import android.graphics.BitmapFactory.Options;
+import android.graphics.drawable.Drawable;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Decodes images in the background before the {@link BigImage} showing them
+ * is created, for example from {@code Application.onCreate()}. The image is
+ * decoded exactly as a view would decode it in its constructor, at the
+ * resolution that fills the display. A view asking for the image while it is
+ * still being decoded waits for that decode instead of starting its own.
+ * <p>
+ * A preloaded image is held until the first view takes it, after that it is
+ * cached like any other decoded image.
+ */
+public final class ImagePreloader {
+
+    private static final String TAG = "ImagePreloader";
+
+    private static final HashMap<String, FutureTask<Drawable>> PRELOADS = new HashMap<>();
+
+    private ImagePreloader() {
+    }
+
+    /**
+     * Starts decoding the image resource unless it is being preloaded already.
+     */
+    public static void preload(Context context, int resource) {
+        preload(context, ImageSources.resource(resource));
+    }
+
+    /**
+     * Starts decoding the image file unless it is being preloaded already,
+     * see {@link BigImage#setImageFile(String)}.
+     */
+    public static void preload(Context context, String file) {
+        preload(context, file.startsWith("http") ? ImageSources.url(context, file) : ImageSources.file(file));
+    }
+
+    /**
+     * Starts reading and decoding the image of the source unless it is being
+     * preloaded already. Remote images are downloaded first.
+     */
+    public static void preload(Context context, ImageSource source) {
+        preload(context, source, new DefaultDecodeStrategy());
+    }
+
+    /**
+     * Same as {@link #preload(Context, ImageSource)}, decoding with the
+     * strategy that the view showing the image is given through
+     * {@link BigImage#setDecodeStrategy(DecodeStrategy)}.
+     */
+    public static void preload(Context context, final ImageSource source, final DecodeStrategy strategy) {
+        final Context applicationContext = context.getApplicationContext();
+        FutureTask<Drawable> task = new FutureTask<>(new Callable<Drawable>() {
+            @Override
+            public Drawable call() {
+                Options bounds = BigImage.loadBitmapOpts(applicationContext, source);
+                DisplayMetrics metrics = applicationContext.getResources().getDisplayMetrics();
+                float scale = Math.min(1, Math.min((float) metrics.widthPixels / bounds.outWidth,
+                        (float) metrics.heightPixels / bounds.outHeight));
+                Options options = strategy.getDecodeOptions(bounds, scale);
+                return BigImage.decode(applicationContext, source, bounds, options, bounds.outWidth,
+                        bounds.outHeight);
+            }
+        });
+        String key = source.getKey();
+        synchronized (PRELOADS) {
+            if (PRELOADS.containsKey(key)) {
+                return;
+            }
+            PRELOADS.put(key, task);
+        }
+        new Thread(task, TAG).start();
+    }
+
+    /**
+     * Removes the preloaded image, waiting for it if it is still decoded.
+     *
+     * @return the image, null if it was not preloaded or failed to decode
+     */
+    static Drawable take(String key) {
+        FutureTask<Drawable> task;
+        synchronized (PRELOADS) {
+            task = PRELOADS.remove(key);
+        }
+        if (task == null) {
+            return null;
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Failed to preload " + key, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,32 @@
+package com.android.bigimage;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Where {@link BigImage} reads its image from. Built-in sources for
+ * resources, local files and URLs are created through {@link ImageSources}.
+ */
+public interface ImageSource {
+
+    /**
+     * @return key of the image in the decoded image cache, equal for sources
+     * reading the same image
+     */
+    String getKey();
+
+    /**
+     * @return true if {@link #open(Context)} is cheap enough to be called on
+     * the UI thread; other sources are read in the background
+     */
+    boolean isLocal();
+
+    /**
+     * Opens the encoded image. Called once for the image size and once more
+     * for the pixels, and again whenever the image is decoded at another
+     * resolution.
+     */
+    InputStream open(Context context) throws IOException;
+}
@@ -0,0 +1,116 @@
+package com.android.bigimage;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+
+/**
+ * Creates the built-in {@link ImageSource}s.
+ */
+public final class ImageSources {
+
+    /**
+     * Size of the default cache of downloaded images.
+     */
+    public static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private static final String CACHE_DIRECTORY = "bigimage";
+    private static final HashMap<File, DiskCache> CACHES = new HashMap<>();
+
+    private ImageSources() {
+    }
+
+    public static ImageSource resource(int resourceId) {
+        return new ResourceSource(resourceId);
+    }
+
+    public static ImageSource file(String path) {
+        return new FileSource(path);
+    }
+
+    /**
+     * Downloads the image into the default disk cache in the application's
+     * cache directory, see {@link #url(String, DiskCache)}.
+     */
+    public static UrlImageSource url(Context context, String url) {
+        return url(url, getDefaultCache(context));
+    }
+
+    /**
+     * Downloads the image into the given cache and decodes it from there.
+     * A cached copy is revalidated with the server the first time the source
+     * is read and used as is when the server cannot be reached.
+     */
+    public static UrlImageSource url(String url, DiskCache cache) {
+        return new UrlImageSource(url, cache);
+    }
+
+    /**
+     * @return the cache shared by all sources created through
+     * {@link #url(Context, String)}
+     */
+    public static DiskCache getDefaultCache(Context context) {
+        File directory = new File(context.getCacheDir(), CACHE_DIRECTORY);
+        synchronized (CACHES) {
+            DiskCache cache = CACHES.get(directory);
+            if (cache == null) {
+                cache = new DiskCache(directory, DEFAULT_CACHE_BYTES);
+                CACHES.put(directory, cache);
+            }
+            return cache;
+        }
+    }
+
+    private static final class ResourceSource implements ImageSource {
+
+        private final int resourceId;
+
+        ResourceSource(int resourceId) {
+            this.resourceId = resourceId;
+        }
+
+        @Override
+        public String getKey() {
+            return String.valueOf(resourceId);
+        }
+
+        @Override
+        public boolean isLocal() {
+            return true;
+        }
+
+        @Override
+        public InputStream open(Context context) {
+            return new BufferedInputStream(context.getResources().openRawResource(resourceId), 4096);
+        }
+    }
+
+    private static final class FileSource implements ImageSource {
+
+        private final String path;
+
+        FileSource(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public String getKey() {
+            return path;
+        }
+
+        @Override
+        public boolean isLocal() {
+            return true;
+        }
+
+        @Override
+        public InputStream open(Context context) throws IOException {
+            return new BufferedInputStream(new FileInputStream(path), 4096);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.android.bigimage;
+
+/**
+ * Notified when the part of the image shown by a {@link BigImage} changes,
+ * either because the view was scrolled or zoomed or because new image content
+ * became available, such as a replaced image or freshly decoded tiles.
+ */
+public interface OnViewportChangedListener {
+
+  void onViewportChanged(BigImage image);
+}
@@ -0,0 +1,140 @@
+package com.android.bigimage;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Paint.Style;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * Overview inset for a {@link BigImage}. Draws the whole image scaled down to
+ * fit, using the bitmap or tiles the target view already holds, with the
+ * visible part of the target outlined. Touching the overview centers the
+ * target on the touched point.
+ */
+public class OverviewImage extends View implements OnViewportChangedListener {
+
+    private static final int DEFAULT_VIEWPORT_COLOR = Color.argb(0xff, 0xff, 0x57, 0x22);
+
+    private BigImage target;
+    private final RectF viewport = new RectF();
+    private final Paint viewportPaint = new Paint();
+    private float overviewScale;
+    private float offsetX;
+    private float offsetY;
+
+    public OverviewImage(Context context) {
+        this(context, null);
+    }
+
+    public OverviewImage(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        viewportPaint.setAntiAlias(true);
+        viewportPaint.setStyle(Style.STROKE);
+        viewportPaint.setStrokeWidth(2 * context.getResources().getDisplayMetrics().density);
+        viewportPaint.setColor(DEFAULT_VIEWPORT_COLOR);
+    }
+
+    /**
+     * Attaches the overview to the view it summarizes, null detaches it.
+     *
+     * @param target
+     */
+    public void setTarget(BigImage target) {
+        if (this.target != null) {
+            this.target.removeOnViewportChangedListener(this);
+        }
+        this.target = target;
+        if (target != null && getWindowToken() != null) {
+            target.addOnViewportChangedListener(this);
+        }
+        invalidate();
+    }
+
+    public BigImage getTarget() {
+        return target;
+    }
+
+    public void setViewportColor(int color) {
+        viewportPaint.setColor(color);
+        invalidate();
+    }
+
+    public void setViewportStrokeWidth(float width) {
+        viewportPaint.setStrokeWidth(width);
+        invalidate();
+    }
+
+    @Override
+    public void onViewportChanged(BigImage image) {
+        invalidate();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (target != null) {
+            target.addOnViewportChangedListener(this);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (target != null) {
+            target.removeOnViewportChangedListener(this);
+        }
+    }
+
+    /**
+     * Fits the target image into the padded area of this view.
+     *
+     * @return false if there is nothing to show yet
+     */
+    private boolean updateTransform() {
+        if (target == null || target.getImageWidth() <= 0 || target.getImageHeight() <= 0) {
+            return false;
+        }
+        float width = getWidth() - getPaddingLeft() - getPaddingRight();
+        float height = getHeight() - getPaddingTop() - getPaddingBottom();
+        overviewScale = Math.min(width / target.getImageWidth(), height / target.getImageHeight());
+        offsetX = getPaddingLeft() + (width - target.getImageWidth() * overviewScale) / 2;
+        offsetY = getPaddingTop() + (height - target.getImageHeight() * overviewScale) / 2;
+        return overviewScale > 0;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (!updateTransform()) {
+            return;
+        }
+        int saveCount = canvas.save();
+        canvas.translate(offsetX, offsetY);
+        target.drawBaseLayer(canvas, overviewScale);
+        if (target.getScale() > 0) {
+            target.getViewport(viewport);
+            viewport.intersect(0, 0, target.getImageWidth(), target.getImageHeight());
+            canvas.drawRect(viewport.left * overviewScale, viewport.top * overviewScale,
+                    viewport.right * overviewScale, viewport.bottom * overviewScale, viewportPaint);
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!updateTransform()) {
+            return false;
+        }
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_MOVE) {
+            target.centerOn((event.getX() - offsetX) / overviewScale, (event.getY() - offsetY) / overviewScale);
+            return true;
+        }
+        return action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL;
+    }
+}
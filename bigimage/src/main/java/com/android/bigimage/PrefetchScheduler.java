@@ -0,0 +1,144 @@
+package com.android.bigimage;
+
+import java.util.Iterator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background executor for tile decodes and overlay preparation. Tasks run in
+ * priority order: what is visible now first, then neighbours of the viewport,
+ * then work for the viewport predicted from the gesture velocity. Predicted
+ * work is cancelled as soon as the gesture changes direction.
+ */
+public class PrefetchScheduler {
+
+    public static final int PRIORITY_VISIBLE = 0;
+    public static final int PRIORITY_NEIGHBOUR = 1;
+    public static final int PRIORITY_PREDICTED = 2;
+
+    /**
+     * Velocities pointing more than about 45 degrees away from the previous
+     * one count as a change of direction.
+     */
+    private static final float SAME_DIRECTION_COS = 0.7f;
+
+    private final ThreadPoolExecutor executor;
+    private final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile int generation;
+    private float velocityX;
+    private float velocityY;
+
+    public PrefetchScheduler(int threads) {
+        executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS, queue,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "BigImage prefetch");
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Unit of work queued on the scheduler.
+     */
+    public abstract static class Task implements Runnable, Comparable<Task> {
+
+        private int priority;
+        private long order;
+        private int generation = -1;
+        private PrefetchScheduler scheduler;
+
+        /**
+         * @return true if the task was queued for a viewport the gesture has
+         * turned away from, tasks should return immediately in that case
+         */
+        protected boolean isStale() {
+            return generation >= 0 && generation != scheduler.generation;
+        }
+
+        /**
+         * Invoked on the thread that changed the velocity when the task is
+         * removed from the queue before it ran.
+         */
+        protected void onCancelled() {
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return order < other.order ? -1 : order == other.order ? 0 : 1;
+        }
+    }
+
+    public void submit(int priority, Task task) {
+        enqueue(priority, -1, task);
+    }
+
+    /**
+     * Queues work for the predicted viewport, cancelled on direction change.
+     */
+    public void submitPredicted(Task task) {
+        enqueue(PRIORITY_PREDICTED, generation, task);
+    }
+
+    private void enqueue(int priority, int generation, Task task) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        task.priority = priority;
+        task.generation = generation;
+        task.order = sequence.getAndIncrement();
+        task.scheduler = this;
+        executor.execute(task);
+    }
+
+    /**
+     * Records the current gesture velocity in view pixels per second. When it
+     * points in a different direction than before, all queued predicted
+     * tasks are dropped.
+     *
+     * @return true if predicted work was cancelled
+     */
+    public boolean updateVelocity(float vx, float vy) {
+        float previousLength = (float) Math.hypot(velocityX, velocityY);
+        float length = (float) Math.hypot(vx, vy);
+        boolean turned = previousLength > 0 && length > 0
+                && (velocityX * vx + velocityY * vy) / (previousLength * length) < SAME_DIRECTION_COS;
+        velocityX = vx;
+        velocityY = vy;
+        if (turned || length == 0) {
+            cancelPredicted();
+            return true;
+        }
+        return false;
+    }
+
+    public void cancelPredicted() {
+        generation++;
+        Iterator<Runnable> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Task task = (Task) iterator.next();
+            if (task.generation >= 0 && queue.remove(task)) {
+                task.onCancelled();
+            }
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+}
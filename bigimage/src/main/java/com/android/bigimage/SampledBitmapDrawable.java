@@ -0,0 +1,39 @@
+package com.android.bigimage;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+
+/**
+ * Bitmap decoded with inSampleSize that still reports the full image size,
+ * so image coordinates and the view matrix do not depend on the resolution
+ * the image was decoded at.
+ */
+class SampledBitmapDrawable extends BitmapDrawable {
+
+    private final int width;
+    private final int height;
+    private final int sampleSize;
+
+    SampledBitmapDrawable(Resources res, Bitmap bitmap, int width, int height, int sampleSize) {
+        super(res, bitmap);
+        this.width = width;
+        this.height = height;
+        this.sampleSize = sampleSize;
+        setFilterBitmap(true);
+    }
+
+    int getSampleSize() {
+        return sampleSize;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return width;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return height;
+    }
+}
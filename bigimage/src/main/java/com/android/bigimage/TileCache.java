@@ -0,0 +1,132 @@
+package com.android.bigimage;
+
+import android.graphics.Bitmap;
+
+import com.android.imagemap.core.LongLongMap;
+
+import java.util.Arrays;
+
+/**
+ * Least recently used cache of decoded tiles bounded by their byte size.
+ * Keys are primitive, so lookups on the draw path do not allocate. Entries
+ * live in parallel arrays linked into a recency list, freed slots are
+ * reused. Must be used on one thread.
+ */
+final class TileCache {
+
+    private final long maxBytes;
+    private final LongLongMap slots = new LongLongMap();
+    private Bitmap[] bitmaps = new Bitmap[16];
+    private long[] keys = new long[16];
+    private int[] previous = new int[16];
+    private int[] next = new int[16];
+    /**
+     * Most and least recently used slot, -1 if the cache is empty.
+     */
+    private int head = -1;
+    private int tail = -1;
+    /**
+     * First slot of the free list, chained through {@link #next}.
+     */
+    private int free = -1;
+    private int allocated;
+    private long bytes;
+
+    TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the tile, null if it is not cached; marks it as just used
+     */
+    Bitmap get(long key) {
+        int slot = (int) slots.get(key, -1);
+        if (slot < 0) {
+            return null;
+        }
+        if (slot != head) {
+            unlink(slot);
+            linkFirst(slot);
+        }
+        return bitmaps[slot];
+    }
+
+    /**
+     * Adds the tile, then drops least recently used tiles other than this one
+     * until the cache fits its size.
+     */
+    void put(long key, Bitmap bitmap) {
+        remove(key);
+        int slot = allocate();
+        keys[slot] = key;
+        bitmaps[slot] = bitmap;
+        slots.put(key, slot);
+        linkFirst(slot);
+        bytes += bitmap.getByteCount();
+        while (bytes > maxBytes && tail != slot) {
+            remove(keys[tail]);
+        }
+    }
+
+    private void remove(long key) {
+        int slot = (int) slots.remove(key, -1);
+        if (slot < 0) {
+            return;
+        }
+        unlink(slot);
+        bytes -= bitmaps[slot].getByteCount();
+        bitmaps[slot] = null;
+        next[slot] = free;
+        free = slot;
+    }
+
+    void evictAll() {
+        slots.clear();
+        Arrays.fill(bitmaps, null);
+        head = tail = free = -1;
+        allocated = 0;
+        bytes = 0;
+    }
+
+    private int allocate() {
+        if (free >= 0) {
+            int slot = free;
+            free = next[slot];
+            return slot;
+        }
+        if (allocated == keys.length) {
+            int capacity = allocated * 2;
+            bitmaps = Arrays.copyOf(bitmaps, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return allocated++;
+    }
+
+    private void linkFirst(int slot) {
+        previous[slot] = -1;
+        next[slot] = head;
+        if (head >= 0) {
+            previous[head] = slot;
+        } else {
+            tail = slot;
+        }
+        head = slot;
+    }
+
+    private void unlink(int slot) {
+        int before = previous[slot];
+        int after = next[slot];
+        if (before >= 0) {
+            next[before] = after;
+        } else {
+            head = after;
+        }
+        if (after >= 0) {
+            previous[after] = before;
+        } else {
+            tail = before;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.android.bigimage;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.imagemap.core.LongLongMap;
+import com.android.imagemap.core.tiles.TilePyramid;
+import com.android.imagemap.core.tiles.TileStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Draws the tiles of a {@link TileStore} that intersect the viewport, at the
+ * pyramid level matching the current scale. Tiles are decoded in the
+ * background into a bounded LRU cache; until a tile arrives the closest
+ * coarser cached tile is stretched in its place. Tiles bordering the
+ * viewport and tiles of the viewport predicted from the gesture velocity are
+ * prefetched at lower priority on the shared {@link PrefetchScheduler}.
+ * Tiles that failed to load are requested again after a pause.
+ */
+class TileLayer {
+
+    private static final String TAG = "TileLayer";
+    private static final long RETRY_DELAY_MS = 5000;
+
+    private final BigImage view;
+    private final TileStore store;
+    private final TilePyramid pyramid;
+    private final TileCache cache;
+    private final LongLongMap pending = new LongLongMap();
+    /**
+     * Uptime after which a tile that failed to load is requested again.
+     */
+    private final LongLongMap failed = new LongLongMap();
+    private final PrefetchScheduler scheduler;
+    private boolean released;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final RectF dst = new RectF();
+    private final Rect src = new Rect();
+
+    TileLayer(BigImage view, TileStore store, int cacheBytes, PrefetchScheduler scheduler) {
+        this.view = view;
+        this.scheduler = scheduler;
+        this.store = store;
+        this.pyramid = store.getPyramid();
+        cache = new TileCache(cacheBytes);
+    }
+
+    private static long key(int level, int column, int row) {
+        return ((long) level << 48) | ((long) column << 24) | row;
+    }
+
+    /**
+     * @param matrix image to view transformation, scale followed by dx, dy
+     */
+    void draw(Canvas canvas, Matrix matrix, float scale, float dx, float dy,
+              float viewWidth, float viewHeight) {
+        int level = pyramid.getLevelForScale(scale);
+        int span = pyramid.getTileSize() << level;
+        int columns = pyramid.getColumns(level);
+        int rows = pyramid.getRows(level);
+        int c0 = Math.max(0, (int) Math.floor(-dx / scale / span));
+        int r0 = Math.max(0, (int) Math.floor(-dy / scale / span));
+        int c1 = Math.min(columns - 1, (int) Math.floor((viewWidth - dx) / scale / span));
+        int r1 = Math.min(rows - 1, (int) Math.floor((viewHeight - dy) / scale / span));
+
+        canvas.save();
+        canvas.concat(matrix);
+        for (int row = r0; row <= r1; row++) {
+            for (int column = c0; column <= c1; column++) {
+                Bitmap bitmap = cache.get(key(level, column, row));
+                if (bitmap != null) {
+                    drawTile(canvas, bitmap, level, column, row);
+                } else {
+                    request(level, column, row, PrefetchScheduler.PRIORITY_VISIBLE);
+                    drawFallback(canvas, level, column, row);
+                }
+            }
+        }
+        canvas.restore();
+
+        // Neighbours of the visible range are loaded after the visible tiles.
+        for (int row = r0 - 1; row <= r1 + 1; row++) {
+            for (int column = c0 - 1; column <= c1 + 1; column++) {
+                if (row < r0 || row > r1 || column < c0 || column > c1) {
+                    prefetch(level, column, row, PrefetchScheduler.PRIORITY_NEIGHBOUR);
+                }
+            }
+        }
+    }
+
+    private void drawTile(Canvas canvas, Bitmap bitmap, int level, int column, int row) {
+        int span = pyramid.getTileSize() << level;
+        float left = column * span;
+        float top = row * span;
+        dst.set(left, top, Math.min(left + span, pyramid.getWidth()),
+                Math.min(top + span, pyramid.getHeight()));
+        canvas.drawBitmap(bitmap, null, dst, paint);
+    }
+
+    /**
+     * Stretches the part of the closest cached coarser tile that covers the
+     * missing tile.
+     */
+    private void drawFallback(Canvas canvas, int level, int column, int row) {
+        int tileSize = pyramid.getTileSize();
+        int span = tileSize << level;
+        int left = column * span;
+        int top = row * span;
+        int right = Math.min(left + span, pyramid.getWidth());
+        int bottom = Math.min(top + span, pyramid.getHeight());
+        for (int coarser = level + 1; coarser < pyramid.getLevelCount(); coarser++) {
+            int shift = coarser - level;
+            Bitmap bitmap = cache.get(key(coarser, column >> shift, row >> shift));
+            if (bitmap == null) {
+                continue;
+            }
+            int originX = (column >> shift) * (tileSize << coarser);
+            int originY = (row >> shift) * (tileSize << coarser);
+            src.set((left - originX) >> coarser, (top - originY) >> coarser,
+                    Math.min(bitmap.getWidth(), ((right - originX) + (1 << coarser) - 1) >> coarser),
+                    Math.min(bitmap.getHeight(), ((bottom - originY) + (1 << coarser) - 1) >> coarser));
+            dst.set(left, top, right, bottom);
+            canvas.drawBitmap(bitmap, src, dst, paint);
+            return;
+        }
+    }
+
+    /**
+     * Queues the tiles of a viewport the gesture is expected to reach, with
+     * the same parameters as {@link #draw}.
+     */
+    void prefetchViewport(float scale, float dx, float dy, float viewWidth, float viewHeight) {
+        int level = pyramid.getLevelForScale(scale);
+        int span = pyramid.getTileSize() << level;
+        int c0 = (int) Math.floor(-dx / scale / span);
+        int r0 = (int) Math.floor(-dy / scale / span);
+        int c1 = (int) Math.floor((viewWidth - dx) / scale / span);
+        int r1 = (int) Math.floor((viewHeight - dy) / scale / span);
+        for (int row = r0; row <= r1; row++) {
+            for (int column = c0; column <= c1; column++) {
+                prefetch(level, column, row, PrefetchScheduler.PRIORITY_PREDICTED);
+            }
+        }
+    }
+
+    private void prefetch(int level, int column, int row, int priority) {
+        if (column < 0 || row < 0 || column >= pyramid.getColumns(level) || row >= pyramid.getRows(level)) {
+            return;
+        }
+        if (cache.get(key(level, column, row)) == null) {
+            request(level, column, row, priority);
+        }
+    }
+
+    /**
+     * @return true if the tile is queued or being decoded
+     */
+    boolean isPending(int level, int column, int row) {
+        return pending.containsKey(key(level, column, row));
+    }
+
+    private void request(int level, int column, int row, int priority) {
+        long key = key(level, column, row);
+        if (released || pending.containsKey(key)) {
+            return;
+        }
+        long retryAt = failed.get(key, -1);
+        if (retryAt >= 0) {
+            if (SystemClock.uptimeMillis() < retryAt) {
+                return;
+            }
+            failed.remove(key, -1);
+        }
+        pending.put(key, 0);
+        TileTask task = new TileTask(key, level, column, row);
+        if (priority == PrefetchScheduler.PRIORITY_PREDICTED) {
+            scheduler.submitPredicted(task);
+        } else {
+            scheduler.submit(priority, task);
+        }
+    }
+
+    private class TileTask extends PrefetchScheduler.Task {
+
+        private final long key;
+        private final int level;
+        private final int column;
+        private final int row;
+
+        TileTask(long key, int level, int column, int row) {
+            this.key = key;
+            this.level = level;
+            this.column = column;
+            this.row = row;
+        }
+
+        @Override
+        public void run() {
+            final Bitmap bitmap = isStale() ? null : decode(level, column, row);
+            final boolean stale = bitmap == null && isStale();
+            view.post(new Runnable() {
+                @Override
+                public void run() {
+                    pending.remove(key, 0);
+                    if (bitmap == null) {
+                        if (!stale) {
+                            failed.put(key, SystemClock.uptimeMillis() + RETRY_DELAY_MS);
+                        }
+                    } else if (!released) {
+                        cache.put(key, bitmap);
+                        view.invalidate();
+                        view.dispatchViewportChanged();
+                    }
+                }
+            });
+        }
+
+        @Override
+        protected void onCancelled() {
+            pending.remove(key, 0);
+        }
+    }
+
+    private Bitmap decode(int level, int column, int row) {
+        try {
+            InputStream stream = store.openTile(level, column, row);
+            try {
+                return BitmapFactory.decodeStream(stream);
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load tile " + level + "/" + column + "_" + row, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stops decoding and drops all cached tiles.
+     */
+    void release() {
+        released = true;
+        pending.clear();
+        failed.clear();
+        cache.evictAll();
+    }
+}
@@ -0,0 +1,144 @@
+package com.android.bigimage;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Properties;
+
+/**
+ * Image downloaded into a {@link DiskCache} and decoded from the cached file.
+ * The download is streamed to disk, so the image never has to fit into
+ * memory encoded. The first read of a source revalidates a cached copy with
+ * the server through its ETag or Last-Modified date; later reads, such as
+ * decodes at a higher resolution, use the file directly.
+ * <p>
+ * The cached file can also be opened by other readers, for example as a
+ * packed tile pyramid:
+ * <pre>
+ * map.setImageTiles(ImageSources.url(context, url).fetch().getPath());
+ * </pre>
+ */
+public class UrlImageSource implements ImageSource {
+
+    private static final int TIMEOUT_MS = 15000;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final String url;
+    private final DiskCache cache;
+    private File fetched;
+
+    UrlImageSource(String url, DiskCache cache) {
+        this.url = url;
+        this.cache = cache;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public String getKey() {
+        return url;
+    }
+
+    @Override
+    public boolean isLocal() {
+        return false;
+    }
+
+    @Override
+    public InputStream open(Context context) throws IOException {
+        return new BufferedInputStream(new FileInputStream(fetch()), 4096);
+    }
+
+    /**
+     * Downloads the image unless a cached copy is still valid. Blocks, must
+     * not be called on the UI thread. If the server cannot be reached a
+     * cached copy is used without revalidation.
+     *
+     * @return the cached file holding the image
+     * @throws IOException if the image is neither cached nor downloadable
+     */
+    public synchronized File fetch() throws IOException {
+        if (fetched != null && fetched.exists()) {
+            cache.touch(url);
+            return fetched;
+        }
+        File file = cache.getFile(url);
+        try {
+            file = download(file.exists() ? cache.getValidators(url) : new Properties());
+        } catch (IOException e) {
+            if (!file.exists()) {
+                throw e;
+            }
+            cache.touch(url);
+        }
+        fetched = file;
+        return file;
+    }
+
+    private File download(Properties validators) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            connection.setUseCaches(false);
+            String etag = validators.getProperty(DiskCache.ETAG);
+            if (etag != null) {
+                connection.setRequestProperty("If-None-Match", etag);
+            }
+            String lastModified = validators.getProperty(DiskCache.LAST_MODIFIED);
+            if (lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", lastModified);
+            }
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && !validators.isEmpty()) {
+                cache.touch(url);
+                return cache.getFile(url);
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + code + " for " + url);
+            }
+            Properties received = new Properties();
+            putIfPresent(received, DiskCache.ETAG, connection.getHeaderField("ETag"));
+            putIfPresent(received, DiskCache.LAST_MODIFIED, connection.getHeaderField("Last-Modified"));
+            File download = cache.createTempFile();
+            try {
+                copy(connection.getInputStream(), download);
+                return cache.commit(url, download, received);
+            } finally {
+                download.delete();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void putIfPresent(Properties properties, String name, String value) {
+        if (value != null) {
+            properties.setProperty(name, value);
+        }
+    }
+
+    private static void copy(InputStream in, File target) throws IOException {
+        OutputStream out = new FileOutputStream(target);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            out.close();
+            in.close();
+        }
+    }
+}
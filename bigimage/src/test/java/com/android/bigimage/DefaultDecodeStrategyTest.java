@@ -0,0 +1,92 @@
+package com.android.bigimage;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory.Options;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Sub-sampling and bitmap configurations chosen by
+ * {@link DefaultDecodeStrategy}, before and from Android 8.0, which added
+ * hardware bitmaps.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class DefaultDecodeStrategyTest {
+
+    @Test
+    public void sampleSizeIsTheLargestPowerOfTwoCoveringTheScale() {
+        assertEquals(1, DefaultDecodeStrategy.getSampleSize(2));
+        assertEquals(1, DefaultDecodeStrategy.getSampleSize(1));
+        assertEquals(1, DefaultDecodeStrategy.getSampleSize(0.6f));
+        assertEquals(2, DefaultDecodeStrategy.getSampleSize(0.5f));
+        assertEquals(2, DefaultDecodeStrategy.getSampleSize(0.3f));
+        assertEquals(4, DefaultDecodeStrategy.getSampleSize(0.25f));
+        assertEquals(64, DefaultDecodeStrategy.getSampleSize(0.01f));
+    }
+
+    @Test
+    public void unknownScalesDecodeAtFullResolution() {
+        assertEquals(1, DefaultDecodeStrategy.getSampleSize(0));
+        assertEquals(1, DefaultDecodeStrategy.getSampleSize(-1));
+        assertEquals(1, new DefaultDecodeStrategy().getDecodeOptions(bounds("image/png", 1000, 800), 0).inSampleSize);
+    }
+
+    @Test
+    public void decodesToArgb8888BeforeOreo() {
+        Options options = new DefaultDecodeStrategy().getDecodeOptions(bounds("image/jpeg", 1000, 800), 0.3f);
+        assertEquals(2, options.inSampleSize);
+        assertEquals(Bitmap.Config.ARGB_8888, options.inPreferredConfig);
+        assertEquals(Bitmap.Config.ARGB_8888, new DefaultDecodeStrategy().getDecodeOptions(null, 1).inPreferredConfig);
+    }
+
+    @Test
+    @Config(sdk = 26)
+    public void decodesToHardwareBitmapsFromOreo() {
+        assertEquals(Bitmap.Config.HARDWARE,
+                new DefaultDecodeStrategy().getDecodeOptions(bounds("image/png", 1000, 800), 1).inPreferredConfig);
+        assertEquals(Bitmap.Config.HARDWARE,
+                new DefaultDecodeStrategy(true).getDecodeOptions(null, 1).inPreferredConfig);
+    }
+
+    @Test
+    @Config(sdk = 26)
+    public void hardwareBitmapsCanBeDisallowed() {
+        DefaultDecodeStrategy strategy = new DefaultDecodeStrategy(false);
+        assertEquals(Bitmap.Config.ARGB_8888, strategy.getDecodeOptions(bounds("image/png", 1000, 800), 1).inPreferredConfig);
+        assertEquals(Bitmap.Config.RGB_565, strategy.getDecodeOptions(heapFilling("image/jpeg"), 1).inPreferredConfig);
+    }
+
+    @Test
+    public void onlyOpaqueImagesFillingTheHeapUseRgb565() {
+        DefaultDecodeStrategy strategy = new DefaultDecodeStrategy();
+        assertEquals(Bitmap.Config.RGB_565, strategy.getDecodeOptions(heapFilling("image/jpeg"), 1).inPreferredConfig);
+        assertEquals(Bitmap.Config.ARGB_8888, strategy.getDecodeOptions(heapFilling("image/png"), 1).inPreferredConfig);
+        // Sub-sampled by four, the bitmap takes a sixteenth of the memory.
+        assertEquals(Bitmap.Config.ARGB_8888, strategy.getDecodeOptions(heapFilling("image/jpeg"), 0.25f).inPreferredConfig);
+        assertEquals(Bitmap.Config.ARGB_8888, strategy.getDecodeOptions(bounds("image/jpeg", 1000, 800), 1).inPreferredConfig);
+    }
+
+    /**
+     * @return bounds of an image whose 32 bit bitmap takes just over a
+     * quarter of the heap
+     */
+    private static Options heapFilling(String mimeType) {
+        int width = 1 << 14;
+        long pixels = Runtime.getRuntime().maxMemory() / 16 + 1;
+        return bounds(mimeType, width, (int) (pixels / width) + 1);
+    }
+
+    private static Options bounds(String mimeType, int width, int height) {
+        Options bounds = new Options();
+        bounds.outMimeType = mimeType;
+        bounds.outWidth = width;
+        bounds.outHeight = height;
+        return bounds;
+    }
+}
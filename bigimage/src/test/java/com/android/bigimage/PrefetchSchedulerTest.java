@@ -0,0 +1,180 @@
+package com.android.bigimage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Ordering and cancellation of {@link PrefetchScheduler} tasks. The single
+ * worker thread is held by a blocking task while the tasks under test are
+ * queued, so they are ordered by the queue alone.
+ */
+public class PrefetchSchedulerTest {
+
+    private static final long TIMEOUT_S = 10;
+
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+    private PrefetchScheduler scheduler;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        scheduler = new PrefetchScheduler(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit(PrefetchScheduler.PRIORITY_VISIBLE, new PrefetchScheduler.Task() {
+            @Override
+            public void run() {
+                started.countDown();
+                await(gate);
+            }
+        });
+        assertTrue(started.await(TIMEOUT_S, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+        gate.countDown();
+    }
+
+    @Test
+    public void tasksRunByPriorityThenBySubmission() throws InterruptedException {
+        scheduler.submitPredicted(new Recording("predicted 1"));
+        scheduler.submit(PrefetchScheduler.PRIORITY_NEIGHBOUR, new Recording("neighbour"));
+        scheduler.submit(PrefetchScheduler.PRIORITY_VISIBLE, new Recording("visible 1"));
+        scheduler.submitPredicted(new Recording("predicted 2"));
+        scheduler.submit(PrefetchScheduler.PRIORITY_VISIBLE, new Recording("visible 2"));
+
+        drain();
+        assertEquals(Arrays.asList("visible 1", "visible 2", "neighbour", "predicted 1", "predicted 2"), ran);
+    }
+
+    @Test
+    public void turningCancelsQueuedPredictedTasks() throws InterruptedException {
+        assertFalse(scheduler.updateVelocity(100, 0));
+        Recording predicted = new Recording("predicted");
+        scheduler.submitPredicted(predicted);
+        scheduler.submit(PrefetchScheduler.PRIORITY_NEIGHBOUR, new Recording("neighbour"));
+
+        assertFalse("about the same direction", scheduler.updateVelocity(90, 20));
+        assertFalse(predicted.cancelled);
+        assertTrue(scheduler.updateVelocity(-100, 0));
+        assertTrue(predicted.cancelled);
+
+        drain();
+        assertEquals(Arrays.asList("neighbour"), ran);
+    }
+
+    @Test
+    public void stoppingCancelsQueuedPredictedTasks() throws InterruptedException {
+        scheduler.updateVelocity(0, 100);
+        Recording predicted = new Recording("predicted");
+        scheduler.submitPredicted(predicted);
+
+        assertTrue(scheduler.updateVelocity(0, 0));
+        assertTrue(predicted.cancelled);
+
+        drain();
+        assertEquals(Collections.<String>emptyList(), ran);
+    }
+
+    @Test
+    public void runningPredictedTasksBecomeStale() throws InterruptedException {
+        Pausing predicted = new Pausing();
+        Pausing visible = new Pausing();
+        scheduler.submitPredicted(predicted);
+        scheduler.submit(PrefetchScheduler.PRIORITY_VISIBLE, visible);
+        gate.countDown();
+
+        visible.resume();
+        assertTrue(predicted.started.await(TIMEOUT_S, TimeUnit.SECONDS));
+        scheduler.cancelPredicted();
+        predicted.resume();
+
+        assertTrue(visible.finished.await(TIMEOUT_S, TimeUnit.SECONDS));
+        assertTrue(predicted.finished.await(TIMEOUT_S, TimeUnit.SECONDS));
+        assertFalse(visible.staleBefore);
+        assertFalse(visible.staleAfter);
+        assertFalse(predicted.staleBefore);
+        assertTrue(predicted.staleAfter);
+    }
+
+    /**
+     * Opens the gate and waits for a task queued behind everything else.
+     */
+    private void drain() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        scheduler.submit(Integer.MAX_VALUE, new PrefetchScheduler.Task() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        gate.countDown();
+        assertTrue(done.await(TIMEOUT_S, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_S, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class Recording extends PrefetchScheduler.Task {
+
+        private final String name;
+        private volatile boolean cancelled;
+
+        Recording(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            ran.add(name);
+        }
+
+        @Override
+        protected void onCancelled() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * Records whether it is stale before and after waiting to be resumed.
+     */
+    private static class Pausing extends PrefetchScheduler.Task {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        private final CountDownLatch resumed = new CountDownLatch(1);
+        volatile boolean staleBefore;
+        volatile boolean staleAfter;
+
+        @Override
+        public void run() {
+            staleBefore = isStale();
+            started.countDown();
+            await(resumed);
+            staleAfter = isStale();
+            finished.countDown();
+        }
+
+        void resume() {
+            resumed.countDown();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.android.bigimage;
+
+import android.app.Activity;
+
+import com.android.imagemap.core.tiles.TilePyramid;
+import com.android.imagemap.core.tiles.TileStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bookkeeping of {@link TileLayer} when the {@link PrefetchScheduler} drops
+ * its predicted tiles. Tiles stay queued behind a blocking task, so none is
+ * decoded.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26)
+public class TileLayerTest {
+
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private PrefetchScheduler scheduler;
+    private TileLayer layer;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        scheduler = new PrefetchScheduler(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit(PrefetchScheduler.PRIORITY_VISIBLE, new PrefetchScheduler.Task() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        BigImage view = new BigImage(activity, Robolectric.buildAttributeSet().build());
+        layer = new TileLayer(view, new MissingTiles(), 1 << 20, scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        layer.release();
+        scheduler.shutdown();
+        gate.countDown();
+    }
+
+    @Test
+    public void cancelledTilesAreNoLongerPending() {
+        scheduler.updateVelocity(100, 0);
+        layer.prefetchViewport(1, 0, 0, 256, 256);
+        assertTrue(layer.isPending(0, 0, 0));
+
+        assertTrue(scheduler.updateVelocity(-100, 0));
+        assertFalse(layer.isPending(0, 0, 0));
+
+        // Not being pending any more, the tile can be requested again.
+        layer.prefetchViewport(1, 0, 0, 256, 256);
+        assertTrue(layer.isPending(0, 0, 0));
+    }
+
+    /**
+     * Pyramid of two by two tiles whose tiles cannot be read.
+     */
+    private static class MissingTiles implements TileStore {
+
+        @Override
+        public TilePyramid getPyramid() {
+            return new TilePyramid(512, 512, 256, "png");
+        }
+
+        @Override
+        public InputStream openTile(int level, int column, int row) throws IOException {
+            throw new IOException("No tile " + level + "/" + column + "_" + row);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
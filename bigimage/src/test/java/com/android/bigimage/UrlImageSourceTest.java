@@ -0,0 +1,172 @@
+package com.android.bigimage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link UrlImageSource} against a local HTTP server that serves
+ * generated bytes and answers conditional requests.
+ */
+public class UrlImageSourceTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private File directory;
+    private volatile byte[] body = bytes(10000, 1);
+    private volatile String etag = ETAG;
+    private int requests;
+    private int notModified;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                synchronized (UrlImageSourceTest.this) {
+                    requests++;
+                }
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    synchronized (UrlImageSourceTest.this) {
+                        notModified++;
+                    }
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        directory = File.createTempFile("disk-cache", "");
+        assertTrue(directory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void downloadsOnceAndRevalidatesCachedCopies() throws IOException {
+        DiskCache cache = new DiskCache(directory, 1 << 20);
+        UrlImageSource source = ImageSources.url(url("/floor.png"), cache);
+        assertArrayEquals(body, read(source.fetch()));
+        assertArrayEquals(body, read(source.fetch()));
+        assertEquals(1, requests);
+
+        // A new source, as after a restart, asks the server whether its copy
+        // is still valid instead of downloading it again.
+        UrlImageSource restarted = ImageSources.url(url("/floor.png"), cache);
+        assertArrayEquals(body, read(restarted.fetch()));
+        assertEquals(2, requests);
+        assertEquals(1, notModified);
+
+        body = bytes(12000, 2);
+        etag = "\"v2\"";
+        UrlImageSource changed = ImageSources.url(url("/floor.png"), cache);
+        assertArrayEquals(body, read(changed.fetch()));
+        assertEquals(3, requests);
+    }
+
+    @Test
+    public void usesCachedCopyWhenServerIsGone() throws IOException {
+        DiskCache cache = new DiskCache(directory, 1 << 20);
+        byte[] expected = body;
+        ImageSources.url(url("/floor.png"), cache).fetch();
+        String offline = url("/floor.png");
+        server.stop(0);
+        server = null;
+        assertArrayEquals(expected, read(ImageSources.url(offline, cache).fetch()));
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWithoutCachedCopy() throws IOException {
+        body = new byte[0];
+        String missing = url("/missing.png");
+        server.stop(0);
+        server = null;
+        ImageSources.url(missing, new DiskCache(directory, 1 << 20)).fetch();
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntries() throws IOException {
+        DiskCache cache = new DiskCache(directory, 25000);
+        File first = ImageSources.url(url("/1.png"), cache).fetch();
+        File second = ImageSources.url(url("/2.png"), cache).fetch();
+        assertTrue(first.setLastModified(System.currentTimeMillis() - 60000));
+        assertTrue(second.setLastModified(System.currentTimeMillis() - 30000));
+        File third = ImageSources.url(url("/3.png"), cache).fetch();
+        assertFalse(first.exists());
+        assertTrue(second.exists());
+        assertTrue(third.exists());
+        File[] files = directory.listFiles();
+        long total = 0;
+        for (File file : files) {
+            if (!file.getName().endsWith(".meta")) {
+                total += file.length();
+            }
+        }
+        assertTrue(Arrays.toString(files), total <= 25000);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31 + seed);
+        }
+        return bytes;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,282 @@
+package com.android.imagemap.compiler;
+
+import com.android.imagemap.core.Area;
+import com.android.imagemap.core.AreaParser;
+import com.android.imagemap.core.CompiledMap;
+import com.android.imagemap.core.GridIndex;
+import com.android.imagemap.core.MapData;
+import com.android.imagemap.core.Simplifier;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line tool turning an html image map into a {@link CompiledMap}
+ * that {@code ImageMap} loads without parsing xml.
+ * <p>
+ * Usage: {@code MapCompiler [--tolerance 0.5] [--scale 1.0] [--image-size 4000x3000] [--threads 4]
+ * <map.xml> <output>}
+ * <p>
+ * The map is validated first and nothing is written if it has errors. Areas
+ * are parsed with the same {@link AreaParser} the library uses. Areas sharing
+ * href and target are merged even if other areas lie between them, and
+ * polygons are simplified to the given tolerance in image pixels. Timings and
+ * sizes of every step are printed.
+ */
+public class MapCompiler {
+
+    private static final String USAGE = "Usage: MapCompiler [--tolerance 0.5] [--scale 1.0] "
+            + "[--image-size <width>x<height>] [--threads <count>] <map.xml> <output>";
+
+    public static void main(String[] args) throws IOException, XmlPullParserException {
+        Arguments arguments;
+        try {
+            arguments = Arguments.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        float tolerance = arguments.tolerance;
+        double scale = arguments.scale;
+        int threads = arguments.threads;
+        String input = arguments.input;
+        String output = arguments.output;
+
+        File source = new File(input);
+        byte[] xml = readFully(source);
+        XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+        long total = System.nanoTime();
+
+        long start = System.nanoTime();
+        MapValidator validator = new MapValidator(arguments.imageWidth, arguments.imageHeight);
+        validator.validate(newParser(factory, xml));
+        report("validate", start, validator.getAreaTags() + " area tags, "
+                + validator.getErrors().size() + " errors, " + validator.getWarnings().size() + " warnings");
+        for (String warning : validator.getWarnings()) {
+            System.err.println("warning: " + input + " " + warning);
+        }
+        if (!validator.getErrors().isEmpty()) {
+            for (String error : validator.getErrors()) {
+                System.err.println("error: " + input + " " + error);
+            }
+            System.exit(1);
+        }
+
+        start = System.nanoTime();
+        ArrayList<Area> areas;
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            areas = new AreaParser(scale, pool).parseAreas(newParser(factory, xml));
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        report("parse", start, areas.size() + " areas, " + countPoints(areas) + " vertices, "
+                + Math.max(threads, 1) + " threads");
+
+        start = System.nanoTime();
+        int parsed = areas.size();
+        areas = mergeDuplicates(areas);
+        report("merge", start, (parsed - areas.size()) + " duplicate href/target runs merged");
+
+        for (Area area : areas) {
+            if (area.computeSize() == 0) {
+                System.err.println("warning: " + input + " area " + area.id
+                        + (area.target == Integer.MIN_VALUE ? "" : " (target " + area.target + ")")
+                        + " has no surface and can never be tapped");
+            }
+        }
+
+        if (tolerance > 0) {
+            start = System.nanoTime();
+            int before = countPoints(areas);
+            for (int i = 0; i < areas.size(); i++) {
+                areas.set(i, Simplifier.simplify(areas.get(i), tolerance));
+            }
+            int after = countPoints(areas);
+            report("simplify", start, before + " -> " + after + " vertices ("
+                    + (before == 0 ? 0 : 100 * (before - after) / before) + "% removed)");
+        }
+
+        start = System.nanoTime();
+        MapData map = new MapData(areas);
+        GridIndex index = map.getIndex();
+        int largestCell = 0;
+        for (int cell = 0; cell < index.getCellCount(); cell++) {
+            largestCell = Math.max(largestCell, index.getCellSize(cell));
+        }
+        report("index", start, index.getCellCount() + " cells, at most " + largestCell + " areas per cell");
+
+        start = System.nanoTime();
+        File target = new File(output);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(target));
+        try {
+            CompiledMap.write(map, out);
+        } finally {
+            out.close();
+        }
+        report("write", start, target.length() + " bytes");
+
+        System.out.println(source + " (" + xml.length + " bytes) -> " + target + " (" + target.length()
+                + " bytes) in " + (System.nanoTime() - total) / 1000000 + " ms");
+    }
+
+    /**
+     * Command line arguments, see {@link #USAGE}.
+     */
+    static final class Arguments {
+
+        float tolerance;
+        double scale = 1;
+        int imageWidth;
+        int imageHeight;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String input;
+        String output;
+
+        /**
+         * @throws IllegalArgumentException if an option is unknown or lacks a
+         *                                  valid value, or if there are not
+         *                                  exactly two file arguments
+         */
+        static Arguments parse(String[] args) {
+            Arguments result = new Arguments();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    if (result.input == null) {
+                        result.input = arg;
+                    } else if (result.output == null) {
+                        result.output = arg;
+                    } else {
+                        throw new IllegalArgumentException("Unexpected argument " + arg);
+                    }
+                    continue;
+                }
+                if (!"--tolerance".equals(arg) && !"--scale".equals(arg)
+                        && !"--image-size".equals(arg) && !"--threads".equals(arg)) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                try {
+                    if ("--tolerance".equals(arg)) {
+                        result.tolerance = Float.parseFloat(value);
+                    } else if ("--scale".equals(arg)) {
+                        result.scale = Double.parseDouble(value);
+                    } else if ("--image-size".equals(arg)) {
+                        int separator = value.indexOf('x');
+                        if (separator < 0) {
+                            throw new NumberFormatException();
+                        }
+                        result.imageWidth = Integer.parseInt(value.substring(0, separator));
+                        result.imageHeight = Integer.parseInt(value.substring(separator + 1));
+                        if (result.imageWidth <= 0 || result.imageHeight <= 0) {
+                            throw new NumberFormatException();
+                        }
+                    } else {
+                        result.threads = Integer.parseInt(value);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value " + value + " for " + arg);
+                }
+            }
+            if (result.input == null || result.output == null) {
+                throw new IllegalArgumentException("Missing map or output file");
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Merges areas with the same id and target into the first of them. The
+     * parser only merges consecutive tags, exports often repeat an id later.
+     */
+    static ArrayList<Area> mergeDuplicates(List<Area> areas) {
+        ArrayList<Area> result = new ArrayList<>(areas.size());
+        Map<Long, Area> seen = new HashMap<>();
+        for (Area area : areas) {
+            Long key = ((long) area.id << 32) | (area.target & 0xffffffffL);
+            Area first = seen.get(key);
+            if (first == null) {
+                seen.put(key, area);
+                result.add(area);
+                continue;
+            }
+            for (int ring = 0; ring < area.ringCount; ring++) {
+                int ringStart = area.getRingStart(ring);
+                int ringEnd = area.getRingEnd(ring);
+                first.moveTo(area.points[ringStart], area.points[ringStart + 1]);
+                for (int i = ringStart + 2; i < ringEnd; i += 2) {
+                    first.lineTo(area.points[i], area.points[i + 1]);
+                }
+                first.close();
+            }
+            if (first.idStr == null) {
+                first.idStr = area.idStr;
+            }
+        }
+        for (Area area : result) {
+            area.trim();
+            area.computeBounds();
+        }
+        return result;
+    }
+
+    private static int countPoints(List<Area> areas) {
+        int count = 0;
+        for (Area area : areas) {
+            count += area.pointCount / 2;
+        }
+        return count;
+    }
+
+    private static XmlPullParser newParser(XmlPullParserFactory factory, byte[] xml)
+            throws XmlPullParserException {
+        XmlPullParser parser = factory.newPullParser();
+        parser.setInput(new ByteArrayInputStream(xml), null);
+        return parser;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    private static void report(String step, long start, String details) {
+        System.out.println(String.format("%-9s %6d ms  %s", step, (System.nanoTime() - start) / 1000000, details));
+    }
+}
@@ -0,0 +1,128 @@
+package com.android.imagemap.compiler;
+
+import com.android.imagemap.core.AreaParser;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the raw area tags of a map before it is handed to
+ * {@link AreaParser}, which expects well formed, non-negative integer
+ * coordinates and silently skips anything else.
+ */
+class MapValidator {
+
+    private final int imageWidth;
+    private final int imageHeight;
+    private final List<String> errors = new ArrayList<>();
+    private final List<String> warnings = new ArrayList<>();
+    private int areaTags;
+
+    /**
+     * @param imageWidth  width of the image the map belongs to, 0 to skip the
+     *                    range check
+     * @param imageHeight height of the image, 0 to skip the range check
+     */
+    MapValidator(int imageWidth, int imageHeight) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+    }
+
+    List<String> getErrors() {
+        return errors;
+    }
+
+    List<String> getWarnings() {
+        return warnings;
+    }
+
+    int getAreaTags() {
+        return areaTags;
+    }
+
+    void validate(XmlPullParser parser) throws XmlPullParserException, IOException {
+        for (int next = parser.next(); next != XmlPullParser.END_DOCUMENT; next = parser.next()) {
+            if (next == XmlPullParser.START_TAG && AreaParser.AREA_TAG_NAME.equals(parser.getName())) {
+                areaTags++;
+                validateArea(parser);
+            }
+        }
+    }
+
+    private void validateArea(XmlPullParser parser) {
+        String where = "line " + parser.getLineNumber() + ": ";
+        String href = parser.getAttributeValue(null, AreaParser.ATTR_HREF);
+        if (href == null) {
+            if (areaTags == 1) {
+                errors.add(where + "first area has no href");
+            } else {
+                warnings.add(where + "area without href joins the previous area");
+            }
+        } else if (!isInteger(href)) {
+            errors.add(where + "href \"" + href + "\" is not an integer");
+        }
+        String target = parser.getAttributeValue(null, AreaParser.ATTR_TARGET);
+        if (target != null && !isInteger(target)) {
+            errors.add(where + "target \"" + target + "\" is not an integer");
+        }
+        String shape = parser.getAttributeValue(null, "shape");
+        boolean rect = "rect".equalsIgnoreCase(shape);
+        if (!rect && !"poly".equalsIgnoreCase(shape)) {
+            warnings.add(where + "shape \"" + shape + "\" is not supported and is ignored");
+            return;
+        }
+        String coords = parser.getAttributeValue(null, AreaParser.ATTR_COORDS);
+        if (coords == null || coords.trim().isEmpty()) {
+            errors.add(where + "missing coords");
+            return;
+        }
+        String[] values = coords.split(",");
+        if (rect ? values.length != 4 : values.length < 6 || values.length % 2 != 0) {
+            errors.add(where + (rect ? "rect needs 4 coordinates, found " : "poly needs at least 3 x,y pairs, found ")
+                    + values.length + " values");
+            return;
+        }
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i].trim();
+            if (value.isEmpty() || !isDigits(value)) {
+                errors.add(where + "coordinate " + (i + 1) + " \"" + value
+                        + "\" is not a non-negative integer");
+                return;
+            }
+            int max = i % 2 == 0 ? imageWidth : imageHeight;
+            if (max > 0 && Long.parseLong(value) > max) {
+                warnings.add(where + "coordinate " + (i + 1) + " (" + value + ") lies outside of the image");
+            }
+        }
+        if (rect && (Integer.parseInt(values[0].trim()) >= Integer.parseInt(values[2].trim())
+                || Integer.parseInt(values[1].trim()) >= Integer.parseInt(values[3].trim()))) {
+            warnings.add(where + "rect is empty or its corners are swapped");
+        }
+    }
+
+    private static boolean isInteger(String value) {
+        try {
+            Integer.parseInt(value.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isDigits(String value) {
+        if (value.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
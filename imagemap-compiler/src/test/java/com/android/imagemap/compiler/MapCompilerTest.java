@@ -0,0 +1,144 @@
+package com.android.imagemap.compiler;
+
+import com.android.imagemap.core.Area;
+import com.android.imagemap.core.AreaParser;
+import com.android.imagemap.core.CompiledMap;
+import com.android.imagemap.core.MapData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MapCompilerTest {
+
+    /**
+     * Room 1 is split into two tags with room 2 between them, the polygon of
+     * room 2 has a redundant vertex in the middle of its bottom edge.
+     */
+    private static final String MAP = "<map>"
+            + "<area shape=\"rect\" coords=\"0,0,100,100\" href=\" 1 \" target=\"3\" title=\"Lobby\"/>"
+            + "<area shape=\"poly\" coords=\"200,0,300,0,300,100,250,100,200,100\" href=\"2\" target=\"1\"/>"
+            + "<area shape=\"rect\" coords=\"0,200,100,300\" href=\"1\" target=\"3\"/>"
+            + "</map>";
+
+    private File input;
+    private File output;
+
+    @Before
+    public void setUp() throws IOException {
+        input = File.createTempFile("map", ".xml");
+        output = File.createTempFile("map", ".imc");
+    }
+
+    @After
+    public void tearDown() {
+        input.delete();
+        output.delete();
+    }
+
+    @Test
+    public void argumentsAreParsed() {
+        MapCompiler.Arguments arguments = MapCompiler.Arguments.parse(new String[]{
+                "--tolerance", "0.5", "map.xml", "--image-size", "4000x3000", "--threads", "2", "map.bin"});
+        assertEquals(0.5f, arguments.tolerance, 0);
+        assertEquals(1, arguments.scale, 0);
+        assertEquals(4000, arguments.imageWidth);
+        assertEquals(3000, arguments.imageHeight);
+        assertEquals(2, arguments.threads);
+        assertEquals("map.xml", arguments.input);
+        assertEquals("map.bin", arguments.output);
+    }
+
+    @Test
+    public void invalidArgumentsAreRejected() {
+        String[][] invalid = {
+                {"--image-size", "4000", "map.xml", "map.bin"},
+                {"--image-size", "4000x", "map.xml", "map.bin"},
+                {"--image-size", "0x3000", "map.xml", "map.bin"},
+                {"--threads", "two", "map.xml", "map.bin"},
+                {"--verbose", "map.xml", "map.bin"},
+                {"map.xml", "map.bin", "extra.bin"},
+                {"map.xml", "map.bin", "--scale"},
+                {"map.xml"},
+        };
+        for (String[] args : invalid) {
+            try {
+                MapCompiler.Arguments.parse(args);
+                fail("accepted " + Arrays.toString(args));
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void mergesRepeatedIdsIntoFirstArea() throws Exception {
+        ArrayList<Area> parsed = new AreaParser().parseAreas(MapValidatorTest.parser(MAP));
+        assertEquals(3, parsed.size());
+
+        ArrayList<Area> merged = MapCompiler.mergeDuplicates(parsed);
+        assertEquals(2, merged.size());
+        Area room = merged.get(0);
+        assertEquals(1, room.id);
+        assertEquals(2, room.ringCount);
+        assertEquals(0, room.left, 0f);
+        assertEquals(300, room.bottom, 0f);
+        assertEquals(2, merged.get(1).id);
+    }
+
+    @Test
+    public void compiledMapLoadsBackSimplified() throws Exception {
+        write(input, MAP);
+        MapCompiler.main(new String[]{"--tolerance", "1", input.getPath(), output.getPath()});
+
+        MapData loaded = read(output);
+        assertTrue(loaded.isLazy());
+        assertEquals(2, loaded.size());
+        assertEquals(0, loaded.getAreaId(1));
+        assertEquals(1, loaded.getAreaId(2, 1));
+        assertEquals(0, loaded.findArea(50, 250));
+        assertEquals(1, loaded.findArea(250, 50));
+        assertEquals(-1, loaded.findArea(150, 50));
+        assertEquals("Lobby", loaded.getArea(0).idStr);
+        assertEquals(2, loaded.getArea(0).ringCount);
+        // The collinear vertex of room 2 is gone.
+        Area simplified = loaded.getArea(1);
+        assertEquals(8, simplified.pointCount);
+        assertArrayEquals(new float[]{200, 0, 300, 0, 300, 100, 200, 100},
+                Arrays.copyOf(simplified.points, simplified.pointCount), 0f);
+    }
+
+    private static void write(File file, String text) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static MapData read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return CompiledMap.read(buffer);
+        } finally {
+            in.close();
+        }
+    }
+}
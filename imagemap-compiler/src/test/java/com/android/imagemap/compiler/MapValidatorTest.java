@@ -0,0 +1,87 @@
+package com.android.imagemap.compiler;
+
+import com.android.imagemap.core.Area;
+import com.android.imagemap.core.AreaParser;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MapValidatorTest {
+
+    static XmlPullParser parser(String map) throws Exception {
+        XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+        parser.setInput(new StringReader(map));
+        return parser;
+    }
+
+    @Test
+    public void acceptedMapsParse() throws Exception {
+        String map = "<map>"
+                + "<area shape=\"rect\" coords=\" 0, 0, 10 ,10\" href=\" 12 \" target=\" 2\"/>"
+                + "<area shape=\"poly\" coords=\"20,0,30,0,30,10\" href=\"-4\"/>"
+                + "</map>";
+        MapValidator validator = new MapValidator(100, 100);
+        validator.validate(parser(map));
+        assertEquals(validator.getErrors().toString(), 0, validator.getErrors().size());
+        assertEquals(validator.getWarnings().toString(), 0, validator.getWarnings().size());
+        assertEquals(2, validator.getAreaTags());
+
+        ArrayList<Area> areas = new AreaParser().parseAreas(parser(map));
+        assertEquals(2, areas.size());
+        assertEquals(-4, areas.get(0).id);
+        assertEquals(12, areas.get(1).id);
+        assertEquals(2, areas.get(1).target);
+    }
+
+    @Test
+    public void reportsMalformedAreas() throws Exception {
+        MapValidator validator = new MapValidator(100, 100);
+        validator.validate(parser("<map>\n"
+                + "<area shape=\"rect\" coords=\"0,0,10,10\" href=\"room\"/>\n"
+                + "<area shape=\"rect\" coords=\"0,0,10\" href=\"1\" target=\"x\"/>\n"
+                + "<area shape=\"poly\" coords=\"0,0,10,0,10\" href=\"2\"/>\n"
+                + "<area shape=\"poly\" coords=\"0,0,-10,0,10,10\" href=\"3\"/>\n"
+                + "<area shape=\"poly\" href=\"4\"/>\n"
+                + "</map>"));
+        assertEquals(validator.getErrors().toString(), 6, validator.getErrors().size());
+        assertTrue(validator.getErrors().get(0), validator.getErrors().get(0).startsWith("line 2: href"));
+        assertTrue(validator.getErrors().get(1), validator.getErrors().get(1).startsWith("line 3: target"));
+        assertTrue(validator.getErrors().get(2), validator.getErrors().get(2).startsWith("line 3: rect needs 4"));
+        assertTrue(validator.getErrors().get(3), validator.getErrors().get(3).startsWith("line 4: poly needs"));
+        assertTrue(validator.getErrors().get(4), validator.getErrors().get(4).startsWith("line 5: coordinate 3"));
+        assertTrue(validator.getErrors().get(5), validator.getErrors().get(5).startsWith("line 6: missing coords"));
+    }
+
+    @Test
+    public void warnsAboutAreasThatAreIgnoredOrOutOfRange() throws Exception {
+        MapValidator validator = new MapValidator(100, 100);
+        validator.validate(parser("<map>\n"
+                + "<area shape=\"rect\" coords=\"0,0,10,10\" href=\"1\"/>\n"
+                + "<area shape=\"rect\" coords=\"20,0,30,10\"/>\n"
+                + "<area shape=\"circle\" coords=\"50,50,10\" href=\"2\"/>\n"
+                + "<area shape=\"rect\" coords=\"90,90,120,95\" href=\"3\"/>\n"
+                + "<area shape=\"rect\" coords=\"10,10,0,0\" href=\"4\"/>\n"
+                + "</map>"));
+        assertEquals(validator.getErrors().toString(), 0, validator.getErrors().size());
+        assertEquals(validator.getWarnings().toString(), 4, validator.getWarnings().size());
+        assertTrue(validator.getWarnings().get(0).startsWith("line 3: area without href"));
+        assertTrue(validator.getWarnings().get(1).startsWith("line 4: shape"));
+        assertTrue(validator.getWarnings().get(2).startsWith("line 5: coordinate 3"));
+        assertTrue(validator.getWarnings().get(3).startsWith("line 6: rect is empty"));
+    }
+
+    @Test
+    public void firstAreaNeedsHref() throws Exception {
+        MapValidator validator = new MapValidator(0, 0);
+        validator.validate(parser("<map><area shape=\"rect\" coords=\"0,0,10,10\"/></map>"));
+        assertEquals(1, validator.getErrors().size());
+        assertTrue(validator.getErrors().get(0).endsWith("first area has no href"));
+    }
+}
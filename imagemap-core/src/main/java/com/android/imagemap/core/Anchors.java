@@ -0,0 +1,137 @@
+package com.android.imagemap.core;
+
+import java.util.PriorityQueue;
+
+/**
+ * Representative points of an area, used to place labels and markers.
+ */
+public final class Anchors {
+
+    private Anchors() {
+    }
+
+    /**
+     * Stores the area weighted centroid of all rings into out[offset] and
+     * out[offset + 1]. Falls back to the center of the bounds for degenerate
+     * areas. The centroid of a concave area may lie outside of it.
+     */
+    public static void centroid(Area area, float[] out, int offset) {
+        float[] p = area.points;
+        double cx = 0;
+        double cy = 0;
+        double total = 0;
+        for (int ring = 0; ring < area.ringCount; ring++) {
+            int start = area.getRingStart(ring);
+            int end = area.getRingEnd(ring);
+            for (int i = start; i < end; i += 2) {
+                int j = i + 2 < end ? i + 2 : start;
+                double cross = (double) p[i] * p[j + 1] - (double) p[j] * p[i + 1];
+                cx += (p[i] + p[j]) * cross;
+                cy += (p[i + 1] + p[j + 1]) * cross;
+                total += cross;
+            }
+        }
+        if (Math.abs(total) < 1e-6) {
+            out[offset] = (area.left + area.right) / 2;
+            out[offset + 1] = (area.top + area.bottom) / 2;
+        } else {
+            out[offset] = (float) (cx / (3 * total));
+            out[offset + 1] = (float) (cy / (3 * total));
+        }
+    }
+
+    /**
+     * Finds the point inside the area farthest from its outline, the pole of
+     * inaccessibility, to within precision. Unlike the centroid it always lies
+     * inside the area, which makes it the best spot for a label.
+     *
+     * @return distance from the point stored in out to the outline, the
+     * radius of the largest circle fitting into the area around it
+     */
+    public static float poleOfInaccessibility(Area area, float precision, float[] out, int offset) {
+        float width = area.right - area.left;
+        float height = area.bottom - area.top;
+        float cellSize = Math.min(width, height);
+        if (cellSize <= 0) {
+            out[offset] = area.left;
+            out[offset + 1] = area.top;
+            return 0;
+        }
+        PriorityQueue<Cell> queue = new PriorityQueue<>();
+        float h = cellSize / 2;
+        for (float x = area.left; x < area.right; x += cellSize) {
+            for (float y = area.top; y < area.bottom; y += cellSize) {
+                queue.add(new Cell(x + h, y + h, h, area));
+            }
+        }
+
+        // Start from the centroid, which is a good guess for convex areas.
+        centroid(area, out, offset);
+        Cell best = new Cell(out[offset], out[offset + 1], 0, area);
+        Cell bounds = new Cell(area.left + width / 2, area.top + height / 2, 0, area);
+        if (bounds.distance > best.distance) {
+            best = bounds;
+        }
+
+        while (!queue.isEmpty()) {
+            Cell cell = queue.poll();
+            if (cell.distance > best.distance) {
+                best = cell;
+            }
+            // Skip cells that cannot hold a better point.
+            if (cell.max - best.distance <= precision) {
+                continue;
+            }
+            h = cell.half / 2;
+            queue.add(new Cell(cell.x - h, cell.y - h, h, area));
+            queue.add(new Cell(cell.x + h, cell.y - h, h, area));
+            queue.add(new Cell(cell.x - h, cell.y + h, h, area));
+            queue.add(new Cell(cell.x + h, cell.y + h, h, area));
+        }
+        out[offset] = best.x;
+        out[offset + 1] = best.y;
+        return Math.max(0, best.distance);
+    }
+
+    /**
+     * Distance from the point to the outline of the area, negative outside.
+     */
+    static float signedDistance(Area area, float x, float y) {
+        float[] p = area.points;
+        float min = Float.MAX_VALUE;
+        for (int ring = 0; ring < area.ringCount; ring++) {
+            int start = area.getRingStart(ring);
+            int end = area.getRingEnd(ring);
+            for (int i = start; i < end; i += 2) {
+                int j = i + 2 < end ? i + 2 : start;
+                min = Math.min(min, Geometry.sqSegmentDistance(x, y, p[i], p[i + 1], p[j], p[j + 1]));
+            }
+        }
+        float distance = (float) Math.sqrt(min);
+        return area.contains(x, y) ? distance : -distance;
+    }
+
+    private static final class Cell implements Comparable<Cell> {
+        final float x;
+        final float y;
+        final float half;
+        final float distance;
+        /**
+         * Upper bound of the distance of any point within the cell.
+         */
+        final float max;
+
+        Cell(float x, float y, float half, Area area) {
+            this.x = x;
+            this.y = y;
+            this.half = half;
+            distance = signedDistance(area, x, y);
+            max = distance + half * (float) Math.sqrt(2);
+        }
+
+        @Override
+        public int compareTo(Cell other) {
+            return Float.compare(other.max, max);
+        }
+    }
+}
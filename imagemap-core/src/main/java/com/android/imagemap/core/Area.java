@@ -0,0 +1,196 @@
+package com.android.imagemap.core;
+
+/**
+ * Platform independent geometry of a single map area. An area consists of one
+ * or more closed rings, every ring is stored as interleaved x,y pairs in
+ * {@link #points}. Rings are filled using the non-zero winding rule, the same
+ * way {@code android.graphics.Path} does by default.
+ */
+public class Area {
+
+    public int id;
+    public int target;
+    public String idStr;
+    /**
+     * Position of the area in the map document, higher values are on top.
+     */
+    public int order;
+
+    /**
+     * Interleaved x,y coordinates of all rings, only the first
+     * {@link #pointCount} values are used.
+     */
+    public float[] points = new float[16];
+    public int pointCount;
+
+    /**
+     * Offsets into {@link #points} where each ring starts, only the first
+     * {@link #ringCount} values are used.
+     */
+    public int[] rings = new int[2];
+    public int ringCount;
+
+    public float left;
+    public float top;
+    public float right;
+    public float bottom;
+
+    /**
+     * Starts a new ring at the given point.
+     */
+    public void moveTo(float x, float y) {
+        if (ringCount == rings.length) {
+            int[] grown = new int[rings.length * 2];
+            System.arraycopy(rings, 0, grown, 0, ringCount);
+            rings = grown;
+        }
+        rings[ringCount++] = pointCount;
+        add(x, y);
+    }
+
+    /**
+     * Appends a point to the current ring, starting one if there is none.
+     */
+    public void lineTo(float x, float y) {
+        if (ringCount == 0) {
+            moveTo(x, y);
+        } else {
+            add(x, y);
+        }
+    }
+
+    /**
+     * Rings are always treated as closed, kept for symmetry with Path.
+     */
+    public void close() {
+    }
+
+    private void add(float x, float y) {
+        if (pointCount + 2 > points.length) {
+            float[] grown = new float[points.length * 2];
+            System.arraycopy(points, 0, grown, 0, pointCount);
+            points = grown;
+        }
+        points[pointCount++] = x;
+        points[pointCount++] = y;
+    }
+
+    public int getRingStart(int ring) {
+        return rings[ring];
+    }
+
+    public int getRingEnd(int ring) {
+        return ring + 1 < ringCount ? rings[ring + 1] : pointCount;
+    }
+
+    /**
+     * Multiplies all coordinates by the given factor.
+     */
+    public void scale(float factor) {
+        for (int i = 0; i < pointCount; i++) {
+            points[i] *= factor;
+        }
+    }
+
+    /**
+     * Recomputes {@link #left}, {@link #top}, {@link #right} and {@link #bottom}
+     * from the current points.
+     */
+    public void computeBounds() {
+        if (pointCount == 0) {
+            left = top = right = bottom = 0;
+            return;
+        }
+        float l = Float.MAX_VALUE;
+        float t = Float.MAX_VALUE;
+        float r = -Float.MAX_VALUE;
+        float b = -Float.MAX_VALUE;
+        float[] p = points;
+        for (int i = 0; i < pointCount; i += 2) {
+            float x = p[i];
+            float y = p[i + 1];
+            if (x < l) l = x;
+            if (x > r) r = x;
+            if (y < t) t = y;
+            if (y > b) b = y;
+        }
+        left = l;
+        top = t;
+        right = r;
+        bottom = b;
+    }
+
+    /**
+     * Releases the unused tail of the point and ring buffers.
+     */
+    public void trim() {
+        if (points.length != pointCount) {
+            float[] p = new float[pointCount];
+            System.arraycopy(points, 0, p, 0, pointCount);
+            points = p;
+        }
+        if (rings.length != ringCount) {
+            int[] r = new int[ringCount];
+            System.arraycopy(rings, 0, r, 0, ringCount);
+            rings = r;
+        }
+    }
+
+    /**
+     * @return the surface covered by all rings, ignoring their orientation
+     */
+    public float computeSize() {
+        float[] p = points;
+        float size = 0;
+        for (int ring = 0; ring < ringCount; ring++) {
+            int start = getRingStart(ring);
+            int end = getRingEnd(ring);
+            float sum = 0;
+            for (int i = start; i < end; i += 2) {
+                int j = i + 2 < end ? i + 2 : start;
+                sum += p[i] * p[j + 1] - p[j] * p[i + 1];
+            }
+            size += Math.abs(sum) / 2;
+        }
+        return size;
+    }
+
+    public boolean boundsContain(float x, float y) {
+        return x >= left && x < right && y >= top && y < bottom;
+    }
+
+    /**
+     * Tests whether the given point is inside of the area. Bounds are checked
+     * first, so {@link #computeBounds()} must be called after modifications.
+     */
+    public boolean contains(float x, float y) {
+        if (!boundsContain(x, y)) {
+            return false;
+        }
+        float[] p = points;
+        int winding = 0;
+        for (int ring = 0; ring < ringCount; ring++) {
+            int start = getRingStart(ring);
+            int end = getRingEnd(ring);
+            for (int i = start; i < end; i += 2) {
+                int j = i + 2 < end ? i + 2 : start;
+                float x1 = p[i];
+                float y1 = p[i + 1];
+                float x2 = p[j];
+                float y2 = p[j + 1];
+                if (y1 <= y) {
+                    if (y2 > y && isLeft(x1, y1, x2, y2, x, y) > 0) {
+                        winding++;
+                    }
+                } else if (y2 <= y && isLeft(x1, y1, x2, y2, x, y) < 0) {
+                    winding--;
+                }
+            }
+        }
+        return winding != 0;
+    }
+
+    private static float isLeft(float x1, float y1, float x2, float y2, float x, float y) {
+        return (x2 - x1) * (y - y1) - (x - x1) * (y2 - y1);
+    }
+}
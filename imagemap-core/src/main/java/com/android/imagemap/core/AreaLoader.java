@@ -0,0 +1,12 @@
+package com.android.imagemap.core;
+
+import java.io.IOException;
+
+/**
+ * Loads the geometry of single areas on demand, used by {@link MapData}
+ * instances whose ids and bounds are known up front.
+ */
+public interface AreaLoader {
+
+    Area loadArea(int areaIndex) throws IOException;
+}
@@ -0,0 +1,75 @@
+package com.android.imagemap.core;
+
+import java.util.Arrays;
+
+/**
+ * Orders areas by id, then target, then document position with a least
+ * significant digit radix sort over primitive keys. Each pass is stable, so
+ * areas with equal id and target keep their document order and area indices
+ * are the same for every parse of a map.
+ */
+public final class AreaOrder {
+
+    private static final int DIGIT_BITS = 16;
+    private static final int BUCKETS = 1 << DIGIT_BITS;
+    private static final int DIGIT_MASK = BUCKETS - 1;
+
+    private AreaOrder() {
+    }
+
+    /**
+     * @param ids     id of every area in document order
+     * @param targets target of every area in document order
+     * @return document indices of the areas in sorted order
+     */
+    public static int[] sort(int[] ids, int[] targets, int count) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        int[] buffer = new int[count];
+        int[] counts = new int[BUCKETS + 1];
+        // Least significant key first: target, then id.
+        for (int pass = 0; pass < 4; pass++) {
+            int[] keys = pass < 2 ? targets : ids;
+            int shift = (pass % 2) * DIGIT_BITS;
+            if (sortPass(keys, shift, order, buffer, counts, count)) {
+                int[] swap = order;
+                order = buffer;
+                buffer = swap;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Counting sort of order into out by one 16 bit digit of the keys.
+     *
+     * @return false if all keys share the digit and out was left unchanged
+     */
+    private static boolean sortPass(int[] keys, int shift, int[] order, int[] out, int[] counts, int count) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < count; i++) {
+            counts[digit(keys[order[i]], shift) + 1]++;
+        }
+        for (int b = 0; b < BUCKETS; b++) {
+            if (counts[b + 1] == count) {
+                return false;
+            }
+            counts[b + 1] += counts[b];
+        }
+        for (int i = 0; i < count; i++) {
+            int index = order[i];
+            out[counts[digit(keys[index], shift)]++] = index;
+        }
+        return true;
+    }
+
+    /**
+     * Digit of the key with its sign bit flipped, so that negative keys sort
+     * before positive ones.
+     */
+    private static int digit(int key, int shift) {
+        return ((key ^ Integer.MIN_VALUE) >>> shift) & DIGIT_MASK;
+    }
+}
@@ -0,0 +1,280 @@
+package com.android.imagemap.core;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads html image map areas from an {@link XmlPullParser}. Consecutive area
+ * tags sharing the same href and target are merged into a single {@link Area},
+ * labelled by the title, or else the alt attribute of the first tag.
+ * The result is sorted by id and target, see {@link AreaOrder}.
+ */
+public class AreaParser {
+
+    public static final String ATTR_HREF = "href";
+    public static final String ATTR_COORDS = "coords";
+    public static final String AREA_TAG_NAME = "area";
+    public static final String ATTR_TARGET = "target";
+    /**
+     * Attributes holding the label of an area, in order of preference.
+     */
+    public static final String ATTR_TITLE = "title";
+    public static final String ATTR_ALT = "alt";
+
+    private static final String RECT = "rect";
+    private static final String POLY = "poly";
+    private static final String SHAPE = "shape";
+    private static final int SHAPE_OTHER = 0;
+    private static final int SHAPE_RECT = 1;
+    private static final int SHAPE_POLY = 2;
+
+    /**
+     * Runs handed to a single task when parsing in parallel.
+     */
+    private static final int RUNS_PER_TASK = 256;
+
+    private double scale;
+    private boolean scalePoints;
+    private ExecutorService executor;
+
+    public AreaParser() {
+    }
+
+    public AreaParser(double scale) {
+        this.scale = scale;
+        scalePoints = scale != 1.0;
+    }
+
+    /**
+     * Creates a parser that decodes coordinates on the given executor. The
+     * document itself is still read sequentially, but decoding, which
+     * dominates on large maps, runs in parallel. The result is identical to
+     * the sequential parser.
+     */
+    public AreaParser(double scale, ExecutorService executor) {
+        this(scale);
+        this.executor = executor;
+    }
+
+    public ArrayList<Area> parseAreas(XmlPullParser parser)
+            throws XmlPullParserException, IOException {
+        Records records = scan(parser);
+        ArrayList<Area> areas = records.areas;
+        int runs = areas.size();
+        if (executor == null || runs <= RUNS_PER_TASK) {
+            decode(records, 0, runs);
+        } else {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int from = 0; from < runs; from += RUNS_PER_TASK) {
+                tasks.add(executor.submit(new DecodeTask(records, from, Math.min(runs, from + RUNS_PER_TASK))));
+            }
+            await(tasks);
+        }
+        return sort(areas);
+    }
+
+    /**
+     * Raw attributes of all area tags. Consecutive tags with the same href
+     * and target form a run, which becomes one {@link Area}; the area is
+     * created here, its geometry is decoded later.
+     */
+    private static final class Records {
+        final ArrayList<Area> areas = new ArrayList<Area>();
+        final IntList runStarts = new IntList();
+        final ArrayList<String> coords = new ArrayList<String>();
+        final IntList shapes = new IntList();
+    }
+
+    private static Records scan(XmlPullParser parser) throws XmlPullParserException, IOException {
+        Records records = new Records();
+        ArrayList<Area> areas = records.areas;
+        int id = Integer.MIN_VALUE;
+        int target = Integer.MIN_VALUE;
+        Area area = null;
+        int next = parser.next();
+        while (next != XmlPullParser.END_DOCUMENT) {
+            if (next == XmlPullParser.START_TAG) {
+                String tag = parser.getName();
+                if (tag.equals(AREA_TAG_NAME)) {
+                    String hrefStr = parser.getAttributeValue(null, ATTR_HREF);
+                    if (hrefStr != null)
+                        id = Integer.parseInt(hrefStr.trim());
+                    String targetStr = parser.getAttributeValue(null, ATTR_TARGET);
+                    if (targetStr != null)
+                        target = Integer.parseInt(targetStr.trim());
+                    if (area == null || area.id != id || area.target != target) {
+                        area = new Area();
+                        area.id = id;
+                        area.target = target;
+                        area.order = areas.size();
+                        areas.add(area);
+                        records.runStarts.add(records.coords.size());
+                    }
+                    if (area.idStr == null) {
+                        area.idStr = readLabel(parser);
+                    }
+                    String shape = parser.getAttributeValue(null, SHAPE);
+                    records.shapes.add(POLY.equalsIgnoreCase(shape) ? SHAPE_POLY
+                            : RECT.equalsIgnoreCase(shape) ? SHAPE_RECT : SHAPE_OTHER);
+                    records.coords.add(parser.getAttributeValue(null, ATTR_COORDS));
+                }
+            }
+            next = parser.next();
+        }
+        return records;
+    }
+
+    /**
+     * Decodes the geometry of the runs from, inclusive, to to, exclusive.
+     */
+    private void decode(Records records, int from, int to) {
+        int tagCount = records.coords.size();
+        for (int run = from; run < to; run++) {
+            Area area = records.areas.get(run);
+            int end = run + 1 < records.runStarts.size() ? records.runStarts.get(run + 1) : tagCount;
+            for (int tag = records.runStarts.get(run); tag < end; tag++) {
+                int shape = records.shapes.get(tag);
+                if (shape == SHAPE_POLY) {
+                    attachPoly(area, records.coords.get(tag));
+                } else if (shape == SHAPE_RECT) {
+                    attachRect(area, records.coords.get(tag));
+                }
+            }
+            if (scalePoints) {
+                area.scale((float) scale);
+            }
+            area.trim();
+            area.computeBounds();
+        }
+    }
+
+    private class DecodeTask implements Runnable {
+
+        private final Records records;
+        private final int from;
+        private final int to;
+
+        DecodeTask(Records records, int from, int to) {
+            this.records = records;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void run() {
+            decode(records, from, to);
+        }
+    }
+
+    /**
+     * Waits for all tasks, rethrowing the failure of the first failed one.
+     */
+    private static void await(List<Future<?>> tasks) throws IOException {
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> task : tasks) {
+                task.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing areas");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Orders the areas by id, then target, keeping document order among
+     * areas sharing both, see {@link AreaOrder}. {@link Area#order} keeps the
+     * position of every area in the document.
+     */
+    private static ArrayList<Area> sort(ArrayList<Area> areas) {
+        int size = areas.size();
+        int[] ids = new int[size];
+        int[] targets = new int[size];
+        for (int i = 0; i < size; i++) {
+            Area area = areas.get(i);
+            ids[i] = area.id;
+            targets[i] = area.target;
+        }
+        int[] order = AreaOrder.sort(ids, targets, size);
+        ArrayList<Area> sorted = new ArrayList<Area>(size);
+        for (int i = 0; i < size; i++) {
+            sorted.add(areas.get(order[i]));
+        }
+        return sorted;
+    }
+
+    private static String readLabel(XmlPullParser parser) {
+        String label = parser.getAttributeValue(null, ATTR_TITLE);
+        if (label == null || label.isEmpty()) {
+            label = parser.getAttributeValue(null, ATTR_ALT);
+        }
+        return label == null || label.isEmpty() ? null : label;
+    }
+
+    static void attachRect(Area area, String coordsString) {
+        String[] coords = coordsString.split(",");
+        int x1 = Integer.parseInt(coords[0].trim());
+        int y1 = Integer.parseInt(coords[1].trim());
+        int x2 = Integer.parseInt(coords[2].trim());
+        int y2 = Integer.parseInt(coords[3].trim());
+        area.moveTo(x1, y1);
+        area.lineTo(x2, y1);
+        area.lineTo(x2, y2);
+        area.lineTo(x1, y2);
+        area.close();
+    }
+
+    static void attachPoly(Area area, String coords) {
+        int length = coords.length();
+        int x = 0;
+        int y = 0;
+        int commaCount = 0;
+        for (int i = 0; i < length; i++) {
+            char c = coords.charAt(i);
+            if (c == ',') {
+                commaCount++;
+                if (commaCount == 2) {
+                    area.moveTo(x, y);
+                    x = 0;
+                    y = 0;
+                } else if (commaCount % 2 == 0) {
+                    area.lineTo(x, y);
+                    x = 0;
+                    y = 0;
+                }
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                continue;
+            }
+            if (commaCount % 2 == 0) {
+                x *= 10;
+                x += c - '0';
+            } else {
+                y *= 10;
+                y += c - '0';
+            }
+        }
+        area.lineTo(x, y);
+        area.close();
+    }
+}
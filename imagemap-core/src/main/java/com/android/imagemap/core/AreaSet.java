@@ -0,0 +1,242 @@
+package com.android.imagemap.core;
+
+import java.util.Arrays;
+
+/**
+ * Set of area indices stored as a bitset, one bit per area. Membership tests
+ * are constant time, and union, intersection and difference of two sets work
+ * on 64 areas per step. Iterate with {@link #nextArea(int)}:
+ * <pre>
+ * for (int i = set.nextArea(0); i >= 0; i = set.nextArea(i + 1)) { ... }
+ * </pre>
+ */
+public class AreaSet {
+
+    private long[] words;
+    /**
+     * Number of leading words that may have bits set.
+     */
+    private int used;
+
+    public AreaSet() {
+        this(64);
+    }
+
+    /**
+     * @param capacity number of areas the set holds without growing
+     */
+    public AreaSet(int capacity) {
+        words = new long[Math.max((capacity + 63) >>> 6, 1)];
+    }
+
+    public AreaSet(AreaSet other) {
+        words = Arrays.copyOf(other.words, Math.max(other.used, 1));
+        used = other.used;
+    }
+
+    /**
+     * @return true if the area was not in the set
+     */
+    public boolean add(int areaIndex) {
+        if (areaIndex < 0) {
+            throw new IndexOutOfBoundsException("area " + areaIndex);
+        }
+        int w = areaIndex >>> 6;
+        ensureWords(w + 1);
+        long bit = 1L << areaIndex;
+        boolean added = (words[w] & bit) == 0;
+        words[w] |= bit;
+        used = Math.max(used, w + 1);
+        return added;
+    }
+
+    /**
+     * @return true if the area was in the set
+     */
+    public boolean remove(int areaIndex) {
+        int w = areaIndex >>> 6;
+        if (w >= used) {
+            return false;
+        }
+        long bit = 1L << areaIndex;
+        boolean removed = (words[w] & bit) != 0;
+        words[w] &= ~bit;
+        return removed;
+    }
+
+    public boolean contains(int areaIndex) {
+        int w = areaIndex >>> 6;
+        return areaIndex >= 0 && w < used && (words[w] & (1L << areaIndex)) != 0;
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0, used, 0);
+        used = 0;
+    }
+
+    public boolean isEmpty() {
+        for (int w = 0; w < used; w++) {
+            if (words[w] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of areas in the set
+     */
+    public int size() {
+        int count = 0;
+        for (int w = 0; w < used; w++) {
+            count += Long.bitCount(words[w]);
+        }
+        return count;
+    }
+
+    /**
+     * @return the smallest area index in the set that is at least from, -1
+     * if there is none
+     */
+    public int nextArea(int from) {
+        if (from < 0) {
+            from = 0;
+        }
+        int w = from >>> 6;
+        if (w >= used) {
+            return -1;
+        }
+        long word = words[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w >= used) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    /**
+     * Adds all areas of other to this set.
+     */
+    public AreaSet addAll(AreaSet other) {
+        ensureWords(other.used);
+        for (int w = 0; w < other.used; w++) {
+            words[w] |= other.words[w];
+        }
+        used = Math.max(used, other.used);
+        return this;
+    }
+
+    /**
+     * Keeps only the areas that are in other as well.
+     */
+    public AreaSet retainAll(AreaSet other) {
+        int common = Math.min(used, other.used);
+        for (int w = 0; w < common; w++) {
+            words[w] &= other.words[w];
+        }
+        Arrays.fill(words, common, used, 0);
+        used = common;
+        return this;
+    }
+
+    /**
+     * Removes all areas that are in other.
+     */
+    public AreaSet removeAll(AreaSet other) {
+        int common = Math.min(used, other.used);
+        for (int w = 0; w < common; w++) {
+            words[w] &= ~other.words[w];
+        }
+        return this;
+    }
+
+    /**
+     * Keeps the areas that are in exactly one of the two sets.
+     */
+    public AreaSet xor(AreaSet other) {
+        ensureWords(other.used);
+        for (int w = 0; w < other.used; w++) {
+            words[w] ^= other.words[w];
+        }
+        used = Math.max(used, other.used);
+        return this;
+    }
+
+    /**
+     * Makes this set a copy of other, reusing its storage.
+     */
+    public AreaSet set(AreaSet other) {
+        ensureWords(other.used);
+        System.arraycopy(other.words, 0, words, 0, other.used);
+        if (used > other.used) {
+            Arrays.fill(words, other.used, used, 0);
+        }
+        used = other.used;
+        return this;
+    }
+
+    /**
+     * @return true if both sets have an area in common
+     */
+    public boolean intersects(AreaSet other) {
+        int common = Math.min(used, other.used);
+        for (int w = 0; w < common; w++) {
+            if ((words[w] & other.words[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends the areas of the set to out in ascending order.
+     */
+    public void toList(IntList out) {
+        for (int i = nextArea(0); i >= 0; i = nextArea(i + 1)) {
+            out.add(i);
+        }
+    }
+
+    private void ensureWords(int count) {
+        if (count > words.length) {
+            words = Arrays.copyOf(words, Math.max(count, words.length * 2));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AreaSet)) {
+            return false;
+        }
+        AreaSet other = (AreaSet) o;
+        int common = Math.min(used, other.used);
+        for (int w = 0; w < common; w++) {
+            if (words[w] != other.words[w]) {
+                return false;
+            }
+        }
+        long[] longer = used > other.used ? words : other.words;
+        for (int w = common; w < Math.max(used, other.used); w++) {
+            if (longer[w] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = 1234;
+        for (int w = used; --w >= 0; ) {
+            h ^= words[w] * (w + 1);
+        }
+        return (int) ((h >> 32) ^ h);
+    }
+}
@@ -0,0 +1,177 @@
+package com.android.imagemap.core;
+
+import java.util.Arrays;
+
+/**
+ * Follows the area under a moving pointer. Consecutive positions of a drag or
+ * hover are close to each other, so the tracker keeps the neighbourhood of the
+ * last lookup: a rectangle around the last hit area and every area whose
+ * bounds overlap it, sorted by hit priority. As long as the pointer stays in
+ * that rectangle no other area can contain it, so only the neighbours are
+ * tested, the last hit first. The spatial index is queried again only when
+ * the pointer leaves the rectangle.
+ * <p>
+ * Results are the same as {@link MapData#findArea(float, float, HitPolicy, int)}.
+ * The tracker must be {@link #reset()} after the map was edited.
+ */
+public class AreaTracker {
+
+    /**
+     * Limits the neighbourhood to this many grid cells around the pointer, so
+     * a large background area does not pull in the whole map.
+     */
+    private static final float NEIGHBOURHOOD_CELLS = 2;
+
+    private final MapData map;
+    private final HitPolicy policy;
+    private final int target;
+    private final IntList query = new IntList();
+    private int[] neighbours = new int[16];
+    private long[] keys = new long[16];
+    private float[] neighbourBounds = new float[64];
+    private int neighbourCount;
+    private boolean valid;
+    private float left;
+    private float top;
+    private float right;
+    private float bottom;
+    private int last = -1;
+    private int lastPosition = -1;
+    private int rebuilds;
+
+    /**
+     * @param target only consider areas with this target, -1 for any
+     */
+    public AreaTracker(MapData map, HitPolicy policy, int target) {
+        this.map = map;
+        this.policy = policy;
+        this.target = target;
+    }
+
+    /**
+     * @return index of the area winning at the point in image coordinates, -1
+     * if there is none
+     */
+    public int find(float x, float y) {
+        if (!valid || x < left || y < top || x > right || y > bottom) {
+            rebuild(x, y);
+            return last;
+        }
+        int found = -1;
+        if (last >= 0 && contains(lastPosition, x, y)) {
+            // Only areas ranked above the last hit can take over.
+            found = scan(0, lastPosition, x, y);
+            if (found < 0) {
+                found = last;
+            }
+        } else {
+            found = scan(0, neighbourCount, x, y);
+        }
+        setLast(found);
+        return found;
+    }
+
+    /**
+     * @return the area returned by the last call to {@link #find(float, float)}
+     */
+    public int getLastArea() {
+        return last;
+    }
+
+    /**
+     * Forgets the neighbourhood, the next lookup queries the spatial index.
+     */
+    public void reset() {
+        valid = false;
+        last = -1;
+        lastPosition = -1;
+    }
+
+    /**
+     * Number of spatial index queries so far.
+     */
+    int getRebuildCount() {
+        return rebuilds;
+    }
+
+    private int scan(int from, int to, float x, float y) {
+        for (int k = from; k < to; k++) {
+            if (k != lastPosition && contains(k, x, y)) {
+                return neighbours[k];
+            }
+        }
+        return -1;
+    }
+
+    private boolean contains(int position, float x, float y) {
+        float[] b = neighbourBounds;
+        int o = position * 4;
+        return x >= b[o] && y >= b[o + 1] && x <= b[o + 2] && y <= b[o + 3]
+                && map.contains(neighbours[position], x, y);
+    }
+
+    private void setLast(int area) {
+        last = area;
+        lastPosition = -1;
+        for (int k = 0; k < neighbourCount && area >= 0; k++) {
+            if (neighbours[k] == area) {
+                lastPosition = k;
+                break;
+            }
+        }
+    }
+
+    private void rebuild(float x, float y) {
+        rebuilds++;
+        int hit = map.findArea(x, y, policy, target);
+        GridIndex index = map.getIndex();
+        float reachX = Math.max(index.getCellWidth(), 1) * NEIGHBOURHOOD_CELLS;
+        float reachY = Math.max(index.getCellHeight(), 1) * NEIGHBOURHOOD_CELLS;
+        float l = x - reachX;
+        float t = y - reachY;
+        float r = x + reachX;
+        float b = y + reachY;
+        if (hit >= 0) {
+            // Half the size of the hit area around it, so that moving on to an
+            // adjacent area is answered from the neighbourhood as well.
+            map.getBounds(hit, neighbourBounds, 0);
+            float padX = (neighbourBounds[2] - neighbourBounds[0]) / 2;
+            float padY = (neighbourBounds[3] - neighbourBounds[1]) / 2;
+            l = Math.max(l, neighbourBounds[0] - padX);
+            t = Math.max(t, neighbourBounds[1] - padY);
+            r = Math.min(r, neighbourBounds[2] + padX);
+            b = Math.min(b, neighbourBounds[3] + padY);
+        }
+        left = l;
+        top = t;
+        right = r;
+        bottom = b;
+
+        query.clear();
+        index.query(l, t, r, b, query);
+        int count = 0;
+        int[] candidates = query.values();
+        if (keys.length < query.size()) {
+            keys = new long[Math.max(query.size(), keys.length * 2)];
+        }
+        for (int k = 0; k < query.size(); k++) {
+            int i = candidates[k];
+            if (target == -1 || map.getTarget(i) == target) {
+                keys[count++] = map.hitKey(policy, i);
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        if (neighbours.length < count) {
+            neighbours = new int[keys.length];
+            neighbourBounds = new float[keys.length * 4];
+        }
+        for (int k = 0; k < count; k++) {
+            int i = (int) keys[k];
+            neighbours[k] = i;
+            map.getBounds(i, neighbourBounds, k * 4);
+        }
+        neighbourCount = count;
+        valid = true;
+        setLast(hit);
+    }
+}
@@ -0,0 +1,178 @@
+package com.android.imagemap.core;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Binary, indexed map format that can be loaded without parsing xml.
+ * <p>
+ * The file starts with a header (magic, version, area count) followed by a
+ * fixed size entry per area holding its ids, bounds, size and the position of
+ * its geometry record. Records hold the ring offsets, the points and the
+ * optional idStr. All values are big endian. Since entries have a fixed size,
+ * a reader only touches the records of areas that are actually used.
+ */
+public final class CompiledMap {
+
+    public static final int MAGIC = 0x494d4150; // "IMAP"
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int ENTRY_SIZE = 44;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CompiledMap() {
+    }
+
+    /**
+     * @return true if the buffer starts with a compiled map header
+     */
+    public static boolean isCompiledMap(ByteBuffer buffer) {
+        return buffer.remaining() >= HEADER_SIZE && buffer.getInt(buffer.position()) == MAGIC;
+    }
+
+    /**
+     * Writes the areas of the map, loading them first if the map is lazy.
+     * Removed areas are skipped, so indices of edited maps are not kept.
+     */
+    public static void write(MapData map, OutputStream out) throws IOException {
+        IntList live = new IntList(map.size());
+        for (int i = 0; i < map.size(); i++) {
+            if (!map.isRemoved(i)) {
+                live.add(i);
+            }
+        }
+        int count = live.size();
+        byte[][] names = new byte[count][];
+        int recordOffset = HEADER_SIZE + count * ENTRY_SIZE;
+        int[] offsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            Area area = map.getArea(live.get(i));
+            names[i] = area.idStr == null ? null : area.idStr.getBytes(UTF_8);
+            offsets[i] = recordOffset;
+            recordOffset += 4 * (area.ringCount + area.pointCount) + 4
+                    + (names[i] == null ? 0 : names[i].length);
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            Area area = map.getArea(live.get(i));
+            data.writeInt(area.id);
+            data.writeInt(area.target);
+            data.writeInt(area.order);
+            data.writeFloat(area.left);
+            data.writeFloat(area.top);
+            data.writeFloat(area.right);
+            data.writeFloat(area.bottom);
+            data.writeFloat(area.computeSize());
+            data.writeInt(offsets[i]);
+            data.writeInt(area.ringCount);
+            data.writeInt(area.pointCount);
+        }
+        for (int i = 0; i < count; i++) {
+            Area area = map.getArea(live.get(i));
+            for (int r = 0; r < area.ringCount; r++) {
+                data.writeInt(area.rings[r]);
+            }
+            for (int p = 0; p < area.pointCount; p++) {
+                data.writeFloat(area.points[p]);
+            }
+            if (names[i] == null) {
+                data.writeInt(-1);
+            } else {
+                data.writeInt(names[i].length);
+                data.write(names[i]);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads the header and index of a compiled map. Area geometry stays in the
+     * buffer until {@link MapData#getArea(int)} asks for it, so a memory
+     * mapped buffer is only paged in where it is used.
+     *
+     * @throws IOException if the buffer does not hold a supported compiled map
+     */
+    public static MapData read(ByteBuffer buffer) throws IOException {
+        final ByteBuffer source = buffer.slice();
+        if (source.remaining() < HEADER_SIZE || source.getInt(0) != MAGIC) {
+            throw new IOException("Not a compiled map");
+        }
+        int version = source.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported compiled map version " + version);
+        }
+        int count = source.getInt(8);
+        if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > source.limit()) {
+            throw new IOException("Corrupt compiled map header");
+        }
+        int[] dataIds = new int[count];
+        int[] targets = new int[count];
+        int[] orders = new int[count];
+        float[] bounds = new float[count * 4];
+        float[] sizes = new float[count];
+        for (int i = 0; i < count; i++) {
+            int e = HEADER_SIZE + i * ENTRY_SIZE;
+            dataIds[i] = source.getInt(e);
+            targets[i] = source.getInt(e + 4);
+            orders[i] = source.getInt(e + 8);
+            bounds[i * 4] = source.getFloat(e + 12);
+            bounds[i * 4 + 1] = source.getFloat(e + 16);
+            bounds[i * 4 + 2] = source.getFloat(e + 20);
+            bounds[i * 4 + 3] = source.getFloat(e + 24);
+            sizes[i] = source.getFloat(e + 28);
+        }
+        return new MapData(dataIds, targets, orders, bounds, sizes, new AreaLoader() {
+            @Override
+            public Area loadArea(int areaIndex) throws IOException {
+                return readArea(source, areaIndex);
+            }
+        });
+    }
+
+    static Area readArea(ByteBuffer source, int areaIndex) throws IOException {
+        int e = HEADER_SIZE + areaIndex * ENTRY_SIZE;
+        int offset = source.getInt(e + 32);
+        int ringCount = source.getInt(e + 36);
+        int pointCount = source.getInt(e + 40);
+        if (offset < 0 || ringCount < 0 || pointCount < 0
+                || offset + 4L * (ringCount + pointCount) + 4 > source.limit()) {
+            throw new IOException("Corrupt record for area " + areaIndex);
+        }
+        Area area = new Area();
+        area.id = source.getInt(e);
+        area.target = source.getInt(e + 4);
+        area.order = source.getInt(e + 8);
+        area.left = source.getFloat(e + 12);
+        area.top = source.getFloat(e + 16);
+        area.right = source.getFloat(e + 20);
+        area.bottom = source.getFloat(e + 24);
+        area.rings = new int[ringCount];
+        area.ringCount = ringCount;
+        for (int r = 0; r < ringCount; r++, offset += 4) {
+            area.rings[r] = source.getInt(offset);
+        }
+        area.points = new float[pointCount];
+        area.pointCount = pointCount;
+        for (int p = 0; p < pointCount; p++, offset += 4) {
+            area.points[p] = source.getFloat(offset);
+        }
+        int nameLength = source.getInt(offset);
+        if (nameLength > 0 && offset + 4L + nameLength <= source.limit()) {
+            byte[] name = new byte[nameLength];
+            ByteBuffer view = source.duplicate();
+            view.position(offset + 4);
+            view.get(name);
+            area.idStr = new String(name, UTF_8);
+        } else if (nameLength == 0) {
+            area.idStr = "";
+        }
+        return area;
+    }
+}
@@ -0,0 +1,172 @@
+package com.android.imagemap.core;
+
+/**
+ * Allocation free geometric predicates shared by the area queries.
+ */
+public final class Geometry {
+
+    private Geometry() {
+    }
+
+    /**
+     * Even-odd point in polygon test over count interleaved x,y values.
+     */
+    public static boolean polygonContains(float[] polygon, int count, float x, float y) {
+        boolean inside = false;
+        for (int i = 0, j = count - 2; i < count; j = i, i += 2) {
+            float yi = polygon[i + 1];
+            float yj = polygon[j + 1];
+            if ((yi > y) != (yj > y)) {
+                float xi = polygon[i];
+                float xj = polygon[j];
+                if (x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    public static boolean segmentsIntersect(float ax, float ay, float bx, float by,
+                                            float cx, float cy, float dx, float dy) {
+        float d1 = cross(cx, cy, dx, dy, ax, ay);
+        float d2 = cross(cx, cy, dx, dy, bx, by);
+        float d3 = cross(ax, ay, bx, by, cx, cy);
+        float d4 = cross(ax, ay, bx, by, dx, dy);
+        if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0))
+                && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+            return true;
+        }
+        return (d1 == 0 && onSegment(cx, cy, dx, dy, ax, ay))
+                || (d2 == 0 && onSegment(cx, cy, dx, dy, bx, by))
+                || (d3 == 0 && onSegment(ax, ay, bx, by, cx, cy))
+                || (d4 == 0 && onSegment(ax, ay, bx, by, dx, dy));
+    }
+
+    private static float cross(float ax, float ay, float bx, float by, float px, float py) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    private static boolean onSegment(float ax, float ay, float bx, float by, float px, float py) {
+        return Math.min(ax, bx) <= px && px <= Math.max(ax, bx)
+                && Math.min(ay, by) <= py && py <= Math.max(ay, by);
+    }
+
+    /**
+     * Squared distance from point p to the segment ab.
+     */
+    public static float sqSegmentDistance(float px, float py, float ax, float ay, float bx, float by) {
+        float dx = bx - ax;
+        float dy = by - ay;
+        if (dx != 0 || dy != 0) {
+            float t = ((px - ax) * dx + (py - ay) * dy) / (dx * dx + dy * dy);
+            if (t > 1) {
+                ax = bx;
+                ay = by;
+            } else if (t > 0) {
+                ax += dx * t;
+                ay += dy * t;
+            }
+        }
+        dx = px - ax;
+        dy = py - ay;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Tests whether the area and the rectangle share at least one point.
+     */
+    public static boolean intersectsRect(Area area, float left, float top, float right, float bottom) {
+        if (area.right < left || area.left > right || area.bottom < top || area.top > bottom) {
+            return false;
+        }
+        if (area.left >= left && area.right <= right && area.top >= top && area.bottom <= bottom) {
+            return true;
+        }
+        if (area.contains(left, top) || area.contains(right, top)
+                || area.contains(right, bottom) || area.contains(left, bottom)) {
+            return true;
+        }
+        float[] p = area.points;
+        for (int ring = 0; ring < area.ringCount; ring++) {
+            int start = area.getRingStart(ring);
+            int end = area.getRingEnd(ring);
+            for (int i = start; i < end; i += 2) {
+                int j = i + 2 < end ? i + 2 : start;
+                float x1 = p[i];
+                float y1 = p[i + 1];
+                if (x1 >= left && x1 <= right && y1 >= top && y1 <= bottom) {
+                    return true;
+                }
+                float x2 = p[j];
+                float y2 = p[j + 1];
+                if (segmentsIntersect(x1, y1, x2, y2, left, top, right, top)
+                        || segmentsIntersect(x1, y1, x2, y2, right, top, right, bottom)
+                        || segmentsIntersect(x1, y1, x2, y2, right, bottom, left, bottom)
+                        || segmentsIntersect(x1, y1, x2, y2, left, bottom, left, top)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether the area and the polygon, given as count interleaved x,y
+     * values, share at least one point.
+     */
+    public static boolean intersectsPolygon(Area area, float[] polygon, int count) {
+        if (count < 6) {
+            return false;
+        }
+        for (int k = 0; k < count; k += 2) {
+            if (area.contains(polygon[k], polygon[k + 1])) {
+                return true;
+            }
+        }
+        float[] p = area.points;
+        for (int ring = 0; ring < area.ringCount; ring++) {
+            int start = area.getRingStart(ring);
+            int end = area.getRingEnd(ring);
+            for (int i = start; i < end; i += 2) {
+                float x1 = p[i];
+                float y1 = p[i + 1];
+                if (polygonContains(polygon, count, x1, y1)) {
+                    return true;
+                }
+                int j = i + 2 < end ? i + 2 : start;
+                float x2 = p[j];
+                float y2 = p[j + 1];
+                for (int k = 0, l = count - 2; k < count; l = k, k += 2) {
+                    if (segmentsIntersect(x1, y1, x2, y2,
+                            polygon[l], polygon[l + 1], polygon[k], polygon[k + 1])) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether any point of the area lies within radius of the center.
+     */
+    public static boolean intersectsCircle(Area area, float cx, float cy, float radius) {
+        if (area.contains(cx, cy)) {
+            return true;
+        }
+        float sqRadius = radius * radius;
+        float[] p = area.points;
+        for (int ring = 0; ring < area.ringCount; ring++) {
+            int start = area.getRingStart(ring);
+            int end = area.getRingEnd(ring);
+            for (int i = start; i < end; i += 2) {
+                int j = i + 2 < end ? i + 2 : start;
+                if (sqSegmentDistance(cx, cy, p[i], p[i + 1], p[j], p[j + 1]) <= sqRadius) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
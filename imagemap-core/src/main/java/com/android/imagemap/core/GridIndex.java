@@ -0,0 +1,245 @@
+package com.android.imagemap.core;
+
+/**
+ * Uniform grid over the bounds of all areas. Every cell keeps the indices of
+ * the areas whose bounds overlap it in a fixed priority order, so a point
+ * lookup only has to look at the areas of a single cell and can stop at the
+ * first one containing the point. Range queries pre-filter candidates with
+ * the flat bounds array the index was built from.
+ * <p>
+ * Areas can be inserted and removed later on. The grid keeps its cells, areas
+ * beyond its original extent are assigned to the nearest border cells.
+ */
+public class GridIndex {
+
+    private static final int MAX_CELLS_PER_SIDE = 256;
+
+    private final float originX;
+    private final float originY;
+    private final float cellWidth;
+    private final float cellHeight;
+    private final int columns;
+    private final int rows;
+    private final int[][] cells;
+    private final int[] cellSizes;
+    private float[] bounds;
+    private float coverLeft;
+    private float coverTop;
+    private float coverRight;
+    private float coverBottom;
+
+    /**
+     * @param bounds left, top, right and bottom of every area, four values per
+     *               area. The array is kept by the index and must not change.
+     * @param order  area indices in the order cells should list them, or null
+     *               for ascending index order. Only the listed areas are
+     *               indexed, so the bounds may hold spare or unused slots.
+     */
+    public GridIndex(float[] bounds, int[] order) {
+        int count = order == null ? bounds.length / 4 : order.length;
+        this.bounds = bounds;
+        float l = Float.MAX_VALUE;
+        float t = Float.MAX_VALUE;
+        float r = -Float.MAX_VALUE;
+        float b = -Float.MAX_VALUE;
+        for (int k = 0; k < count; k++) {
+            int i = (order == null ? k : order[k]) * 4;
+            if (bounds[i] < l) l = bounds[i];
+            if (bounds[i + 1] < t) t = bounds[i + 1];
+            if (bounds[i + 2] > r) r = bounds[i + 2];
+            if (bounds[i + 3] > b) b = bounds[i + 3];
+        }
+        if (count == 0) {
+            l = t = 0;
+            r = b = 1;
+        }
+        float width = Math.max(r - l, 1);
+        float height = Math.max(b - t, 1);
+        // Roughly one area per cell, keeping cells close to square.
+        double side = Math.sqrt(width * height / Math.max(count, 1));
+        columns = clamp((int) Math.ceil(width / side));
+        rows = clamp((int) Math.ceil(height / side));
+        originX = l;
+        originY = t;
+        cellWidth = width / columns;
+        cellHeight = height / rows;
+        coverLeft = originX;
+        coverTop = originY;
+        coverRight = originX + cellWidth * columns;
+        coverBottom = originY + cellHeight * rows;
+        cells = new int[columns * rows][];
+        cellSizes = new int[columns * rows];
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (int k = 0; k < count; k++) {
+                int i = order == null ? k : order[k];
+                int c0 = column(bounds[i * 4]);
+                int c1 = column(bounds[i * 4 + 2]);
+                int r0 = row(bounds[i * 4 + 1]);
+                int r1 = row(bounds[i * 4 + 3]);
+                for (int row = r0; row <= r1; row++) {
+                    for (int column = c0; column <= c1; column++) {
+                        int cell = row * columns + column;
+                        if (pass == 0) {
+                            cellSizes[cell]++;
+                        } else {
+                            cells[cell][cellSizes[cell]++] = i;
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int cell = 0; cell < cells.length; cell++) {
+                    cells[cell] = new int[cellSizes[cell]];
+                    cellSizes[cell] = 0;
+                }
+            }
+        }
+    }
+
+    private static int clamp(int cellsPerSide) {
+        return Math.max(1, Math.min(MAX_CELLS_PER_SIDE, cellsPerSide));
+    }
+
+    private int column(float x) {
+        int column = (int) ((x - originX) / cellWidth);
+        return column < 0 ? 0 : column >= columns ? columns - 1 : column;
+    }
+
+    private int row(float y) {
+        int row = (int) ((y - originY) / cellHeight);
+        return row < 0 ? 0 : row >= rows ? rows - 1 : row;
+    }
+
+    /**
+     * @return the cell containing the point or -1 if the point is outside of
+     * the indexed bounds
+     */
+    public int getCell(float x, float y) {
+        if (x < coverLeft || y < coverTop || x > coverRight || y > coverBottom) {
+            return -1;
+        }
+        return row(y) * columns + column(x);
+    }
+
+    float getCellWidth() {
+        return cellWidth;
+    }
+
+    float getCellHeight() {
+        return cellHeight;
+    }
+
+    public int getCellCount() {
+        return cells.length;
+    }
+
+    /**
+     * Area indices overlapping the cell, only the first
+     * {@link #getCellSize(int)} entries are valid.
+     */
+    public int[] getCellItems(int cell) {
+        return cells[cell];
+    }
+
+    public int getCellSize(int cell) {
+        return cellSizes[cell];
+    }
+
+    /**
+     * Appends to out every area whose bounds intersect the given rectangle.
+     * Each area is reported once, in no particular order.
+     */
+    public void query(float left, float top, float right, float bottom, IntList out) {
+        if (right < coverLeft || bottom < coverTop || left > coverRight || top > coverBottom) {
+            return;
+        }
+        int c0 = column(left);
+        int c1 = column(right);
+        int r0 = row(top);
+        int r1 = row(bottom);
+        float[] b = bounds;
+        for (int row = r0; row <= r1; row++) {
+            for (int column = c0; column <= c1; column++) {
+                int cell = row * columns + column;
+                int[] items = cells[cell];
+                int size = cellSizes[cell];
+                for (int k = 0; k < size; k++) {
+                    int i = items[k];
+                    int o = i * 4;
+                    if (b[o] > right || b[o + 2] < left || b[o + 1] > bottom || b[o + 3] < top) {
+                        continue;
+                    }
+                    // An area spanning several cells is only reported by the
+                    // cell holding the top left corner of the overlap.
+                    if (column(Math.max(b[o], left)) == column && row(Math.max(b[o + 1], top)) == row) {
+                        out.add(i);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the bounds array after the owner grew it. Values of indexed
+     * areas must be unchanged.
+     */
+    void setBounds(float[] bounds) {
+        this.bounds = bounds;
+    }
+
+    /**
+     * Adds an area whose bounds are already stored in the bounds array. Cells
+     * list areas by descending priority, ties by ascending index.
+     */
+    void insert(int area, int[] priorities) {
+        int o = area * 4;
+        coverLeft = Math.min(coverLeft, bounds[o]);
+        coverTop = Math.min(coverTop, bounds[o + 1]);
+        coverRight = Math.max(coverRight, bounds[o + 2]);
+        coverBottom = Math.max(coverBottom, bounds[o + 3]);
+        int priority = priorities[area];
+        for (int row = row(bounds[o + 1]); row <= row(bounds[o + 3]); row++) {
+            for (int column = column(bounds[o]); column <= column(bounds[o + 2]); column++) {
+                int cell = row * columns + column;
+                int[] items = cells[cell];
+                int size = cellSizes[cell];
+                if (size == items.length) {
+                    int[] grown = new int[Math.max(4, size * 2)];
+                    System.arraycopy(items, 0, grown, 0, size);
+                    items = grown;
+                    cells[cell] = items;
+                }
+                int position = 0;
+                while (position < size && (priorities[items[position]] > priority
+                        || (priorities[items[position]] == priority && items[position] < area))) {
+                    position++;
+                }
+                System.arraycopy(items, position, items, position + 1, size - position);
+                items[position] = area;
+                cellSizes[cell] = size + 1;
+            }
+        }
+    }
+
+    /**
+     * Removes an area, must be called before its bounds change.
+     */
+    void remove(int area) {
+        int o = area * 4;
+        for (int row = row(bounds[o + 1]); row <= row(bounds[o + 3]); row++) {
+            for (int column = column(bounds[o]); column <= column(bounds[o + 2]); column++) {
+                int cell = row * columns + column;
+                int[] items = cells[cell];
+                int size = cellSizes[cell];
+                for (int k = 0; k < size; k++) {
+                    if (items[k] == area) {
+                        System.arraycopy(items, k + 1, items, k, size - k - 1);
+                        cellSizes[cell] = size - 1;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.android.imagemap.core;
+
+/**
+ * Areas grouped by data id in compressed sparse row form: the areas of all
+ * groups are stored back to back in one array, and group g owns the range
+ * from {@link #getStart(int)} to {@link #getEnd(int)}, in ascending area
+ * index order. The union of the bounds of every group is precomputed.
+ * <p>
+ * The index is a snapshot, {@link MapData} builds a new one after edits.
+ */
+public class GroupIndex {
+
+    private final IntIntMap groupById;
+    private final int[] dataIds;
+    private final int[] starts;
+    private final int[] members;
+    private final float[] bounds;
+
+    /**
+     * @param dataIds    data id of every area
+     * @param removed    areas to leave out, or null
+     * @param areaBounds left, top, right and bottom of every area
+     * @param count      number of areas
+     */
+    GroupIndex(int[] dataIds, boolean[] removed, float[] areaBounds, int count) {
+        groupById = new IntIntMap(count);
+        int[] groupOfArea = new int[count];
+        int[] counts = new int[Math.max(count, 1)];
+        int groups = 0;
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            if (removed != null && removed[i]) {
+                groupOfArea[i] = -1;
+                continue;
+            }
+            int g = groupById.get(dataIds[i], -1);
+            if (g < 0) {
+                g = groups++;
+                groupById.put(dataIds[i], g);
+            }
+            groupOfArea[i] = g;
+            counts[g]++;
+            total++;
+        }
+        this.dataIds = new int[groups];
+        starts = new int[groups + 1];
+        for (int g = 0; g < groups; g++) {
+            starts[g + 1] = starts[g] + counts[g];
+        }
+        members = new int[total];
+        bounds = new float[groups * 4];
+        int[] fill = counts;
+        System.arraycopy(starts, 0, fill, 0, groups);
+        for (int i = 0; i < count; i++) {
+            int g = groupOfArea[i];
+            if (g < 0) {
+                continue;
+            }
+            int o = g * 4;
+            int a = i * 4;
+            if (fill[g] == starts[g]) {
+                this.dataIds[g] = dataIds[i];
+                System.arraycopy(areaBounds, a, bounds, o, 4);
+            } else {
+                bounds[o] = Math.min(bounds[o], areaBounds[a]);
+                bounds[o + 1] = Math.min(bounds[o + 1], areaBounds[a + 1]);
+                bounds[o + 2] = Math.max(bounds[o + 2], areaBounds[a + 2]);
+                bounds[o + 3] = Math.max(bounds[o + 3], areaBounds[a + 3]);
+            }
+            members[fill[g]++] = i;
+        }
+    }
+
+    public int getGroupCount() {
+        return dataIds.length;
+    }
+
+    /**
+     * @return the group of the data id, -1 if no area has it
+     */
+    public int getGroup(int dataId) {
+        return groupById.get(dataId, -1);
+    }
+
+    public int getDataId(int group) {
+        return dataIds[group];
+    }
+
+    /**
+     * @return position of the first area of the group in {@link #getMembers()}
+     */
+    public int getStart(int group) {
+        return starts[group];
+    }
+
+    /**
+     * @return position after the last area of the group in {@link #getMembers()}
+     */
+    public int getEnd(int group) {
+        return starts[group + 1];
+    }
+
+    public int getSize(int group) {
+        return starts[group + 1] - starts[group];
+    }
+
+    /**
+     * Area indices of all groups, must not be modified.
+     */
+    public int[] getMembers() {
+        return members;
+    }
+
+    /**
+     * Stores the union of the bounds of the group's areas into out as left,
+     * top, right and bottom starting at offset.
+     */
+    public void getBounds(int group, float[] out, int offset) {
+        System.arraycopy(bounds, group * 4, out, offset, 4);
+    }
+}
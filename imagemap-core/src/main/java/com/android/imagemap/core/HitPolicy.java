@@ -0,0 +1,16 @@
+package com.android.imagemap.core;
+
+/**
+ * Decides which area wins a tap when several areas contain the point.
+ */
+public enum HitPolicy {
+    /**
+     * The area defined last in the map document wins, the same area that is
+     * painted on top when overlapping areas are highlighted.
+     */
+    TOPMOST,
+    /**
+     * The area with the smallest surface wins, ties go to the lower area index.
+     */
+    SMALLEST
+}
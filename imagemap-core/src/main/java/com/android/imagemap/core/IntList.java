@@ -0,0 +1,69 @@
+package com.android.imagemap.core;
+
+/**
+ * Growable list of primitive ints. Query methods append their results to an
+ * IntList so that callers can reuse a single instance and avoid boxing.
+ */
+public class IntList {
+
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            int[] grown = new int[values.length * 2];
+            System.arraycopy(values, 0, grown, 0, size);
+            values = grown;
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Drops all values from the given size on.
+     */
+    public void truncate(int size) {
+        if (size < this.size) {
+            this.size = Math.max(size, 0);
+        }
+    }
+
+    /**
+     * Backing array, only the first {@link #size()} values are valid.
+     */
+    public int[] values() {
+        return values;
+    }
+
+    public int[] toArray() {
+        int[] result = new int[size];
+        System.arraycopy(values, 0, result, 0, size);
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+package com.android.imagemap.core;
+
+import java.util.Arrays;
+
+/**
+ * Label texts of a map together with their anchor points. Every area with
+ * a non empty {@link Area#idStr} gets one label, anchored at its pole of
+ * inaccessibility. Labels are ordered by descending radius, the free space
+ * around the anchor, so placing them greedily in this order favours labels
+ * of spacious areas.
+ */
+public class Labels {
+
+    private final int[] areaIndices;
+    private final String[] texts;
+    private final float[] anchors;
+    private final float[] radii;
+
+    private Labels(int[] areaIndices, String[] texts, float[] anchors, float[] radii) {
+        this.areaIndices = areaIndices;
+        this.texts = texts;
+        this.anchors = anchors;
+        this.radii = radii;
+    }
+
+    /**
+     * Computes the anchors of all labelled areas. Loads every area of lazy
+     * maps, so it should not be called on the UI thread.
+     *
+     * @param precision accuracy of the anchors in image pixels
+     */
+    public static Labels build(MapData data, float precision) {
+        int size = data.size();
+        IntList labelled = new IntList();
+        for (int i = 0; i < size; i++) {
+            String text = data.isRemoved(i) ? null : data.getArea(i).idStr;
+            if (text != null && !text.trim().isEmpty()) {
+                labelled.add(i);
+            }
+        }
+        int count = labelled.size();
+        float[] anchors = new float[count * 2];
+        float[] radii = new float[count];
+        long[] keys = new long[count];
+        for (int k = 0; k < count; k++) {
+            radii[k] = Anchors.poleOfInaccessibility(data.getArea(labelled.get(k)), precision, anchors, k * 2);
+            // Radii are non-negative, so their bits sort like the values.
+            keys[k] = ((long) (Integer.MAX_VALUE - Float.floatToIntBits(radii[k])) << 32) | k;
+        }
+        Arrays.sort(keys);
+
+        int[] sortedIndices = new int[count];
+        String[] sortedTexts = new String[count];
+        float[] sortedAnchors = new float[count * 2];
+        float[] sortedRadii = new float[count];
+        for (int n = 0; n < count; n++) {
+            int k = (int) keys[n];
+            sortedIndices[n] = labelled.get(k);
+            sortedTexts[n] = data.getArea(sortedIndices[n]).idStr.trim();
+            sortedAnchors[n * 2] = anchors[k * 2];
+            sortedAnchors[n * 2 + 1] = anchors[k * 2 + 1];
+            sortedRadii[n] = radii[k];
+        }
+        return new Labels(sortedIndices, sortedTexts, sortedAnchors, sortedRadii);
+    }
+
+    public int size() {
+        return texts.length;
+    }
+
+    public int getAreaIndex(int label) {
+        return areaIndices[label];
+    }
+
+    public String getText(int label) {
+        return texts[label];
+    }
+
+    public float getX(int label) {
+        return anchors[label * 2];
+    }
+
+    public float getY(int label) {
+        return anchors[label * 2 + 1];
+    }
+
+    /**
+     * @return radius of the largest circle around the anchor that fits into
+     * the area, in image pixels
+     */
+    public float getRadius(int label) {
+        return radii[label];
+    }
+}
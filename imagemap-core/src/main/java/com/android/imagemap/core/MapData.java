@@ -0,0 +1,797 @@
+package com.android.imagemap.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parsed map ready for lookups: the areas, the id tables and the spatial
+ * index used for hit-testing. Lookups are safe from any thread.
+ * <p>
+ * Areas can be added, replaced and removed with {@link #putArea(Area)} and
+ * {@link #removeArea(int, int)}, which update the id tables and the spatial
+ * index in place. Area indices stay stable across edits. Edits are not
+ * synchronized with lookups, so a map that is edited must only be used from
+ * the thread doing the edits, usually the UI thread.
+ * <p>
+ * A map can also be backed by an {@link AreaLoader}, in which case only ids,
+ * bounds and sizes are held in memory and the geometry of an area is loaded
+ * the first time it is needed.
+ */
+public class MapData {
+
+    private Area[] areas;
+    private final AreaLoader loader;
+    /**
+     * Set for compact maps, whose areas are decoded on every use instead of
+     * being kept; hit tests decode into a per thread scratch area.
+     */
+    private final PackedGeometry packed;
+    private final ThreadLocal<Area> scratch;
+    private int[] dataIds;
+    private int[] targets;
+    private int[] orders;
+    private float[] bounds;
+    private float[] sizes;
+    /**
+     * Interleaved x,y centroids, NaN until computed for lazy maps.
+     */
+    private float[] centroids;
+    /**
+     * Slots freed by {@link #removeArea(int, int)}, reused by later inserts.
+     */
+    private boolean[] removed;
+    private final IntList freeSlots = new IntList();
+    private int size;
+    private int maxOrder = -1;
+    /**
+     * Lowest area index for every data id; areas sharing an id are chained
+     * in ascending index order through {@link #nextWithId}.
+     */
+    private final IntIntMap firstWithId;
+    private int[] nextWithId;
+    private final GridIndex index;
+    private volatile GridIndex smallestFirstIndex;
+    private volatile int[] indexByOrder;
+    private volatile GroupIndex groupIndex;
+
+    /**
+     * @param areas areas sorted by id and target, as returned by
+     *              {@link AreaParser#parseAreas(org.xmlpull.v1.XmlPullParser)}
+     */
+    public MapData(List<Area> areas) {
+        int size = areas.size();
+        this.size = size;
+        this.areas = areas.toArray(new Area[size]);
+        loader = null;
+        packed = null;
+        scratch = null;
+        dataIds = new int[size];
+        targets = new int[size];
+        orders = new int[size];
+        bounds = new float[size * 4];
+        for (int i = 0; i < size; i++) {
+            Area a = this.areas[i];
+            dataIds[i] = a.id;
+            targets[i] = a.target;
+            orders[i] = a.order;
+            bounds[i * 4] = a.left;
+            bounds[i * 4 + 1] = a.top;
+            bounds[i * 4 + 2] = a.right;
+            bounds[i * 4 + 3] = a.bottom;
+        }
+        centroids = new float[size * 2];
+        for (int i = 0; i < size; i++) {
+            Anchors.centroid(this.areas[i], centroids, i * 2);
+        }
+        removed = new boolean[size];
+        firstWithId = new IntIntMap(size);
+        nextWithId = new int[size];
+        linkIds();
+        index = new GridIndex(bounds, hitOrder(HitPolicy.TOPMOST));
+        groupIndex = new GroupIndex(dataIds, removed, bounds, size);
+    }
+
+    /**
+     * Creates a map whose geometry is loaded lazily. All arrays describe the
+     * areas in ascending id order and are kept by the instance.
+     *
+     * @param bounds left, top, right and bottom of every area
+     * @param sizes  surface of every area, see {@link Area#computeSize()}
+     */
+    public MapData(int[] dataIds, int[] targets, int[] orders, float[] bounds, float[] sizes,
+                   AreaLoader loader) {
+        this.size = dataIds.length;
+        this.areas = new Area[dataIds.length];
+        this.loader = loader;
+        if (loader instanceof PackedGeometry) {
+            packed = (PackedGeometry) loader;
+            scratch = new ThreadLocal<Area>() {
+                @Override
+                protected Area initialValue() {
+                    return new Area();
+                }
+            };
+        } else {
+            packed = null;
+            scratch = null;
+        }
+        this.dataIds = dataIds;
+        this.targets = targets;
+        this.orders = orders;
+        this.bounds = bounds;
+        this.sizes = sizes;
+        centroids = new float[dataIds.length * 2];
+        Arrays.fill(centroids, Float.NaN);
+        removed = new boolean[size];
+        firstWithId = new IntIntMap(size);
+        nextWithId = new int[size];
+        linkIds();
+        index = new GridIndex(bounds, hitOrder(HitPolicy.TOPMOST));
+        groupIndex = new GroupIndex(dataIds, removed, bounds, size);
+    }
+
+    private MapData(MapData source) {
+        size = source.size;
+        areas = source.areas.clone();
+        loader = null;
+        packed = null;
+        scratch = null;
+        dataIds = source.dataIds.clone();
+        targets = source.targets.clone();
+        orders = source.orders.clone();
+        bounds = source.bounds.clone();
+        sizes = source.sizes != null ? source.sizes.clone() : null;
+        centroids = source.centroids.clone();
+        removed = source.removed.clone();
+        for (int k = 0; k < source.freeSlots.size(); k++) {
+            freeSlots.add(source.freeSlots.get(k));
+        }
+        firstWithId = new IntIntMap(dataIds.length);
+        nextWithId = new int[dataIds.length];
+        linkIds();
+        maxOrder = Math.max(maxOrder, source.maxOrder);
+        index = new GridIndex(bounds, hitOrder(HitPolicy.TOPMOST));
+    }
+
+    /**
+     * Builds the id table, walking backwards so that every chain ends up in
+     * ascending index order.
+     */
+    private void linkIds() {
+        for (int i = size - 1; i >= 0; i--) {
+            if (removed[i]) {
+                nextWithId[i] = -1;
+                continue;
+            }
+            nextWithId[i] = firstWithId.get(dataIds[i], -1);
+            firstWithId.put(dataIds[i], i);
+            maxOrder = Math.max(maxOrder, orders[i]);
+        }
+    }
+
+    /**
+     * @return true if area geometry is loaded on demand
+     */
+    public boolean isLazy() {
+        return loader != null;
+    }
+
+    /**
+     * @return true if this map was created by {@link #compact()}
+     */
+    public boolean isCompact() {
+        return packed != null;
+    }
+
+    /**
+     * @return the geometry of a compact map, null for other maps
+     */
+    PackedGeometry getPackedGeometry() {
+        return packed;
+    }
+
+    /**
+     * Returns a read-only copy of the map holding its geometry in a
+     * {@link PackedGeometry} instead of one {@link Area} per area. Areas
+     * returned by {@link #getArea(int)} are decoded on every call, hit tests
+     * decode into a reused area. Lazy maps are returned as they are.
+     *
+     * @throws IllegalStateException if areas were removed from the map
+     */
+    public MapData compact() {
+        if (loader != null) {
+            return this;
+        }
+        if (!freeSlots.isEmpty()) {
+            throw new IllegalStateException("Maps with removed areas cannot be compacted");
+        }
+        int[] ids = Arrays.copyOf(dataIds, size);
+        int[] t = Arrays.copyOf(targets, size);
+        int[] o = Arrays.copyOf(orders, size);
+        float[] b = Arrays.copyOf(bounds, size * 4);
+        float[] s = new float[size];
+        for (int i = 0; i < size; i++) {
+            s[i] = sizes != null ? sizes[i] : areas[i].computeSize();
+        }
+        MapData compact = new MapData(ids, t, o, b, s, PackedGeometry.pack(this, size, ids, t, o, b));
+        System.arraycopy(centroids, 0, compact.centroids, 0, size * 2);
+        return compact;
+    }
+
+    /**
+     * Returns a copy of the map that can be edited without affecting this
+     * one, for example to take a snapshot of a map that is being edited.
+     * Area indices, including those of removed areas, are the same in the
+     * copy. Areas are shared, edits replace them instead of changing them.
+     *
+     * @throws UnsupportedOperationException if the map is lazy
+     */
+    public MapData copy() {
+        requireEditable();
+        return new MapData(this);
+    }
+
+    /**
+     * Same as {@link #getArea(int)}, but compact maps decode the area into
+     * reuse instead of allocating a new one.
+     *
+     * @return reuse or the area held by the map, which must not be modified
+     */
+    public Area getArea(int areaIndex, Area reuse) {
+        if (packed == null) {
+            return getArea(areaIndex);
+        }
+        packed.decode(areaIndex, reuse);
+        return reuse;
+    }
+
+    /**
+     * Geometry for a single test, which must not be kept.
+     */
+    private Area geometry(int areaIndex) {
+        if (packed == null) {
+            return getArea(areaIndex);
+        }
+        Area area = scratch.get();
+        packed.decode(areaIndex, area);
+        return area;
+    }
+
+    /**
+     * Area indices sorted by descending hit priority under the given policy.
+     */
+    private int[] hitOrder(HitPolicy policy) {
+        if (policy == HitPolicy.SMALLEST && sizes == null) {
+            float[] computed = new float[dataIds.length];
+            for (int i = 0; i < size; i++) {
+                computed[i] = geometry(i).computeSize();
+            }
+            sizes = computed;
+        }
+        long[] keys = new long[size - freeSlots.size()];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (removed[i]) {
+                continue;
+            }
+            keys[count++] = hitKey(policy, i);
+        }
+        Arrays.sort(keys);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Sort key of the area under the policy, lower keys win. Sizes must have
+     * been computed for {@link HitPolicy#SMALLEST}.
+     */
+    long hitKey(HitPolicy policy, int areaIndex) {
+        // Both ranks are non-negative, so sorting the packed keys sorts by
+        // rank first and by area index second.
+        int rank = policy == HitPolicy.SMALLEST
+                ? Float.floatToIntBits(sizes[areaIndex])
+                : Integer.MAX_VALUE - Math.max(orders[areaIndex], 0);
+        return ((long) rank << 32) | areaIndex;
+    }
+
+    private GridIndex getHitIndex(HitPolicy policy) {
+        if (policy != HitPolicy.SMALLEST) {
+            return index;
+        }
+        GridIndex result = smallestFirstIndex;
+        if (result == null) {
+            synchronized (this) {
+                result = smallestFirstIndex;
+                if (result == null) {
+                    result = new GridIndex(bounds, hitOrder(HitPolicy.SMALLEST));
+                    smallestFirstIndex = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of area indices in use, including removed ones, see
+     * {@link #isRemoved(int)}
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the area was removed; its index stays valid and holds
+     * an empty area until it is reused by {@link #putArea(Area)}
+     */
+    public boolean isRemoved(int areaIndex) {
+        return removed[areaIndex];
+    }
+
+    /**
+     * Returns the geometry of the area, loading it first for lazy maps.
+     *
+     * @throws IllegalStateException if the area cannot be loaded
+     */
+    public Area getArea(int areaIndex) {
+        if (packed != null) {
+            return packed.loadArea(areaIndex);
+        }
+        Area area = areas[areaIndex];
+        if (area == null) {
+            try {
+                // Concurrent loads of the same area yield equal copies, so
+                // the unsynchronized publication is harmless.
+                area = loader.loadArea(areaIndex);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to load area " + areaIndex, e);
+            }
+            areas[areaIndex] = area;
+        }
+        return area;
+    }
+
+    /**
+     * @return position of the area in the map document, higher values are
+     * drawn on top
+     */
+    public int getOrder(int areaIndex) {
+        return orders[areaIndex];
+    }
+
+    /**
+     * Maps a position in the map document back to the area index, the
+     * inverse of {@link #getOrder(int)}.
+     *
+     * @return index of the area or -1 if no area has that position
+     */
+    public int getAreaIndexForOrder(int order) {
+        int[] lookup = indexByOrder;
+        if (lookup == null) {
+            lookup = new int[maxOrder + 1];
+            Arrays.fill(lookup, -1);
+            for (int i = 0; i < size; i++) {
+                if (!removed[i] && orders[i] >= 0 && orders[i] < lookup.length) {
+                    lookup[orders[i]] = i;
+                }
+            }
+            indexByOrder = lookup;
+        }
+        return order >= 0 && order < lookup.length ? lookup[order] : -1;
+    }
+
+    public int getTarget(int areaIndex) {
+        return targets[areaIndex];
+    }
+
+    /**
+     * Copies the bounds of the area in image coordinates into out, as left,
+     * top, right and bottom starting at offset.
+     */
+    public void getBounds(int areaIndex, float[] out, int offset) {
+        System.arraycopy(bounds, areaIndex * 4, out, offset, 4);
+    }
+
+    /**
+     * Computes the union of the bounds of count areas into out as left, top,
+     * right and bottom. Removed areas and indices outside the map are
+     * skipped.
+     *
+     * @return false if none of the areas is in the map and out was left
+     * untouched
+     */
+    public boolean getBounds(int[] areaIndices, int count, float[] out) {
+        float l = Float.MAX_VALUE;
+        float t = Float.MAX_VALUE;
+        float r = -Float.MAX_VALUE;
+        float b = -Float.MAX_VALUE;
+        boolean found = false;
+        for (int k = 0; k < count; k++) {
+            int areaIndex = areaIndices[k];
+            if (areaIndex < 0 || areaIndex >= size || removed[areaIndex]) {
+                continue;
+            }
+            int offset = areaIndex * 4;
+            l = Math.min(l, bounds[offset]);
+            t = Math.min(t, bounds[offset + 1]);
+            r = Math.max(r, bounds[offset + 2]);
+            b = Math.max(b, bounds[offset + 3]);
+            found = true;
+        }
+        if (!found) {
+            return false;
+        }
+        out[0] = l;
+        out[1] = t;
+        out[2] = r;
+        out[3] = b;
+        return true;
+    }
+
+    /**
+     * Copies the centroid of the area, see {@link Anchors#centroid}, into
+     * out[offset] and out[offset + 1]. Lazy maps compute it on first use.
+     */
+    public void getCentroid(int areaIndex, float[] out, int offset) {
+        int i = areaIndex * 2;
+        if (Float.isNaN(centroids[i])) {
+            // Racing threads store the same values, so no locking is needed.
+            Anchors.centroid(getArea(areaIndex), out, offset);
+            centroids[i + 1] = out[offset + 1];
+            centroids[i] = out[offset];
+            return;
+        }
+        out[offset] = centroids[i];
+        out[offset + 1] = centroids[i + 1];
+    }
+
+    public GridIndex getIndex() {
+        return index;
+    }
+
+    public int getDataId(int areaIndex) {
+        return dataIds[areaIndex];
+    }
+
+    /**
+     * @param target target to match or -1 to match any
+     * @return index of the first area with the given id and target, -1 if none
+     */
+    public int getAreaId(int dataId, int target) {
+        for (int i = firstWithId.get(dataId, -1); i >= 0; i = nextWithId[i]) {
+            if (target == -1 || targets[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getAreaId(int dataId) {
+        return getAreaId(dataId, -1);
+    }
+
+    /**
+     * @return targets of all areas sharing the given id, empty if there are none
+     */
+    public int[] getAreaGroups(int dataId) {
+        GroupIndex groups = getGroupIndex();
+        int group = groups.getGroup(dataId);
+        if (group < 0) {
+            return new int[0];
+        }
+        int[] members = groups.getMembers();
+        int start = groups.getStart(group);
+        int[] result = new int[groups.getSize(group)];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = targets[members[start + k]];
+        }
+        return result;
+    }
+
+    /**
+     * Appends to out the indices of all areas sharing the given id, in
+     * ascending order.
+     */
+    public void getGroupAreas(int dataId, IntList out) {
+        GroupIndex groups = getGroupIndex();
+        int group = groups.getGroup(dataId);
+        if (group < 0) {
+            return;
+        }
+        int[] members = groups.getMembers();
+        for (int k = groups.getStart(group); k < groups.getEnd(group); k++) {
+            out.add(members[k]);
+        }
+    }
+
+    /**
+     * Stores the union of the bounds of all areas sharing the given id into
+     * out as left, top, right and bottom.
+     *
+     * @return false if no area has the id and out was left untouched
+     */
+    public boolean getGroupBounds(int dataId, float[] out) {
+        GroupIndex groups = getGroupIndex();
+        int group = groups.getGroup(dataId);
+        if (group < 0) {
+            return false;
+        }
+        groups.getBounds(group, out, 0);
+        return true;
+    }
+
+    /**
+     * Returns the areas grouped by data id. The index is built with the map
+     * and again on first use after an edit.
+     */
+    public GroupIndex getGroupIndex() {
+        GroupIndex result = groupIndex;
+        if (result == null) {
+            synchronized (this) {
+                result = groupIndex;
+                if (result == null) {
+                    result = new GroupIndex(dataIds, removed, bounds, size);
+                    groupIndex = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tests whether the point in image coordinates lies within the area.
+     */
+    public boolean contains(int areaIndex, float x, float y) {
+        return geometry(areaIndex).contains(x, y);
+    }
+
+    /**
+     * @return index of the topmost area containing the point in image
+     * coordinates, -1 if there is none
+     */
+    public int findArea(float x, float y) {
+        return findArea(x, y, HitPolicy.TOPMOST, -1);
+    }
+
+    /**
+     * Finds the area that wins a tap at the given point in image coordinates.
+     * Cells list their areas by priority, so the scan stops at the first
+     * area containing the point.
+     *
+     * @param target only consider areas with this target, -1 for any
+     * @return index of the winning area, -1 if there is none
+     */
+    public int findArea(float x, float y, HitPolicy policy, int target) {
+        GridIndex index = getHitIndex(policy);
+        int cell = index.getCell(x, y);
+        if (cell < 0) {
+            return -1;
+        }
+        int[] candidates = index.getCellItems(cell);
+        int size = index.getCellSize(cell);
+        for (int c = 0; c < size; c++) {
+            int i = candidates[c];
+            if ((target == -1 || targets[i] == target) && geometry(i).contains(x, y)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Hit-tests count / 2 points at once, given as interleaved x,y values in
+     * image coordinates, storing the area of each point (or -1) in results.
+     */
+    public void findAreas(float[] points, int count, int[] results) {
+        for (int k = 0; k < count; k += 2) {
+            results[k / 2] = findArea(points[k], points[k + 1]);
+        }
+    }
+
+    /**
+     * Appends to out the indices of all areas intersecting the rectangle given
+     * in image coordinates. Candidates come from the spatial index, so only
+     * areas whose bounds overlap the rectangle are tested exactly.
+     */
+    public void findAreasInRect(float left, float top, float right, float bottom, IntList out) {
+        int from = out.size();
+        index.query(left, top, right, bottom, out);
+        int[] values = out.values();
+        int kept = from;
+        for (int k = from; k < out.size(); k++) {
+            int i = values[k];
+            if (Geometry.intersectsRect(geometry(i), left, top, right, bottom)) {
+                values[kept++] = i;
+            }
+        }
+        out.truncate(kept);
+    }
+
+    /**
+     * Appends to out the indices of all areas intersecting the polygon given
+     * as count interleaved x,y values in image coordinates.
+     */
+    public void findAreasInPolygon(float[] polygon, int count, IntList out) {
+        if (count < 6) {
+            return;
+        }
+        float l = Float.MAX_VALUE;
+        float t = Float.MAX_VALUE;
+        float r = -Float.MAX_VALUE;
+        float b = -Float.MAX_VALUE;
+        for (int k = 0; k < count; k += 2) {
+            l = Math.min(l, polygon[k]);
+            r = Math.max(r, polygon[k]);
+            t = Math.min(t, polygon[k + 1]);
+            b = Math.max(b, polygon[k + 1]);
+        }
+        int from = out.size();
+        index.query(l, t, r, b, out);
+        int[] values = out.values();
+        int kept = from;
+        for (int k = from; k < out.size(); k++) {
+            int i = values[k];
+            if (Geometry.intersectsPolygon(geometry(i), polygon, count)) {
+                values[kept++] = i;
+            }
+        }
+        out.truncate(kept);
+    }
+
+    /**
+     * Appends to out the indices of all areas with at least one point within
+     * radius of the center, in image coordinates.
+     */
+    public void findAreasInCircle(float cx, float cy, float radius, IntList out) {
+        int from = out.size();
+        index.query(cx - radius, cy - radius, cx + radius, cy + radius, out);
+        int[] values = out.values();
+        int kept = from;
+        for (int k = from; k < out.size(); k++) {
+            int i = values[k];
+            if (Geometry.intersectsCircle(geometry(i), cx, cy, radius)) {
+                values[kept++] = i;
+            }
+        }
+        out.truncate(kept);
+    }
+
+    /**
+     * Adds the area, or replaces the area with the same id and target. The
+     * bounds of the area must be computed. New areas are placed on top of all
+     * others, replaced areas keep their index and stacking order.
+     *
+     * @return index of the added or replaced area
+     * @throws UnsupportedOperationException if the map is lazy
+     */
+    public int putArea(Area area) {
+        requireEditable();
+        int i = getAreaId(area.id, area.target);
+        if (i >= 0) {
+            index.remove(i);
+            area.order = orders[i];
+        } else {
+            i = allocateSlot();
+            area.order = ++maxOrder;
+            dataIds[i] = area.id;
+            targets[i] = area.target;
+            orders[i] = area.order;
+            link(i);
+        }
+        areas[i] = area;
+        bounds[i * 4] = area.left;
+        bounds[i * 4 + 1] = area.top;
+        bounds[i * 4 + 2] = area.right;
+        bounds[i * 4 + 3] = area.bottom;
+        Anchors.centroid(area, centroids, i * 2);
+        if (sizes != null) {
+            sizes[i] = area.computeSize();
+        }
+        index.insert(i, orders);
+        smallestFirstIndex = null;
+        indexByOrder = null;
+        groupIndex = null;
+        return i;
+    }
+
+    /**
+     * Removes the area with the given id and target.
+     *
+     * @param target target to match or -1 for the first area with the id
+     * @return index of the removed area, -1 if there was none
+     * @throws UnsupportedOperationException if the map is lazy
+     */
+    public int removeArea(int dataId, int target) {
+        requireEditable();
+        int i = getAreaId(dataId, target);
+        if (i < 0) {
+            return -1;
+        }
+        index.remove(i);
+        unlink(i);
+        Area empty = new Area();
+        empty.id = dataId;
+        empty.target = targets[i];
+        empty.trim();
+        areas[i] = empty;
+        removed[i] = true;
+        Arrays.fill(bounds, i * 4, i * 4 + 4, 0);
+        freeSlots.add(i);
+        smallestFirstIndex = null;
+        indexByOrder = null;
+        groupIndex = null;
+        return i;
+    }
+
+    private void requireEditable() {
+        if (loader != null) {
+            throw new UnsupportedOperationException("Lazily loaded maps cannot be edited");
+        }
+    }
+
+    private int allocateSlot() {
+        if (!freeSlots.isEmpty()) {
+            int i = freeSlots.get(freeSlots.size() - 1);
+            freeSlots.truncate(freeSlots.size() - 1);
+            removed[i] = false;
+            return i;
+        }
+        if (size == dataIds.length) {
+            int capacity = Math.max(8, size * 2);
+            areas = Arrays.copyOf(areas, capacity);
+            dataIds = Arrays.copyOf(dataIds, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            orders = Arrays.copyOf(orders, capacity);
+            bounds = Arrays.copyOf(bounds, capacity * 4);
+            centroids = Arrays.copyOf(centroids, capacity * 2);
+            removed = Arrays.copyOf(removed, capacity);
+            nextWithId = Arrays.copyOf(nextWithId, capacity);
+            if (sizes != null) {
+                sizes = Arrays.copyOf(sizes, capacity);
+            }
+            index.setBounds(bounds);
+        }
+        return size++;
+    }
+
+    /**
+     * Inserts the area into the chain of its id, keeping index order.
+     */
+    private void link(int i) {
+        int dataId = dataIds[i];
+        int first = firstWithId.get(dataId, -1);
+        if (first < 0 || first > i) {
+            nextWithId[i] = first;
+            firstWithId.put(dataId, i);
+            return;
+        }
+        int previous = first;
+        while (nextWithId[previous] >= 0 && nextWithId[previous] < i) {
+            previous = nextWithId[previous];
+        }
+        nextWithId[i] = nextWithId[previous];
+        nextWithId[previous] = i;
+    }
+
+    private void unlink(int i) {
+        int dataId = dataIds[i];
+        int first = firstWithId.get(dataId, -1);
+        if (first == i) {
+            if (nextWithId[i] >= 0) {
+                firstWithId.put(dataId, nextWithId[i]);
+            } else {
+                firstWithId.remove(dataId, -1);
+            }
+        } else {
+            int previous = first;
+            while (nextWithId[previous] != i) {
+                previous = nextWithId[previous];
+            }
+            nextWithId[previous] = nextWithId[i];
+        }
+        nextWithId[i] = -1;
+    }
+}
@@ -0,0 +1,191 @@
+package com.android.imagemap.core;
+
+/**
+ * Geometry of all areas of a map packed into a single byte array. Every
+ * coordinate is stored in fixed point, in sixteenths of a pixel relative to
+ * the top left corner of its area, as the zigzag varint encoded difference
+ * to the previous one. Most vertices of typical room outlines take two to
+ * four bytes instead of eight bytes in {@link Area} plus the native path.
+ * <p>
+ * Areas are decoded on demand, either into a new {@link Area} through
+ * {@link #loadArea(int)} or into a reused one through
+ * {@link #decode(int, Area)}.
+ */
+public final class PackedGeometry implements AreaLoader {
+
+    /**
+     * Fixed point steps per pixel, coordinates are off by at most half a step.
+     */
+    private static final float STEPS_PER_PIXEL = 16;
+    private static final float STEP = 1 / STEPS_PER_PIXEL;
+
+    private final byte[] data;
+    private final int[] offsets;
+    private final float[] bounds;
+    private final int[] dataIds;
+    private final int[] targets;
+    private final int[] orders;
+    private final String[] names;
+
+    private PackedGeometry(byte[] data, int[] offsets, float[] bounds, int[] dataIds, int[] targets,
+                           int[] orders, String[] names) {
+        this.data = data;
+        this.offsets = offsets;
+        this.bounds = bounds;
+        this.dataIds = dataIds;
+        this.targets = targets;
+        this.orders = orders;
+        this.names = names;
+    }
+
+    /**
+     * Packs the first count areas of the map. The map must not have removed
+     * areas. The bounds array is kept by the returned instance.
+     */
+    static PackedGeometry pack(MapData map, int count, int[] dataIds, int[] targets, int[] orders,
+                               float[] bounds) {
+        int[] offsets = new int[count + 1];
+        String[] names = null;
+        Writer out = new Writer(count * 16);
+        for (int i = 0; i < count; i++) {
+            Area area = map.getArea(i);
+            offsets[i] = out.size;
+            if (area.idStr != null) {
+                if (names == null) {
+                    names = new String[count];
+                }
+                names[i] = area.idStr;
+            }
+            int o = i * 4;
+            out.writeVarint(area.ringCount);
+            int lastX = 0;
+            int lastY = 0;
+            for (int ring = 0; ring < area.ringCount; ring++) {
+                int start = area.getRingStart(ring);
+                int end = area.getRingEnd(ring);
+                out.writeVarint((end - start) / 2);
+                for (int k = start; k < end; k += 2) {
+                    int x = Math.round((area.points[k] - bounds[o]) * STEPS_PER_PIXEL);
+                    int y = Math.round((area.points[k + 1] - bounds[o + 1]) * STEPS_PER_PIXEL);
+                    out.writeVarint(zigzag(x - lastX));
+                    out.writeVarint(zigzag(y - lastY));
+                    lastX = x;
+                    lastY = y;
+                }
+            }
+        }
+        offsets[count] = out.size;
+        byte[] data = new byte[out.size];
+        System.arraycopy(out.buffer, 0, data, 0, out.size);
+        return new PackedGeometry(data, offsets, bounds, dataIds, targets, orders, names);
+    }
+
+    /**
+     * @return number of bytes holding the vertices of all areas
+     */
+    public int getByteSize() {
+        return data.length;
+    }
+
+    @Override
+    public Area loadArea(int areaIndex) {
+        Area area = new Area();
+        decode(areaIndex, area);
+        area.trim();
+        return area;
+    }
+
+    /**
+     * Replaces the geometry and ids of out with those of the area, reusing
+     * its point buffers.
+     */
+    public void decode(int areaIndex, Area out) {
+        int o = areaIndex * 4;
+        float left = bounds[o];
+        float top = bounds[o + 1];
+        out.id = dataIds[areaIndex];
+        out.target = targets[areaIndex];
+        out.order = orders[areaIndex];
+        out.idStr = names == null ? null : names[areaIndex];
+        out.ringCount = 0;
+        out.pointCount = 0;
+        byte[] d = data;
+        int position = offsets[areaIndex];
+        int x = 0;
+        int y = 0;
+        // Varints are read inline, this runs for every candidate of a hit test.
+        int ringCount = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = d[position++];
+            ringCount |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        for (int ring = 0; ring < ringCount; ring++) {
+            int pointCount = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = d[position++];
+                pointCount |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            for (int k = 0; k < pointCount; k++) {
+                int dx = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = d[position++];
+                    dx |= (b & 0x7f) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                int dy = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = d[position++];
+                    dy |= (b & 0x7f) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                x += (dx >>> 1) ^ -(dx & 1);
+                y += (dy >>> 1) ^ -(dy & 1);
+                if (k == 0) {
+                    out.moveTo(left + x * STEP, top + y * STEP);
+                } else {
+                    out.lineTo(left + x * STEP, top + y * STEP);
+                }
+            }
+        }
+        out.left = left;
+        out.top = top;
+        out.right = bounds[o + 2];
+        out.bottom = bounds[o + 3];
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static final class Writer {
+        byte[] buffer;
+        int size;
+
+        Writer(int capacity) {
+            buffer = new byte[Math.max(capacity, 16)];
+        }
+
+        void writeVarint(int value) {
+            if (size + 5 > buffer.length) {
+                byte[] grown = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, size);
+                buffer = grown;
+            }
+            while ((value & ~0x7f) != 0) {
+                buffer[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.android.imagemap.core;
+
+/**
+ * Ramer-Douglas-Peucker simplification of area rings.
+ */
+public class Simplifier {
+
+    private Simplifier() {
+    }
+
+    /**
+     * Returns a copy of the area where every ring is reduced to the vertices
+     * that deviate more than tolerance from the simplified outline. Rings that
+     * would collapse below three vertices are kept as they are.
+     */
+    public static Area simplify(Area area, float tolerance) {
+        Area result = new Area();
+        result.id = area.id;
+        result.target = area.target;
+        result.idStr = area.idStr;
+        result.order = area.order;
+        float[] p = area.points;
+        boolean[] keep = new boolean[area.pointCount / 2];
+        float sqTolerance = tolerance * tolerance;
+        for (int ring = 0; ring < area.ringCount; ring++) {
+            int start = area.getRingStart(ring) / 2;
+            int end = area.getRingEnd(ring) / 2;
+            int kept = 0;
+            if (end - start > 3) {
+                keep[start] = true;
+                keep[end - 1] = true;
+                mark(p, keep, start, end - 1, sqTolerance);
+                for (int i = start; i < end; i++) {
+                    if (keep[i]) kept++;
+                }
+            }
+            boolean all = kept < 3;
+            boolean first = true;
+            for (int i = start; i < end; i++) {
+                if (all || keep[i]) {
+                    if (first) {
+                        result.moveTo(p[i * 2], p[i * 2 + 1]);
+                        first = false;
+                    } else {
+                        result.lineTo(p[i * 2], p[i * 2 + 1]);
+                    }
+                }
+            }
+            result.close();
+        }
+        result.trim();
+        result.computeBounds();
+        return result;
+    }
+
+    private static void mark(float[] p, boolean[] keep, int first, int last, float sqTolerance) {
+        if (last - first < 2) {
+            return;
+        }
+        float ax = p[first * 2];
+        float ay = p[first * 2 + 1];
+        float bx = p[last * 2];
+        float by = p[last * 2 + 1];
+        float max = -1;
+        int index = -1;
+        for (int i = first + 1; i < last; i++) {
+            float d = Geometry.sqSegmentDistance(p[i * 2], p[i * 2 + 1], ax, ay, bx, by);
+            if (d > max) {
+                max = d;
+                index = i;
+            }
+        }
+        if (max > sqTolerance) {
+            keep[index] = true;
+            mark(p, keep, first, index, sqTolerance);
+            mark(p, keep, index, last, sqTolerance);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.android.imagemap.core;
+
+/**
+ * Computes the scale and translation that bring a rectangle, given in image
+ * coordinates, into view. Results are written as scale, dx and dy, where a
+ * point maps to view coordinates as {@code x * scale + dx}.
+ */
+public final class ViewportFit {
+
+    public static final int SCALE = 0;
+    public static final int DX = 1;
+    public static final int DY = 2;
+
+    private ViewportFit() {
+    }
+
+    /**
+     * Keeps the scale and centers the rectangle in the view.
+     */
+    public static void center(float left, float top, float right, float bottom, float scale,
+                              float viewWidth, float viewHeight, float[] out) {
+        out[SCALE] = scale;
+        out[DX] = -(left + right) / 2 * scale + viewWidth / 2;
+        out[DY] = -(top + bottom) / 2 * scale + viewHeight / 2;
+    }
+
+    /**
+     * Scales the rectangle, grown by padding image pixels in each dimension,
+     * to fill the view and centers it.
+     */
+    public static void fit(float left, float top, float right, float bottom, float padding,
+                           float viewWidth, float viewHeight, float[] out) {
+        float scale = Math.min(viewWidth / (right - left + padding), viewHeight / (bottom - top + padding));
+        center(left, top, right, bottom, scale, viewWidth, viewHeight, out);
+    }
+}
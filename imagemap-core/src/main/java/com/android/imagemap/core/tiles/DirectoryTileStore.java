@@ -0,0 +1,95 @@
+package com.android.imagemap.core.tiles;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Pyramid stored as one file per tile: {@code <level>/<column>_<row>.<format>}
+ * next to a {@code pyramid.properties} descriptor.
+ */
+public class DirectoryTileStore implements TileStore {
+
+    public static final String DESCRIPTOR = "pyramid.properties";
+
+    private final File directory;
+    private final TilePyramid pyramid;
+
+    public DirectoryTileStore(File directory) throws IOException {
+        this.directory = directory;
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(new File(directory, DESCRIPTOR));
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        try {
+            pyramid = new TilePyramid(
+                    Integer.parseInt(properties.getProperty("width")),
+                    Integer.parseInt(properties.getProperty("height")),
+                    Integer.parseInt(properties.getProperty("tileSize")),
+                    properties.getProperty("format", "png"));
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid pyramid descriptor in " + directory, e);
+        }
+    }
+
+    @Override
+    public TilePyramid getPyramid() {
+        return pyramid;
+    }
+
+    @Override
+    public InputStream openTile(int level, int column, int row) throws IOException {
+        return new BufferedInputStream(new FileInputStream(tileFile(directory, pyramid, level, column, row)));
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static File tileFile(File directory, TilePyramid pyramid, int level, int column, int row) {
+        return new File(new File(directory, String.valueOf(level)),
+                column + "_" + row + "." + pyramid.getFormat());
+    }
+
+    /**
+     * Writes every tile of the pyramid plus the descriptor into directory.
+     */
+    public static void write(File directory, TilePyramid pyramid, TileRenderer renderer) throws IOException {
+        for (int level = 0; level < pyramid.getLevelCount(); level++) {
+            File levelDirectory = new File(directory, String.valueOf(level));
+            if (!levelDirectory.isDirectory() && !levelDirectory.mkdirs()) {
+                throw new IOException("Cannot create " + levelDirectory);
+            }
+            for (int row = 0; row < pyramid.getRows(level); row++) {
+                for (int column = 0; column < pyramid.getColumns(level); column++) {
+                    byte[] tile = renderer.renderTile(level, column, row);
+                    OutputStream out = new FileOutputStream(tileFile(directory, pyramid, level, column, row));
+                    try {
+                        out.write(tile);
+                    } finally {
+                        out.close();
+                    }
+                }
+            }
+        }
+        Properties properties = new Properties();
+        properties.setProperty("width", String.valueOf(pyramid.getWidth()));
+        properties.setProperty("height", String.valueOf(pyramid.getHeight()));
+        properties.setProperty("tileSize", String.valueOf(pyramid.getTileSize()));
+        properties.setProperty("format", pyramid.getFormat());
+        OutputStream out = new FileOutputStream(new File(directory, DESCRIPTOR));
+        try {
+            properties.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.android.imagemap.core.tiles;
+
+import com.android.imagemap.core.ByteBufferInputStream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Pyramid packed into a single memory mapped file. The header is followed by
+ * an index with the offset and length of every tile, ordered by level, row
+ * and column, and then by the encoded tiles themselves. Files are limited to
+ * 2GB by the mapping.
+ */
+public class PackedTileStore implements TileStore {
+
+    public static final int MAGIC = 0x494d5450; // "IMTP"
+    public static final int VERSION = 1;
+
+    private static final int INDEX_ENTRY_SIZE = 8;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+    private final TilePyramid pyramid;
+    private final int indexOffset;
+
+    public PackedTileStore(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            stream.close();
+        }
+        if (!isPackedStore(buffer)) {
+            throw new IOException("Not a packed tile store: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported packed tile store version " + buffer.getInt(4));
+        }
+        int formatLength = buffer.getInt(20);
+        if (formatLength < 0 || formatLength > 16) {
+            throw new IOException("Corrupt packed tile store header: " + file);
+        }
+        byte[] format = new byte[formatLength];
+        ByteBuffer view = buffer.duplicate();
+        view.position(24);
+        view.get(format);
+        pyramid = new TilePyramid(buffer.getInt(8), buffer.getInt(12), buffer.getInt(16),
+                new String(format, UTF_8));
+        indexOffset = 24 + formatLength;
+    }
+
+    public static boolean isPackedStore(ByteBuffer buffer) {
+        return buffer.remaining() >= 24 && buffer.getInt(buffer.position()) == MAGIC;
+    }
+
+    @Override
+    public TilePyramid getPyramid() {
+        return pyramid;
+    }
+
+    @Override
+    public InputStream openTile(int level, int column, int row) throws IOException {
+        if (level < 0 || level >= pyramid.getLevelCount()
+                || column < 0 || column >= pyramid.getColumns(level)
+                || row < 0 || row >= pyramid.getRows(level)) {
+            throw new IOException("No tile " + level + "/" + column + "_" + row);
+        }
+        int tile = pyramid.getTileOffset(level) + row * pyramid.getColumns(level) + column;
+        int entry = indexOffset + tile * INDEX_ENTRY_SIZE;
+        int offset = buffer.getInt(entry);
+        int length = buffer.getInt(entry + 4);
+        if (offset < 0 || length < 0 || (long) offset + length > buffer.limit()) {
+            throw new IOException("Corrupt index entry for tile " + level + "/" + column + "_" + row);
+        }
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.limit(offset + length);
+        return new ByteBufferInputStream(slice);
+    }
+
+    @Override
+    public void close() {
+        // The mapping is released by the garbage collector.
+    }
+
+    /**
+     * Writes the whole pyramid into a single file.
+     */
+    public static void write(File file, TilePyramid pyramid, TileRenderer renderer) throws IOException {
+        byte[] format = pyramid.getFormat().getBytes(UTF_8);
+        int indexOffset = 24 + format.length;
+        int tileCount = pyramid.getTileCount();
+        int[] index = new int[tileCount * 2];
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(0);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(pyramid.getWidth());
+            out.writeInt(pyramid.getHeight());
+            out.writeInt(pyramid.getTileSize());
+            out.writeInt(format.length);
+            out.write(format);
+            long offset = indexOffset + (long) tileCount * INDEX_ENTRY_SIZE;
+            out.seek(offset);
+            int tile = 0;
+            for (int level = 0; level < pyramid.getLevelCount(); level++) {
+                for (int row = 0; row < pyramid.getRows(level); row++) {
+                    for (int column = 0; column < pyramid.getColumns(level); column++) {
+                        byte[] data = renderer.renderTile(level, column, row);
+                        if (offset + data.length > Integer.MAX_VALUE) {
+                            throw new IOException("Packed tile store exceeds 2GB, use a directory store");
+                        }
+                        out.write(data);
+                        index[tile * 2] = (int) offset;
+                        index[tile * 2 + 1] = data.length;
+                        offset += data.length;
+                        tile++;
+                    }
+                }
+            }
+            ByteBuffer indexBytes = ByteBuffer.allocate(index.length * 4);
+            for (int value : index) {
+                indexBytes.putInt(value);
+            }
+            out.seek(indexOffset);
+            out.write(indexBytes.array());
+        } finally {
+            out.close();
+        }
+    }
+}
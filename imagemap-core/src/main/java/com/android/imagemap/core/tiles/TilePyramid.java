@@ -0,0 +1,101 @@
+package com.android.imagemap.core.tiles;
+
+/**
+ * Geometry of a multi-resolution tile pyramid. Level 0 holds the image at
+ * full resolution, every following level halves width and height until the
+ * whole image fits into a single tile. Each level is cut into square tiles of
+ * {@link #getTileSize()} pixels, the last column and row may be smaller.
+ */
+public class TilePyramid {
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final String format;
+    private final int levelCount;
+
+    /**
+     * @param format image format of the tiles, used as file extension
+     */
+    public TilePyramid(int width, int height, int tileSize, String format) {
+        if (width <= 0 || height <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException("Invalid pyramid " + width + "x" + height
+                    + ", tile size " + tileSize);
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.format = format;
+        int levels = 1;
+        while (Math.max(getLevelWidth(levels - 1), getLevelHeight(levels - 1)) > tileSize) {
+            levels++;
+        }
+        levelCount = levels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    public int getLevelWidth(int level) {
+        return (width + (1 << level) - 1) >> level;
+    }
+
+    public int getLevelHeight(int level) {
+        return (height + (1 << level) - 1) >> level;
+    }
+
+    public int getColumns(int level) {
+        return (getLevelWidth(level) + tileSize - 1) / tileSize;
+    }
+
+    public int getRows(int level) {
+        return (getLevelHeight(level) + tileSize - 1) / tileSize;
+    }
+
+    /**
+     * @return number of tiles on all levels up to, not including, the level
+     */
+    public int getTileOffset(int level) {
+        int offset = 0;
+        for (int l = 0; l < level; l++) {
+            offset += getColumns(l) * getRows(l);
+        }
+        return offset;
+    }
+
+    public int getTileCount() {
+        return getTileOffset(levelCount);
+    }
+
+    /**
+     * Picks the coarsest level that still has at least one tile pixel per
+     * screen pixel when the full resolution image is drawn at the given scale.
+     */
+    public int getLevelForScale(float scale) {
+        if (scale <= 0) {
+            return levelCount - 1;
+        }
+        int level = 0;
+        while (level + 1 < levelCount && (1 << (level + 1)) * scale <= 1) {
+            level++;
+        }
+        return level;
+    }
+}
@@ -0,0 +1,11 @@
+package com.android.imagemap.core.tiles;
+
+import java.io.IOException;
+
+/**
+ * Produces the encoded image of a tile while a pyramid is being written.
+ */
+public interface TileRenderer {
+
+    byte[] renderTile(int level, int column, int row) throws IOException;
+}
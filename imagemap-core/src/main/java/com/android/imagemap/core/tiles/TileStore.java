@@ -0,0 +1,18 @@
+package com.android.imagemap.core.tiles;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Read access to precomputed pyramid tiles, see {@link TileStores#open}.
+ */
+public interface TileStore extends Closeable {
+
+    TilePyramid getPyramid();
+
+    /**
+     * Opens the encoded image of a tile. The caller closes the stream.
+     */
+    InputStream openTile(int level, int column, int row) throws IOException;
+}
@@ -0,0 +1,24 @@
+package com.android.imagemap.core.tiles;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Opens tile stores written by {@link DirectoryTileStore#write} or
+ * {@link PackedTileStore#write}.
+ */
+public final class TileStores {
+
+    private TileStores() {
+    }
+
+    /**
+     * @param path a pyramid directory or a packed tile file
+     */
+    public static TileStore open(File path) throws IOException {
+        if (path.isDirectory()) {
+            return new DirectoryTileStore(path);
+        }
+        return new PackedTileStore(path);
+    }
+}
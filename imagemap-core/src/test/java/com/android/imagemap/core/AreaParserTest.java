@@ -0,0 +1,60 @@
+package com.android.imagemap.core;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Parsing of map documents by {@link AreaParser}.
+ */
+public class AreaParserTest {
+
+    @Test
+    public void parallelParseMatchesSequentialParse() throws Exception {
+        StringBuilder map = new StringBuilder("<map>");
+        Random random = new Random(42);
+        for (int i = 0; i < 3000; i++) {
+            int x = random.nextInt(5000);
+            int y = random.nextInt(5000);
+            // Few distinct ids, so many areas share one.
+            map.append("<area shape=\"poly\" href=\"").append(random.nextInt(200))
+                    .append("\" target=\"").append(random.nextInt(3)).append("\" coords=\"")
+                    .append(x).append(',').append(y).append(',')
+                    .append(x + 10 + random.nextInt(90)).append(',').append(y).append(',')
+                    .append(x).append(',').append(y + 10 + random.nextInt(90)).append("\"/>");
+        }
+        map.append("</map>");
+
+        ArrayList<Area> sequential = MapDataTest.parse(map.toString());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ArrayList<Area> parallel;
+        try {
+            XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+            parser.setInput(new StringReader(map.toString()));
+            parallel = new AreaParser(1, executor).parseAreas(parser);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            Area expected = sequential.get(i);
+            Area actual = parallel.get(i);
+            assertEquals(expected.id, actual.id);
+            assertEquals(expected.target, actual.target);
+            assertEquals(expected.order, actual.order);
+            assertArrayEquals(expected.points, actual.points, 0f);
+            assertEquals(expected.left, actual.left, 0f);
+            assertEquals(expected.bottom, actual.bottom, 0f);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.android.imagemap.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Set operations of {@link AreaSet}.
+ */
+public class AreaSetTest {
+
+    @Test
+    public void areaSetAlgebra() {
+        AreaSet occupied = new AreaSet(8);
+        AreaSet reserved = new AreaSet();
+        for (int i : new int[]{1, 3, 64, 200}) {
+            occupied.add(i);
+        }
+        for (int i : new int[]{3, 64, 65}) {
+            reserved.add(i);
+        }
+        assertTrue(occupied.contains(200));
+        assertFalse(occupied.contains(65));
+        assertTrue(occupied.intersects(reserved));
+
+        IntList out = new IntList();
+        new AreaSet(occupied).retainAll(reserved).toList(out);
+        assertArrayEquals(new int[]{3, 64}, out.toArray());
+        out.clear();
+        new AreaSet(occupied).removeAll(reserved).toList(out);
+        assertArrayEquals(new int[]{1, 200}, out.toArray());
+        out.clear();
+        new AreaSet(reserved).addAll(occupied).toList(out);
+        assertArrayEquals(new int[]{1, 3, 64, 65, 200}, out.toArray());
+        assertEquals(3, new AreaSet(occupied).xor(reserved).size());
+
+        AreaSet copy = new AreaSet().set(occupied);
+        assertEquals(occupied, copy);
+        copy.remove(200);
+        assertFalse(occupied.equals(copy));
+        copy.add(200);
+        assertEquals(occupied.hashCode(), copy.hashCode());
+        copy.clear();
+        assertTrue(copy.isEmpty());
+        assertEquals(-1, copy.nextArea(0));
+    }
+}
@@ -0,0 +1,46 @@
+package com.android.imagemap.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Incremental hit tests of {@link AreaTracker} along a pointer path.
+ */
+public class AreaTrackerTest {
+
+    @Test
+    public void trackerMatchesSpatialQueryAlongADrag() throws Exception {
+        StringBuilder map = new StringBuilder("<map>");
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            int x = random.nextInt(2000);
+            int y = random.nextInt(2000);
+            map.append("<area shape=\"poly\" href=\"").append(i).append("\" target=\"")
+                    .append(random.nextInt(2)).append("\" coords=\"")
+                    .append(x).append(',').append(y).append(',')
+                    .append(x + 20 + random.nextInt(80)).append(',').append(y).append(',')
+                    .append(x).append(',').append(y + 20 + random.nextInt(80)).append("\"/>");
+        }
+        map.append("</map>");
+        MapData data = new MapData(MapDataTest.parse(map.toString()));
+
+        for (HitPolicy policy : HitPolicy.values()) {
+            for (int target = -1; target <= 1; target++) {
+                AreaTracker tracker = new AreaTracker(data, policy, target);
+                float x = 1000;
+                float y = 1000;
+                int steps = 5000;
+                for (int step = 0; step < steps; step++) {
+                    x = Math.max(0, Math.min(2000, x + random.nextFloat() * 8 - 4));
+                    y = Math.max(0, Math.min(2000, y + random.nextFloat() * 8 - 4));
+                    assertEquals(data.findArea(x, y, policy, target), tracker.find(x, y));
+                }
+                assertTrue(tracker.getRebuildCount() < steps / 10);
+            }
+        }
+    }
+}
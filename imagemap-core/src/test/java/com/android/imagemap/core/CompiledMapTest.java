@@ -0,0 +1,72 @@
+package com.android.imagemap.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledMapTest {
+
+    private static final String MAP = "<map>"
+            + "<area shape=\"poly\" coords=\"0,0,100,0,100,100,0,100\" href=\"7\"/>"
+            + "<area shape=\"rect\" coords=\"200,0,300,50\" href=\"3\" target=\"1\"/>"
+            + "<area shape=\"rect\" coords=\"200,60,300,100\" href=\"3\" target=\"2\"/>"
+            + "</map>";
+
+    @Test
+    public void roundTripThroughMappedFile() throws Exception {
+        MapData parsed = new MapData(MapDataTest.parse(MAP));
+        parsed.getArea(0).idStr = "Lobby";
+        File file = File.createTempFile("map", ".imc");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            CompiledMap.write(parsed, out);
+        } finally {
+            out.close();
+        }
+
+        ByteBuffer buffer;
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            in.close();
+        }
+        assertTrue(CompiledMap.isCompiledMap(buffer));
+        MapData loaded = CompiledMap.read(buffer);
+
+        assertTrue(loaded.isLazy());
+        assertEquals(parsed.size(), loaded.size());
+        assertEquals(1, loaded.getAreaId(3, 2));
+        assertEquals(2, loaded.findArea(50, 50));
+        for (int i = 0; i < parsed.size(); i++) {
+            Area expected = parsed.getArea(i);
+            Area actual = loaded.getArea(i);
+            assertEquals(expected.id, actual.id);
+            assertEquals(expected.target, actual.target);
+            assertEquals(expected.order, actual.order);
+            assertEquals(expected.idStr, actual.idStr);
+            assertArrayEquals(expected.rings, actual.rings);
+            assertArrayEquals(expected.points, actual.points, 0f);
+        }
+    }
+
+    @Test
+    public void xmlIsNotMistakenForCompiledMap() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(MAP.getBytes("UTF-8"));
+        assertFalse(CompiledMap.isCompiledMap(ByteBuffer.wrap(out.toByteArray())));
+    }
+}
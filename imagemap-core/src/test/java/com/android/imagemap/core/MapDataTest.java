@@ -0,0 +1,286 @@
+package com.android.imagemap.core;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MapDataTest {
+
+    private static final String MAP = "<map name=\"map\">"
+            + "<area shape=\"poly\" coords=\"0,0,100,0,100,100,0,100\" href=\"7\" target=\"1\"/>"
+            + "<area shape=\"rect\" coords=\"200,0,300,50\" href=\"3\"/>"
+            + "<area shape=\"rect\" coords=\"200,60,300,100\" href=\"3\" target=\"2\"/>"
+            + "<area shape=\"poly\" coords=\"400,0,500,100,400,100\" href=\"5\"/>"
+            + "</map>";
+
+    private MapData data;
+
+    static ArrayList<Area> parse(String map) throws Exception {
+        XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+        parser.setInput(new StringReader(map));
+        return new AreaParser().parseAreas(parser);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        data = new MapData(parse(MAP));
+    }
+
+    @Test
+    public void areasAreSortedById() {
+        assertEquals(4, data.size());
+        assertEquals(3, data.getDataId(0));
+        assertEquals(3, data.getDataId(1));
+        assertEquals(5, data.getDataId(2));
+        assertEquals(7, data.getDataId(3));
+    }
+
+    @Test
+    public void equalIdsAreOrderedByTargetThenDocumentPosition() throws Exception {
+        MapData ordered = new MapData(parse("<map>"
+                + "<area shape=\"rect\" coords=\"0,0,10,10\" href=\"5\" target=\"2\"/>"
+                + "<area shape=\"rect\" coords=\"20,0,30,10\" href=\"5\" target=\"1\"/>"
+                + "<area shape=\"rect\" coords=\"40,0,50,10\" href=\"-4\" target=\"7\"/>"
+                + "<area shape=\"rect\" coords=\"60,0,70,10\" href=\"5\" target=\"2\"/>"
+                + "</map>"));
+        assertEquals(-4, ordered.getDataId(0));
+        assertEquals(1, ordered.getTarget(1));
+        assertEquals(0, ordered.getOrder(2));
+        assertEquals(3, ordered.getOrder(3));
+        for (int i = 0; i < ordered.size(); i++) {
+            assertEquals(i, ordered.getAreaIndexForOrder(ordered.getOrder(i)));
+        }
+        assertEquals(-1, ordered.getAreaIndexForOrder(4));
+    }
+
+    @Test
+    public void lookupByDataIdAndTarget() {
+        assertEquals(0, data.getAreaId(3));
+        assertEquals(1, data.getAreaId(3, 2));
+        assertEquals(3, data.getAreaId(7, 1));
+        assertEquals(-1, data.getAreaId(7, 2));
+        assertEquals(-1, data.getAreaId(42));
+        assertArrayEquals(new int[]{1, 2}, data.getAreaGroups(3));
+        assertEquals(0, data.getAreaGroups(42).length);
+    }
+
+    @Test
+    public void groupsListAreasAndBoundsPerDataId() {
+        IntList areas = new IntList();
+        data.getGroupAreas(3, areas);
+        assertArrayEquals(new int[]{0, 1}, areas.toArray());
+        float[] bounds = new float[4];
+        assertTrue(data.getGroupBounds(3, bounds));
+        assertArrayEquals(new float[]{200, 0, 300, 100}, bounds, 0f);
+        assertFalse(data.getGroupBounds(42, bounds));
+
+        data.putArea(rect(3, 9, 600, 0, 700, 20));
+        assertTrue(data.getGroupBounds(3, bounds));
+        assertArrayEquals(new float[]{200, 0, 700, 100}, bounds, 0f);
+        GroupIndex groups = data.getGroupIndex();
+        int group = groups.getGroup(3);
+        assertEquals(3, groups.getDataId(group));
+        assertEquals(3, groups.getSize(group));
+    }
+
+    @Test
+    public void hitTestUsesPolygonNotBounds() {
+        assertTrue(data.contains(3, 50, 50));
+        assertTrue(data.contains(2, 480, 90));
+        assertFalse(data.contains(2, 420, 10));
+        assertFalse(data.contains(1, 250, 10));
+    }
+
+    @Test
+    public void indexCellHoldsCandidates() {
+        GridIndex index = data.getIndex();
+        int cell = index.getCell(250, 80);
+        boolean found = false;
+        for (int i = 0; i < index.getCellSize(cell); i++) {
+            found |= index.getCellItems(cell)[i] == 1;
+        }
+        assertTrue(found);
+        assertEquals(-1, index.getCell(-10, 50));
+    }
+
+    @Test
+    public void rangeQueriesReportEachIntersectingAreaOnce() {
+        IntList out = new IntList();
+        data.findAreasInRect(90, 40, 210, 70, out);
+        assertArrayEquals(new int[]{0, 1, 3}, sorted(out));
+
+        out.clear();
+        data.findAreasInRect(430, 5, 440, 15, out);
+        assertEquals(0, out.size());
+
+        out.clear();
+        data.findAreasInPolygon(new float[]{150, -10, 450, 55, 150, 55}, 6, out);
+        assertArrayEquals(new int[]{0, 2}, sorted(out));
+
+        out.clear();
+        data.findAreasInCircle(150, 50, 52, out);
+        assertArrayEquals(new int[]{0, 1, 3}, sorted(out));
+    }
+
+    @Test
+    public void batchedHitTest() {
+        int[] results = new int[3];
+        data.findAreas(new float[]{50, 50, 250, 80, 600, 600}, 6, results);
+        assertArrayEquals(new int[]{3, 1, -1}, results);
+    }
+
+    @Test
+    public void overlappingAreasResolveToSingleWinner() throws Exception {
+        MapData overlapping = new MapData(parse("<map>"
+                + "<area shape=\"rect\" coords=\"0,0,100,100\" href=\"1\" target=\"1\"/>"
+                + "<area shape=\"rect\" coords=\"40,40,60,60\" href=\"3\" target=\"2\"/>"
+                + "<area shape=\"rect\" coords=\"20,20,80,80\" href=\"2\" target=\"1\"/>"
+                + "</map>"));
+        // Sorted by href: 0 -> href 1, 1 -> href 2 (last in document), 2 -> href 3
+        assertEquals(1, overlapping.findArea(50, 50, HitPolicy.TOPMOST, -1));
+        assertEquals(2, overlapping.findArea(50, 50, HitPolicy.SMALLEST, -1));
+        assertEquals(1, overlapping.findArea(50, 50, HitPolicy.SMALLEST, 1));
+        assertEquals(0, overlapping.findArea(10, 10, HitPolicy.SMALLEST, -1));
+        assertEquals(-1, overlapping.findArea(10, 10, HitPolicy.TOPMOST, 2));
+    }
+
+    @Test
+    public void labelsAreAnchoredInsideTheirAreas() throws Exception {
+        MapData labelled = new MapData(parse("<map>"
+                // L shaped area, its centroid lies outside of it
+                + "<area shape=\"poly\" coords=\"0,0,100,0,100,20,20,20,20,100,0,100\" href=\"1\" title=\"Hall\"/>"
+                + "<area shape=\"rect\" coords=\"200,0,300,100\" href=\"2\" alt=\"Lobby\"/>"
+                + "<area shape=\"rect\" coords=\"400,0,500,100\" href=\"3\"/>"
+                + "</map>"));
+        float[] anchor = new float[2];
+        Anchors.centroid(labelled.getArea(0), anchor, 0);
+        assertFalse(labelled.contains(0, anchor[0], anchor[1]));
+
+        Labels labels = Labels.build(labelled, 0.5f);
+        assertEquals(2, labels.size());
+        // The spacious rectangle is placed first.
+        assertEquals("Lobby", labels.getText(0));
+        assertEquals(250, labels.getX(0), 1);
+        assertEquals(50, labels.getY(0), 1);
+        assertEquals(50, labels.getRadius(0), 1);
+        assertEquals("Hall", labels.getText(1));
+        assertTrue(labelled.contains(0, labels.getX(1), labels.getY(1)));
+        // The widest spot of an L with 20 wide arms is at its corner.
+        assertEquals(11.7f, labels.getRadius(1), 0.5f);
+    }
+
+    @Test
+    public void zoomToFitUsesPrecomputedBounds() {
+        float[] bounds = new float[4];
+        assertFalse(data.getBounds(new int[0], 0, bounds));
+        assertTrue(data.getBounds(new int[]{0, 2}, 2, bounds));
+        assertArrayEquals(new float[]{200, 0, 500, 100}, bounds, 0f);
+
+        float[] centroid = new float[2];
+        data.getCentroid(3, centroid, 0);
+        assertArrayEquals(new float[]{50, 50}, centroid, 0.001f);
+
+        float[] fit = new float[3];
+        ViewportFit.fit(bounds[0], bounds[1], bounds[2], bounds[3], 0, 600, 600, fit);
+        assertEquals(2, fit[ViewportFit.SCALE], 0f);
+        // The center of the bounds, (350, 50), lands in the center of the view.
+        assertEquals(300, 350 * fit[ViewportFit.SCALE] + fit[ViewportFit.DX], 0.001f);
+        assertEquals(300, 50 * fit[ViewportFit.SCALE] + fit[ViewportFit.DY], 0.001f);
+    }
+
+    @Test
+    public void editsUpdateIdTablesAndIndexInPlace() {
+        // New area beyond the original extent, on top of everything else.
+        Area added = rect(3, 5, 600, 0, 700, 100);
+        int addedIndex = data.putArea(added);
+        assertEquals(4, addedIndex);
+        assertEquals(addedIndex, data.findArea(650, 50));
+        assertArrayEquals(new int[]{1, 2, 5}, data.getAreaGroups(3));
+        assertEquals(addedIndex, data.getAreaId(3, 5));
+        // The smallest-first index is rebuilt over the grown arrays.
+        assertEquals(addedIndex, data.findArea(650, 50, HitPolicy.SMALLEST, -1));
+
+        // Moving area 7 keeps its index.
+        assertEquals(3, data.putArea(rect(7, 1, 0, 200, 100, 300)));
+        assertEquals(-1, data.findArea(50, 50));
+        assertEquals(3, data.findArea(50, 250));
+
+        assertEquals(1, data.removeArea(3, 2));
+        assertTrue(data.isRemoved(1));
+        assertEquals(-1, data.findArea(250, 80));
+        assertArrayEquals(new int[]{1, 5}, data.getAreaGroups(3));
+        IntList out = new IntList();
+        data.findAreasInRect(0, 0, 1000, 1000, out);
+        assertArrayEquals(new int[]{0, 2, 3, 4}, sorted(out));
+        assertEquals(-1, data.findArea(250, 80, HitPolicy.SMALLEST, -1));
+        assertEquals(3, data.findArea(50, 250, HitPolicy.SMALLEST, -1));
+
+        // The freed index is reused.
+        assertEquals(1, data.putArea(rect(9, -1, 200, 60, 300, 100)));
+        assertEquals(1, data.getAreaId(9));
+        assertEquals(1, data.findArea(250, 80));
+    }
+
+    @Test
+    public void boundsOfSeveralAreasSkipRemovedAndUnknownAreas() {
+        float[] out = new float[4];
+        assertTrue(data.getBounds(new int[]{0, 1}, 2, out));
+        assertArrayEquals(new float[]{200, 0, 300, 100}, out, 0);
+
+        data.removeArea(3, 2);
+        assertTrue(data.getBounds(new int[]{0, 1, 9, -1}, 4, out));
+        assertArrayEquals(new float[]{200, 0, 300, 50}, out, 0);
+
+        float[] untouched = {-1, -1, -1, -1};
+        assertFalse(data.getBounds(new int[]{1, 9}, 2, untouched));
+        assertArrayEquals(new float[]{-1, -1, -1, -1}, untouched, 0);
+        assertFalse(data.getBounds(new int[]{0}, 0, untouched));
+    }
+
+    @Test
+    public void copiesAreEditedIndependently() {
+        data.removeArea(3, 2);
+        MapData copy = data.copy();
+        assertTrue(copy.isRemoved(1));
+        assertEquals(1, copy.putArea(rect(9, -1, 200, 60, 300, 100)));
+        assertEquals(4, copy.putArea(rect(3, 5, 600, 0, 700, 100)));
+        assertEquals(-1, copy.removeArea(3, 2));
+
+        assertEquals(1, copy.findArea(250, 80));
+        assertEquals(-1, data.findArea(250, 80));
+        assertEquals(-1, data.findArea(650, 50, HitPolicy.SMALLEST, -1));
+        assertEquals(4, copy.findArea(650, 50, HitPolicy.SMALLEST, -1));
+        assertEquals(-1, data.getAreaId(9));
+        assertArrayEquals(new int[]{1}, data.getAreaGroups(3));
+        assertArrayEquals(new int[]{1, 5}, copy.getAreaGroups(3));
+        assertEquals(4, data.size());
+    }
+
+    private static Area rect(int id, int target, float l, float t, float r, float b) {
+        Area area = new Area();
+        area.id = id;
+        area.target = target;
+        area.moveTo(l, t);
+        area.lineTo(r, t);
+        area.lineTo(r, b);
+        area.lineTo(l, b);
+        area.computeBounds();
+        return area;
+    }
+
+    private static int[] sorted(IntList list) {
+        int[] values = list.toArray();
+        Arrays.sort(values);
+        return values;
+    }
+}
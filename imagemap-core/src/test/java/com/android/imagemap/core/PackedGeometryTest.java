@@ -0,0 +1,53 @@
+package com.android.imagemap.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Geometry of compact maps, packed by {@link PackedGeometry}.
+ */
+public class PackedGeometryTest {
+
+    @Test
+    public void compactMapDecodesTheSameGeometry() throws Exception {
+        StringBuilder map = new StringBuilder("<map>");
+        Random random = new Random(3);
+        for (int i = 0; i < 500; i++) {
+            int x = random.nextInt(3000);
+            int y = random.nextInt(3000);
+            map.append("<area shape=\"poly\" href=\"").append(i).append("\" coords=\"");
+            for (int k = 0; k < 12; k++) {
+                double angle = Math.PI * 2 * k / 12;
+                double radius = 20 + random.nextInt(60);
+                map.append(k == 0 ? "" : ",").append(x + (int) (Math.cos(angle) * radius))
+                        .append(',').append(y + (int) (Math.sin(angle) * radius));
+            }
+            map.append("\"/>");
+        }
+        map.append("</map>");
+        MapData full = new MapData(MapDataTest.parse(map.toString()));
+        MapData compact = full.compact();
+
+        assertTrue(compact.isCompact());
+        PackedGeometry packed = compact.getPackedGeometry();
+        // Twelve vertices per area, eight bytes each as floats.
+        assertTrue(packed.getByteSize() + " bytes", packed.getByteSize() <= full.size() * 12 * 8 * 2 / 3);
+        for (int i = 0; i < full.size(); i++) {
+            Area expected = full.getArea(i);
+            Area actual = compact.getArea(i);
+            assertEquals(expected.id, actual.id);
+            assertArrayEquals(expected.rings, actual.rings);
+            assertArrayEquals(expected.points, actual.points, 0.04f);
+        }
+        for (int x = 0; x < 3000; x += 7) {
+            for (int y = 0; y < 3000; y += 13) {
+                assertEquals(full.findArea(x + 0.5f, y + 0.5f), compact.findArea(x + 0.5f, y + 0.5f));
+            }
+        }
+    }
+}
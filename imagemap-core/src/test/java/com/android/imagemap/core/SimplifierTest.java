@@ -0,0 +1,26 @@
+package com.android.imagemap.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Polygon simplification by {@link Simplifier}.
+ */
+public class SimplifierTest {
+
+    @Test
+    public void simplifyDropsCollinearVertices() {
+        Area area = new Area();
+        area.moveTo(0, 0);
+        area.lineTo(50, 0.1f);
+        area.lineTo(100, 0);
+        area.lineTo(100, 100);
+        area.lineTo(0, 100);
+        area.computeBounds();
+        Area simplified = Simplifier.simplify(area, 1);
+        assertEquals(8, simplified.pointCount);
+        assertTrue(simplified.contains(50, 50));
+    }
+}
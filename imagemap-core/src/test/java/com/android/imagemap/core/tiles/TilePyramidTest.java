@@ -0,0 +1,54 @@
+package com.android.imagemap.core.tiles;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TilePyramidTest {
+
+    @Test
+    public void levelsHalveUntilOneTileIsLeft() {
+        TilePyramid pyramid = new TilePyramid(1000, 300, 256, "png");
+        assertEquals(3, pyramid.getLevelCount());
+        assertEquals(1000, pyramid.getLevelWidth(0));
+        assertEquals(500, pyramid.getLevelWidth(1));
+        // Odd sizes round up, so the last pixel column is never dropped.
+        assertEquals(75, pyramid.getLevelHeight(2));
+        assertEquals(250, pyramid.getLevelWidth(2));
+
+        assertEquals(4, pyramid.getColumns(0));
+        assertEquals(2, pyramid.getRows(0));
+        assertEquals(2, pyramid.getColumns(1));
+        assertEquals(1, pyramid.getRows(1));
+        assertEquals(1, pyramid.getColumns(2));
+        assertEquals(0, pyramid.getTileOffset(0));
+        assertEquals(8, pyramid.getTileOffset(1));
+        assertEquals(10, pyramid.getTileOffset(2));
+        assertEquals(11, pyramid.getTileCount());
+    }
+
+    @Test
+    public void smallImagesHaveASingleLevel() {
+        TilePyramid pyramid = new TilePyramid(256, 10, 256, "jpg");
+        assertEquals(1, pyramid.getLevelCount());
+        assertEquals(1, pyramid.getTileCount());
+    }
+
+    @Test
+    public void levelForScaleKeepsOneTilePixelPerScreenPixel() {
+        TilePyramid pyramid = new TilePyramid(4000, 3000, 256, "png");
+        assertEquals(5, pyramid.getLevelCount());
+        assertEquals(0, pyramid.getLevelForScale(2));
+        assertEquals(0, pyramid.getLevelForScale(0.6f));
+        assertEquals(1, pyramid.getLevelForScale(0.5f));
+        assertEquals(1, pyramid.getLevelForScale(0.3f));
+        assertEquals(2, pyramid.getLevelForScale(0.25f));
+        assertEquals(4, pyramid.getLevelForScale(0.01f));
+        assertEquals(4, pyramid.getLevelForScale(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyImages() {
+        new TilePyramid(0, 100, 256, "png");
+    }
+}
@@ -0,0 +1,133 @@
+package com.android.imagemap.core.tiles;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes a pyramid whose tiles name their own position into both stores and
+ * reads it back through {@link TileStores#open(File)}.
+ */
+public class TileStoresTest {
+
+    private static final TileRenderer NAMES = new TileRenderer() {
+        @Override
+        public byte[] renderTile(int level, int column, int row) throws IOException {
+            return name(level, column, row).getBytes("UTF-8");
+        }
+    };
+
+    private final TilePyramid pyramid = new TilePyramid(700, 300, 256, "png");
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("tiles", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    @Test
+    public void directoryStoreReadsBackEveryTile() throws IOException {
+        File pyramidDirectory = new File(directory, "pyramid");
+        DirectoryTileStore.write(pyramidDirectory, pyramid, NAMES);
+        TileStore store = TileStores.open(pyramidDirectory);
+        assertTrue(store instanceof DirectoryTileStore);
+        assertReadsBack(store);
+    }
+
+    @Test
+    public void packedStoreReadsBackEveryTile() throws IOException {
+        File file = new File(directory, "pyramid.imt");
+        PackedTileStore.write(file, pyramid, NAMES);
+        TileStore store = TileStores.open(file);
+        assertTrue(store instanceof PackedTileStore);
+        assertReadsBack(store);
+        try {
+            store.openTile(0, pyramid.getColumns(0), 0);
+            fail("tile beyond the last column");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFilesThatAreNotPackedStores() throws IOException {
+        File file = new File(directory, "map.xml");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write("<map></map> and some padding to fill a header".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        TileStores.open(file);
+    }
+
+    private void assertReadsBack(TileStore store) throws IOException {
+        try {
+            TilePyramid read = store.getPyramid();
+            assertEquals(pyramid.getWidth(), read.getWidth());
+            assertEquals(pyramid.getHeight(), read.getHeight());
+            assertEquals(pyramid.getTileSize(), read.getTileSize());
+            assertEquals(pyramid.getFormat(), read.getFormat());
+            int tiles = 0;
+            for (int level = 0; level < read.getLevelCount(); level++) {
+                for (int row = 0; row < read.getRows(level); row++) {
+                    for (int column = 0; column < read.getColumns(level); column++) {
+                        assertEquals(name(level, column, row), read(store, level, column, row));
+                        tiles++;
+                    }
+                }
+            }
+            // 3x2 tiles of 256 pixels, 2x1 at 350x150 and one at 175x75.
+            assertEquals(9, tiles);
+            assertEquals(pyramid.getTileCount(), tiles);
+        } finally {
+            store.close();
+        }
+    }
+
+    private static String name(int level, int column, int row) {
+        return level + "/" + column + "_" + row;
+    }
+
+    private static String read(TileStore store, int level, int column, int row) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = store.openTile(level, column, row);
+        try {
+            byte[] buffer = new byte[64];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toString("UTF-8");
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
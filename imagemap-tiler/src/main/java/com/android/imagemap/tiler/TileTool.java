@@ -0,0 +1,122 @@
+package com.android.imagemap.tiler;
+
+import com.android.imagemap.core.tiles.DirectoryTileStore;
+import com.android.imagemap.core.tiles.PackedTileStore;
+import com.android.imagemap.core.tiles.TilePyramid;
+import com.android.imagemap.core.tiles.TileRenderer;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Command line tool cutting a large image into a tile pyramid that
+ * {@code BigImage#setImageTiles} can stream from.
+ * <p>
+ * Usage: {@code TileTool [--tile-size 256] [--format png|jpg] [--packed] <image> <output>}
+ * <p>
+ * Without --packed the output is a directory, otherwise a single file.
+ */
+public class TileTool {
+
+    public static void main(String[] args) throws IOException {
+        int tileSize = 256;
+        String format = "png";
+        boolean packed = false;
+        String input = null;
+        String output = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--tile-size".equals(arg) && i + 1 < args.length) {
+                tileSize = Integer.parseInt(args[++i]);
+            } else if ("--format".equals(arg) && i + 1 < args.length) {
+                format = args[++i];
+            } else if ("--packed".equals(arg)) {
+                packed = true;
+            } else if (input == null) {
+                input = arg;
+            } else {
+                output = arg;
+            }
+        }
+        if (input == null || output == null) {
+            System.err.println("Usage: TileTool [--tile-size 256] [--format png|jpg] [--packed] <image> <output>");
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        BufferedImage source = ImageIO.read(new File(input));
+        if (source == null) {
+            throw new IOException("Unsupported image " + input);
+        }
+        TilePyramid pyramid = new TilePyramid(source.getWidth(), source.getHeight(), tileSize, format);
+        LevelRenderer renderer = new LevelRenderer(source, pyramid);
+        File target = new File(output);
+        if (packed) {
+            PackedTileStore.write(target, pyramid, renderer);
+        } else {
+            DirectoryTileStore.write(target, pyramid, renderer);
+        }
+        System.out.println(pyramid.getTileCount() + " tiles on " + pyramid.getLevelCount()
+                + " levels written to " + target + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Renders tiles level by level, downscaling the previous level by two so
+     * only one intermediate image is kept in memory.
+     */
+    static class LevelRenderer implements TileRenderer {
+
+        private final TilePyramid pyramid;
+        private final boolean opaque;
+        private BufferedImage levelImage;
+        private int level;
+
+        LevelRenderer(BufferedImage source, TilePyramid pyramid) {
+            this.pyramid = pyramid;
+            opaque = !"png".equalsIgnoreCase(pyramid.getFormat());
+            levelImage = source;
+        }
+
+        @Override
+        public byte[] renderTile(int level, int column, int row) throws IOException {
+            while (this.level < level) {
+                this.level++;
+                levelImage = downscale(levelImage, pyramid.getLevelWidth(this.level),
+                        pyramid.getLevelHeight(this.level));
+            }
+            int size = pyramid.getTileSize();
+            int x = column * size;
+            int y = row * size;
+            int width = Math.min(size, levelImage.getWidth() - x);
+            int height = Math.min(size, levelImage.getHeight() - y);
+            BufferedImage tile = new BufferedImage(width, height,
+                    opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = tile.createGraphics();
+            g.drawImage(levelImage, -x, -y, null);
+            g.dispose();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!ImageIO.write(tile, pyramid.getFormat(), out)) {
+                throw new IOException("No image writer for " + pyramid.getFormat());
+            }
+            return out.toByteArray();
+        }
+
+        private BufferedImage downscale(BufferedImage image, int width, int height) {
+            BufferedImage scaled = new BufferedImage(width, height,
+                    opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = scaled.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, width, height, null);
+            g.dispose();
+            return scaled;
+        }
+    }
+}
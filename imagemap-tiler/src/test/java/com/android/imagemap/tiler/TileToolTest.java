@@ -0,0 +1,132 @@
+package com.android.imagemap.tiler;
+
+import com.android.imagemap.core.tiles.TilePyramid;
+import com.android.imagemap.core.tiles.TileStore;
+import com.android.imagemap.core.tiles.TileStores;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tiles a generated image with {@link TileTool} into both store formats and
+ * reads the tiles back.
+ */
+public class TileToolTest {
+
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 300;
+    private static final int TILE_SIZE = 256;
+
+    private File directory;
+    private File image;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("tiler", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+        image = new File(directory, "floor.png");
+        BufferedImage source = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                source.setRGB(x, y, color(x, y));
+            }
+        }
+        assertTrue(ImageIO.write(source, "png", image));
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    @Test
+    public void directoryPyramidHoldsEveryTile() throws IOException {
+        File output = new File(directory, "pyramid");
+        TileTool.main(new String[]{"--tile-size", String.valueOf(TILE_SIZE), image.getPath(), output.getPath()});
+        assertPyramid(TileStores.open(output));
+    }
+
+    @Test
+    public void packedPyramidHoldsEveryTile() throws IOException {
+        File output = new File(directory, "pyramid.imt");
+        TileTool.main(new String[]{"--tile-size", String.valueOf(TILE_SIZE), "--packed",
+                image.getPath(), output.getPath()});
+        assertTrue(output.isFile());
+        assertPyramid(TileStores.open(output));
+    }
+
+    private static void assertPyramid(TileStore store) throws IOException {
+        try {
+            TilePyramid pyramid = store.getPyramid();
+            assertEquals(WIDTH, pyramid.getWidth());
+            assertEquals(HEIGHT, pyramid.getHeight());
+            // 3x2 tiles at full size, 2x1 at 300x150 and one at 150x75.
+            assertEquals(3, pyramid.getLevelCount());
+            assertEquals(9, pyramid.getTileCount());
+
+            int tiles = 0;
+            for (int level = 0; level < pyramid.getLevelCount(); level++) {
+                for (int row = 0; row < pyramid.getRows(level); row++) {
+                    for (int column = 0; column < pyramid.getColumns(level); column++) {
+                        BufferedImage tile = read(store, level, column, row);
+                        int expectedWidth = Math.min(TILE_SIZE, pyramid.getLevelWidth(level) - column * TILE_SIZE);
+                        int expectedHeight = Math.min(TILE_SIZE, pyramid.getLevelHeight(level) - row * TILE_SIZE);
+                        assertEquals(expectedWidth, tile.getWidth());
+                        assertEquals(expectedHeight, tile.getHeight());
+                        tiles++;
+                    }
+                }
+            }
+            assertEquals(pyramid.getTileCount(), tiles);
+
+            // Edge tiles of the full resolution level are cut from the
+            // right and bottom of the image.
+            BufferedImage corner = read(store, 0, 2, 1);
+            assertEquals(WIDTH - 2 * TILE_SIZE, corner.getWidth());
+            assertEquals(HEIGHT - TILE_SIZE, corner.getHeight());
+            assertEquals(color(2 * TILE_SIZE, TILE_SIZE), corner.getRGB(0, 0) & 0xffffff);
+            assertEquals(color(WIDTH - 1, HEIGHT - 1),
+                    corner.getRGB(corner.getWidth() - 1, corner.getHeight() - 1) & 0xffffff);
+        } finally {
+            store.close();
+        }
+    }
+
+    private static int color(int x, int y) {
+        return (x * 255 / WIDTH) << 16 | (y * 255 / HEIGHT) << 8 | ((x + y) & 0xff);
+    }
+
+    private static BufferedImage read(TileStore store, int level, int column, int row) throws IOException {
+        InputStream in = store.openTile(level, column, row);
+        try {
+            BufferedImage tile = ImageIO.read(in);
+            assertNotNull("tile " + level + "/" + column + "_" + row, tile);
+            return tile;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
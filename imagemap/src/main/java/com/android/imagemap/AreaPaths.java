@@ -0,0 +1,70 @@
+package com.android.imagemap;
+
+import android.graphics.Path;
+
+import com.android.imagemap.core.Area;
+import com.android.imagemap.core.MapData;
+
+/**
+ * Converts core {@link Area} geometry into {@link Path} objects for drawing.
+ */
+final class AreaPaths {
+
+    private AreaPaths() {
+    }
+
+    /**
+     * Returns the path of the area, creating it first if the map is loaded
+     * lazily and the area has not been drawn yet.
+     */
+    static Path get(Path[] paths, MapData mapData, int areaIndex) {
+        if (areaIndex >= paths.length) {
+            // Added to the map after this array was handed out.
+            return toPath(mapData.getArea(areaIndex));
+        }
+        Path path = paths[areaIndex];
+        if (path == null) {
+            path = toPath(mapData.getArea(areaIndex));
+            paths[areaIndex] = path;
+        }
+        return path;
+    }
+
+    /**
+     * Drops the cached path of an edited area, growing the array if the area
+     * was added beyond its end.
+     *
+     * @return the array to use from now on
+     */
+    static Path[] invalidate(Path[] paths, int areaIndex) {
+        if (areaIndex < paths.length) {
+            paths[areaIndex] = null;
+            return paths;
+        }
+        Path[] grown = new Path[Math.max(areaIndex + 1, paths.length * 2)];
+        System.arraycopy(paths, 0, grown, 0, paths.length);
+        return grown;
+    }
+
+    static Path toPath(Area area) {
+        Path path = new Path();
+        addArea(path, area);
+        return path;
+    }
+
+    /**
+     * Appends the rings of the area to path.
+     */
+    static void addArea(Path path, Area area) {
+        float[] p = area.points;
+        for (int ring = 0; ring < area.ringCount; ring++) {
+            int start = area.getRingStart(ring);
+            int end = area.getRingEnd(ring);
+            path.moveTo(p[start], p[start + 1]);
+            for (int i = start + 2; i < end; i += 2) {
+                path.lineTo(p[i], p[i + 1]);
+            }
+            path.close();
+        }
+    }
+}
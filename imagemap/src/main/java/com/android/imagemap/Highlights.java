@@ -0,0 +1,194 @@
+package com.android.imagemap;
+
+import com.android.imagemap.core.AreaSet;
+
+import java.util.ArrayList;
+
+/**
+ * Highlighted areas of an {@link ImageMap}, one {@link AreaSet} per style.
+ * Styles are told apart by identity and drawn in the order they were first
+ * used, so an area in several sets is painted with each style, the last one
+ * on top. The sets can be combined with the set operations of
+ * {@link AreaSet}, for example to highlight the areas that are both occupied
+ * and reserved:
+ * <pre>
+ * highlights.get(conflict).set(highlights.get(occupied)).retainAll(highlights.get(reserved));
+ * map.invalidateHighlights();
+ * </pre>
+ * Changes made through this class or to the returned sets are drawn once
+ * {@link ImageMap#invalidateHighlights()} is called. Must be used on the UI
+ * thread.
+ */
+public class Highlights {
+
+    private final ArrayList<PaintType> styles = new ArrayList<>();
+    private final ArrayList<AreaSet> sets = new ArrayList<>();
+
+    /**
+     * @return the live set of areas highlighted with the style, created empty
+     * if the style was not used yet
+     */
+    public AreaSet get(PaintType style) {
+        int index = indexOf(style);
+        if (index >= 0) {
+            return sets.get(index);
+        }
+        AreaSet set = new AreaSet();
+        styles.add(style);
+        sets.add(set);
+        return set;
+    }
+
+    /**
+     * Highlights the area with the style only, removing it from other styles.
+     */
+    public void show(int areaId, PaintType style) {
+        hide(areaId);
+        get(style).add(areaId);
+    }
+
+    /**
+     * Removes the area from all styles.
+     */
+    public void hide(int areaId) {
+        for (int i = 0; i < sets.size(); i++) {
+            sets.get(i).remove(areaId);
+        }
+    }
+
+    /**
+     * @return true if the area is highlighted with any style
+     */
+    public boolean contains(int areaId) {
+        for (int i = 0; i < sets.size(); i++) {
+            if (sets.get(i).contains(areaId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the style drawn on top of the area, null if it is not highlighted
+     */
+    public PaintType getStyle(int areaId) {
+        for (int i = sets.size() - 1; i >= 0; i--) {
+            if (sets.get(i).contains(areaId)) {
+                return styles.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the areas highlighted with any style into out.
+     *
+     * @return out
+     */
+    public AreaSet getAll(AreaSet out) {
+        out.clear();
+        for (int i = 0; i < sets.size(); i++) {
+            out.addAll(sets.get(i));
+        }
+        return out;
+    }
+
+    /**
+     * Removes all areas and styles. Sets returned by {@link #get(PaintType)}
+     * before are no longer part of the highlights.
+     */
+    public void clear() {
+        styles.clear();
+        sets.clear();
+    }
+
+    /**
+     * Empties every set but keeps the styles, so refilling them with the
+     * same styles allocates nothing. Finish with {@link #removeEmptyStyles()}.
+     */
+    void clearAreas() {
+        for (int i = 0; i < sets.size(); i++) {
+            sets.get(i).clear();
+        }
+    }
+
+    /**
+     * Drops the styles whose sets are empty.
+     */
+    void removeEmptyStyles() {
+        for (int i = sets.size() - 1; i >= 0; i--) {
+            if (sets.get(i).isEmpty()) {
+                styles.remove(i);
+                sets.remove(i);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        for (int i = 0; i < sets.size(); i++) {
+            if (!sets.get(i).isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of styles used so far, in drawing order
+     */
+    public int getStyleCount() {
+        return styles.size();
+    }
+
+    public PaintType getStyleAt(int index) {
+        return styles.get(index);
+    }
+
+    public AreaSet getAreasAt(int index) {
+        return sets.get(index);
+    }
+
+    /**
+     * Adds to out every area whose highlighting differs between this and
+     * previous, either in or out of a set or in a different style.
+     */
+    void collectChanges(Highlights previous, AreaSet out, AreaSet scratch) {
+        for (int i = 0; i < sets.size(); i++) {
+            int old = previous.indexOf(styles.get(i));
+            scratch.set(sets.get(i));
+            if (old >= 0) {
+                scratch.xor(previous.sets.get(old));
+            }
+            out.addAll(scratch);
+        }
+        for (int i = 0; i < previous.sets.size(); i++) {
+            if (indexOf(previous.styles.get(i)) < 0) {
+                out.addAll(previous.sets.get(i));
+            }
+        }
+    }
+
+    /**
+     * Makes target a copy of this, reusing its sets.
+     */
+    void copyTo(Highlights target) {
+        for (int i = 0; i < sets.size(); i++) {
+            target.get(styles.get(i)).set(sets.get(i));
+        }
+        for (int i = target.sets.size() - 1; i >= 0; i--) {
+            if (indexOf(target.styles.get(i)) < 0) {
+                target.styles.remove(i);
+                target.sets.remove(i);
+            }
+        }
+    }
+
+    private int indexOf(PaintType style) {
+        for (int i = 0; i < styles.size(); i++) {
+            if (styles.get(i) == style) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -19,22 +19,45 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
 import android.graphics.Path;
+import android.graphics.Rect;
 import android.graphics.RectF;
-import android.graphics.Region;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.AttributeSet;
-import android.util.DisplayMetrics;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
-import android.view.WindowManager;
+import android.view.View;
 
 import com.android.bigimage.BigImage;
+import com.android.bigimage.ConfigurationRetainer;
+import com.android.bigimage.DecodeStrategy;
+import com.android.bigimage.ImagePreloader;
+import com.android.bigimage.ImageSource;
+import com.android.bigimage.PrefetchScheduler;
+import com.android.imagemap.core.Area;
+import com.android.imagemap.core.AreaSet;
+import com.android.imagemap.core.AreaTracker;
+import com.android.imagemap.core.HitPolicy;
+import com.android.imagemap.core.IntList;
+import com.android.imagemap.core.Labels;
+import com.android.imagemap.core.MapData;
+import com.android.imagemap.core.ViewportFit;
 
 import org.xmlpull.v1.XmlPullParserException;
 
-import static android.content.Context.WINDOW_SERVICE;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Image map implementation for Android platform. Allows you show an image with
@@ -69,33 +92,133 @@ public class ImageMap extends BigImage implements GestureDetector.OnDoubleTapLis
     public static final int GREEN_OVERLAY_COLOR = 0xff00ff00;
     public static final int RED_OVERLAY_COLOR = 0xffff0000;
 
+    /**
+     * Touches pan and zoom the map, taps select a single area.
+     */
+    public static final int SELECTION_MODE_NONE = 0;
+    /**
+     * Single finger drags select all areas intersecting the dragged rectangle.
+     */
+    public static final int SELECTION_MODE_RECTANGLE = 1;
+    /**
+     * Single finger drags select all areas intersecting the drawn outline.
+     */
+    public static final int SELECTION_MODE_LASSO = 2;
+
+    private static final float LASSO_MIN_STEP = 8;
+    /**
+     * Accuracy of label anchors in image pixels.
+     */
+    private static final float LABEL_PRECISION = 1;
+    /**
+     * Paths kept for compact maps, enough for the areas of a busy screen.
+     */
+    private static final int COMPACT_PATH_CACHE_SIZE = 256;
+
+    /**
+     * Tags the key of an edited map kept through {@link ConfigurationRetainer}.
+     */
+    private static final String EDITED_MAP_KEY = "ImageMap:edited";
+
+    /**
+     * Builds labels one map at a time, so that labels of an older version of
+     * an edited map can never replace newer ones.
+     */
+    private static final ThreadPoolExecutor LABEL_EXECUTOR = new ThreadPoolExecutor(1, 1,
+            1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ImageMap labels");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    static {
+        LABEL_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private static final Comparator<MapLayer> LAYER_ORDER = new Comparator<MapLayer>() {
+        @Override
+        public int compare(MapLayer a, MapLayer b) {
+            return a.getZOrder() < b.getZOrder() ? -1 : a.getZOrder() == b.getZOrder() ? 0 : 1;
+        }
+    };
+
     private final int defaultColor;
 
     private Path[] areaPaths;
+    private volatile PathLru pathLru;
+    private MapData mapData;
     private Path path;
-    private Region region;
     private ImageMapListener imageMapListener;
-    private int[] areasToDraw;
+    private ImageMapTapListener tapListener;
+    private HitPolicy hitPolicy = HitPolicy.TOPMOST;
+    private int hitTarget = -1;
+    private ImageMapTrackingListener trackingListener;
+    private AreaTracker tracker;
+    private MapData trackedMap;
+    private int trackedArea = -1;
+    private boolean trackingTouch;
+    private final Highlights highlights = new Highlights();
+    private final Highlights drawnHighlights = new Highlights();
+    private final AreaSet changedAreas = new AreaSet();
+    private final AreaSet scratchAreas = new AreaSet();
     private Paint paint;
-    private PaintType[] colorsToDraw;
+    private PaintType[] taskColors;
     private boolean pathsInitialized;
     private boolean panAndZoomSelection;
     private int[] taskAreasIds;
+    private boolean taskGroupPending;
+    private int taskGroupId;
+    private final IntList groupAreas = new IntList();
     private MapResource mapResource;
-    private WindowManager manager;
     private int boundPad;
     private SimpleResourceCache simpleResourceCache;
-    private RectF bounds;
+    private MapResource sharedResource;
+    /**
+     * The shared map as read by this view, see {@link MapCaches#forShared}.
+     */
+    private ImageMapDataCache sharedCache;
+    private boolean sharedCacheHeld;
+    /**
+     * Set once the map was edited: simpleResourceCache then holds a private
+     * copy of the map instead of the one shared through MapRegistry.
+     */
+    private boolean ownsMapCopy;
+    /**
+     * Counts edits, labels built before the last edit are dropped.
+     */
+    private volatile int mapEdits;
+    private final float[] bounds = new float[4];
+    private final float[] fit = new float[3];
+    private final Rect dirty = new Rect();
     private PaintType defaultPaintType;
     private String TAG = getClass().getSimpleName();
+    private int selectionMode = SELECTION_MODE_NONE;
+    private ImageMapSelectionListener selectionListener;
+    private float[] selectionPoints = new float[64];
+    private int selectionPointCount;
+    private final Path selectionPath = new Path();
+    private final IntList selectedAreas = new IntList();
+    /**
+     * Additional maps in drawing order.
+     */
+    private final ArrayList<MapLayer> layers = new ArrayList<>();
+    private ImageMapLayerListener layerListener;
+    private Paint selectionPaint;
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.SUBPIXEL_TEXT_FLAG);
+    private volatile LabelLayer labelLayer;
+    private boolean labelsEnabled;
+    private boolean labelsFitToArea = true;
 
     public ImageMap(final Context context, AttributeSet attrs) {
         super(context, attrs);
-        manager = (WindowManager) context.getSystemService(WINDOW_SERVICE);
         TypedArray attributes = context.obtainStyledAttributes(attrs, R.styleable.ImageMap);
         int resId = attributes.getResourceId(R.styleable.ImageMap_map, 0);
         if (resId != 0) {
-            mapResource = new MapResource(resId);
+            mapResource = new MapResource(resId)
+                    .withCompactGeometry(attributes.getBoolean(R.styleable.ImageMap_compactGeometry, false));
 //            throw new IllegalStateException("map attribute must be specified");
         }
         boundPad = attributes.getDimensionPixelSize(R.styleable.ImageMap_selectionPadding, 50);
@@ -104,35 +227,111 @@ public class ImageMap extends BigImage implements GestureDetector.OnDoubleTapLis
         defaultPaintType = new PaintType(defaultSelectionType == 0 ? Style.FILL : Style.STROKE, defaultColor);
         panAndZoomSelection = attributes.getBoolean(R.styleable.ImageMap_panAndZoomSelection, false);
         float defaultSelectionStrokeWidth = attributes.getFloat(R.styleable.ImageMap_selectionStrokeWidth, 4);
+        hitPolicy = HitPolicy.values()[attributes.getInt(R.styleable.ImageMap_hitPolicy, 0)];
+        hitTarget = attributes.getInt(R.styleable.ImageMap_hitTarget, -1);
+        labelsEnabled = attributes.getBoolean(R.styleable.ImageMap_showLabels, false);
+        labelPaint.setTextSize(attributes.getDimension(R.styleable.ImageMap_labelTextSize,
+                12 * context.getResources().getDisplayMetrics().scaledDensity));
+        labelPaint.setColor(attributes.getColor(R.styleable.ImageMap_labelColor, Color.BLACK));
+        labelPaint.setTextAlign(Paint.Align.CENTER);
         attributes.recycle();
 
         if (mapResource != null) {
             initMap();
         }
 
-        region = new Region();
-        bounds = new RectF();
         path = new Path();
-        areasToDraw = new int[0];
 
         paint = new Paint();
         paint.setAntiAlias(true);
         paint.setColor(defaultColor);
         paint.setStrokeWidth(defaultSelectionStrokeWidth);
+
+        selectionPaint = new Paint();
+        selectionPaint.setAntiAlias(true);
+        selectionPaint.setColor(defaultColor);
+        selectionPaint.setStyle(Style.STROKE);
+        selectionPaint.setStrokeWidth(defaultSelectionStrokeWidth);
+    }
+
+    /**
+     * Starts parsing the map and decoding the image resource in the
+     * background, so a view created later, for example when the first
+     * screen is inflated, finds both ready or waits for the work already in
+     * progress. The resource must be configured like the one of the view,
+     * see {@link MapResource#withCompactGeometry(boolean)}.
+     */
+    public static void preload(Context context, MapResource map, int imageResource) {
+        preloadMap(context, map);
+        ImagePreloader.preload(context, imageResource);
+    }
+
+    /**
+     * Same as {@link #preload(Context, MapResource, int)} for an image
+     * shown through {@link #setImageFile(String)}.
+     */
+    public static void preload(Context context, MapResource map, String imageFile) {
+        preloadMap(context, map);
+        ImagePreloader.preload(context, imageFile);
+    }
+
+    /**
+     * Same as {@link #preload(Context, MapResource, int)} for an image
+     * shown through {@link #setImageSource(ImageSource)}.
+     */
+    public static void preload(Context context, MapResource map, ImageSource image) {
+        preloadMap(context, map);
+        ImagePreloader.preload(context, image);
+    }
+
+    /**
+     * Same as {@link #preload(Context, MapResource, ImageSource)} for a view
+     * decoding with its own {@link #setDecodeStrategy(DecodeStrategy)}.
+     */
+    public static void preload(Context context, MapResource map, ImageSource image, DecodeStrategy strategy) {
+        preloadMap(context, map);
+        ImagePreloader.preload(context, image, strategy);
+    }
+
+    private static void preloadMap(Context context, final MapResource map) {
+        final Context applicationContext = context.getApplicationContext();
+        final ImageMapDataCache cache = MapCaches.getApplicationCache(applicationContext);
+        if (cache == null) {
+            MapRegistry.preload(applicationContext, map);
+            return;
+        }
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    cache.getMapData(applicationContext, map);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }).start();
     }
 
     private void initMap() {
+        labelLayer = null;
         new Thread(new Runnable() {
             public void run() {
                 try {
+                    MapData data;
                     synchronized (ImageMap.this) {
-                        areaPaths = getCache().getAreaPaths(getContext(), mapResource);
+                        ImageMapDataCache cache = getCache();
+                        areaPaths = cache.getAreaPaths(getContext(), mapResource);
+                        mapData = cache.getMapData(getContext(), mapResource);
+                        data = mapData;
+                        pathLru = data.isCompact() ? new PathLru(COMPACT_PATH_CACHE_SIZE) : null;
                         ImageMap.this.pathsInitialized = true;
                         ImageMap.this.notify();
-                        if (boundsInitialized && taskAreasIds != null) {
-                            showAreasSync(taskAreasIds, colorsToDraw);
+                        if (boundsInitialized) {
+                            showPendingAreas();
                         }
                     }
+                    if (labelsEnabled) {
+                        scheduleLabels(data, data);
+                    }
                 } catch (XmlPullParserException xmlppex) {
                     mapResource = null;
                     xmlppex.printStackTrace();
@@ -144,47 +343,421 @@ public class ImageMap extends BigImage implements GestureDetector.OnDoubleTapLis
     }
 
     public void setMap(MapResource resource) {
+        synchronized (this) {
+            if (ownsMapCopy) {
+                ownsMapCopy = false;
+                simpleResourceCache = null;
+            }
+        }
         mapResource = resource;
         initMap();
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        synchronized (this) {
+            if (simpleResourceCache != null && !sharedCacheHeld && !ownsMapCopy) {
+                // Hand our geometry back to the registry, or pick up the copy
+                // another view registered while we were detached.
+                simpleResourceCache = MapRegistry.acquire(sharedResource, simpleResourceCache);
+                sharedCacheHeld = true;
+            }
+        }
+        for (int k = 0; k < layers.size(); k++) {
+            layers.get(k).reacquire();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        boolean changingConfigurations = ConfigurationRetainer.isChangingConfigurations(this);
+        synchronized (this) {
+            if (sharedCacheHeld) {
+                MapRegistry.release(sharedResource, changingConfigurations);
+                sharedCacheHeld = false;
+            }
+            if (ownsMapCopy && changingConfigurations) {
+                // The recreated view picks the edits up in getCache().
+                ConfigurationRetainer.retain(getEditedMapKey(), simpleResourceCache);
+            }
+        }
+        for (int k = 0; k < layers.size(); k++) {
+            layers.get(k).release(changingConfigurations, false);
+        }
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
         if (boundsInitialized && pathsInitialized) {
-            if (areasToDraw != null) {
-                int i = 0;
-                for (int areaIndex : areasToDraw) {
-                    path.reset();
-                    path.addPath(areaPaths[areaIndex]);
-                    path.transform(getImageMatrix());
-                    if (colorsToDraw != null && colorsToDraw.length > i) {
-                        PaintType paintType = colorsToDraw[i];
-                        paint.setColor(paintType.color);
-                        paint.setStyle(paintType.style);
-                        i++;
-                    }
-                    canvas.drawPath(path, paint);
+            drawHighlights(canvas, highlights, mapData, null);
+        } else {
+//            initBounds();
+        }
+        if (boundsInitialized) {
+            for (int k = 0; k < layers.size(); k++) {
+                MapLayer layer = layers.get(k);
+                MapData layerData = layer.getMapData();
+                if (layer.isVisible() && layerData != null) {
+                    drawHighlights(canvas, layer.getHighlights(), layerData, layer);
                 }
-                paint.setColor(defaultColor);
             }
+        }
+        paint.setColor(defaultColor);
+        LabelLayer labelLayer = this.labelLayer;
+        if (labelsEnabled && labelLayer != null && boundsInitialized) {
+            labelLayer.draw(canvas, scale, dx, dy, viewWidth, viewHeight);
+        }
+        drawSelection(canvas);
+    }
+
+    /**
+     * Draws the highlighted areas of the view's own map, or of the layer if
+     * it is not null.
+     */
+    private void drawHighlights(Canvas canvas, Highlights highlights, MapData mapData, MapLayer layer) {
+        for (int k = 0; k < highlights.getStyleCount(); k++) {
+            PaintType paintType = highlights.getStyleAt(k);
+            AreaSet areas = highlights.getAreasAt(k);
+            paint.setColor(paintType.color);
+            paint.setStyle(paintType.style);
+            for (int i = areas.nextArea(0); i >= 0; i = areas.nextArea(i + 1)) {
+                if (i >= mapData.size() || mapData.isRemoved(i)) {
+                    continue;
+                }
+                path.reset();
+                path.addPath(layer != null ? layer.getPath(mapData, i) : getPath(mapData, i));
+                path.transform(getImageMatrix());
+                canvas.drawPath(path, paint);
+            }
+        }
+    }
+
+    /**
+     * Computes label anchors on the label thread and installs the label
+     * layer if the map was neither replaced nor edited meanwhile.
+     *
+     * @param snapshot map to place labels for, not edited while labels are
+     *                 built
+     * @param data     map shown by the view that snapshot was taken from
+     */
+    private void scheduleLabels(final MapData snapshot, final MapData data) {
+        final int edits = mapEdits;
+        LABEL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final LabelLayer layer = new LabelLayer(Labels.build(snapshot, LABEL_PRECISION), labelPaint);
+                layer.setFitToArea(labelsFitToArea);
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mapData == data && mapEdits == edits) {
+                            labelLayer = layer;
+                            invalidate();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #scheduleLabels(MapData, MapData)} for the map shown by
+     * the view, copying it first if it may be edited while labels are built.
+     * Must be called on the UI thread.
+     */
+    private void scheduleLabels(MapData data) {
+        scheduleLabels(ownsMapCopy ? data.copy() : data, data);
+    }
+
+    /**
+     * Shows the title, or else alt attribute of areas as labels. Labels that
+     * do not fit into their area or overlap a more prominent label at the
+     * current zoom are hidden.
+     *
+     * @param labelsEnabled
+     */
+    public void setLabelsEnabled(boolean labelsEnabled) {
+        this.labelsEnabled = labelsEnabled;
+        MapData data = mapData;
+        if (labelsEnabled && labelLayer == null && data != null) {
+            scheduleLabels(data);
+        }
+        invalidate();
+    }
+
+    public boolean isLabelsEnabled() {
+        return labelsEnabled;
+    }
+
+    /**
+     * @param size text size of labels in pixels
+     */
+    public void setLabelTextSize(float size) {
+        labelPaint.setTextSize(size);
+        invalidate();
+    }
+
+    public void setLabelColor(int color) {
+        labelPaint.setColor(color);
+        invalidate();
+    }
+
+    /**
+     * Allows labels to be placed even if they are wider than their area.
+     *
+     * @param fitToArea false to only hide labels that overlap other labels
+     */
+    public void setLabelsFitToArea(boolean fitToArea) {
+        labelsFitToArea = fitToArea;
+        LabelLayer layer = labelLayer;
+        if (layer != null) {
+            layer.setFitToArea(fitToArea);
+        }
+        invalidate();
+    }
+
+    /**
+     * Adds an area to the map, or replaces the area with the same id and
+     * target, without parsing the map again. Coordinates are in image pixels
+     * and the bounds of the area must be computed. Only the changed part of
+     * the view is redrawn. The first edit gives the view its own copy of the
+     * map, so other views showing the same map are not affected. Must be
+     * called on the UI thread.
+     *
+     * @return index of the added or replaced area
+     * @throws IllegalStateException if the map is not loaded yet
+     */
+    public int putArea(Area area) {
+        MapData mapData = requireEditableMap();
+        dirty.setEmpty();
+        int existing = mapData.getAreaId(area.id, area.target);
+        if (existing >= 0) {
+            addDirtyBounds(mapData, existing);
+        }
+        int areaIndex = mapData.putArea(area);
+        onAreaEdited(mapData, areaIndex);
+        return areaIndex;
+    }
+
+    /**
+     * Removes an area from the map, see {@link #putArea(Area)}.
+     *
+     * @param target target of the area or -1 for the first area with the id
+     * @return false if there was no such area
+     */
+    public boolean removeArea(int dataId, int target) {
+        MapData mapData = requireEditableMap();
+        dirty.setEmpty();
+        int areaIndex = mapData.getAreaId(dataId, target);
+        if (areaIndex < 0) {
+            return false;
+        }
+        addDirtyBounds(mapData, areaIndex);
+        mapData.removeArea(dataId, target);
+        onAreaEdited(mapData, areaIndex);
+        return true;
+    }
+
+    private MapData requireLoadedMap() {
+        MapData mapData = this.mapData;
+        if (mapData == null) {
+            throw new IllegalStateException("Map is not loaded yet");
+        }
+        return mapData;
+    }
+
+    /**
+     * Returns the map to edit. A map shared through {@link MapRegistry} is
+     * first replaced by a private copy, which keeps area indices, and the
+     * shared one is released. Maps of an application provided
+     * {@link ImageMapDataCache} are edited in place.
+     */
+    private MapData requireEditableMap() {
+        MapData mapData = requireLoadedMap();
+        if (ownsMapCopy || MapCaches.getApplicationCache(getContext()) != null) {
+            return mapData;
+        }
+        MapData copy = mapData.copy();
+        Path[] paths = areaPaths.clone();
+        synchronized (this) {
+            if (sharedCacheHeld) {
+                MapRegistry.release(sharedResource);
+                sharedCacheHeld = false;
+            }
+            simpleResourceCache = new SimpleResourceCache(copy, paths);
+            ownsMapCopy = true;
+            areaPaths = paths;
+            this.mapData = copy;
+        }
+        tracker = null;
+        return copy;
+    }
+
+    private Object getEditedMapKey() {
+        return Arrays.asList(EDITED_MAP_KEY, getId(), mapResource);
+    }
+
+    private void onAreaEdited(MapData mapData, int areaIndex) {
+        ImageMapResourcesCache cache = getCache();
+        areaPaths = cache instanceof SimpleResourceCache
+                ? ((SimpleResourceCache) cache).invalidatePath(areaIndex)
+                : AreaPaths.invalidate(areaPaths, areaIndex);
+        addDirtyBounds(mapData, areaIndex);
+        tracker = null;
+        mapEdits++;
+        if (labelLayer != null) {
+            scheduleLabels(mapData);
+        }
+        if (!dirty.isEmpty()) {
+            invalidate(dirty);
+        }
+    }
+
+    /**
+     * Grows {@link #dirty} by the bounds of the area in view coordinates,
+     * padded by the stroke width.
+     */
+    private void addDirtyBounds(MapData mapData, int areaIndex) {
+        if (!boundsInitialized || mapData.isRemoved(areaIndex)) {
+            return;
+        }
+        mapData.getBounds(areaIndex, bounds, 0);
+        int pad = (int) Math.ceil(paint.getStrokeWidth()) + 1;
+        dirty.union((int) Math.floor(bounds[0] * scale + dx) - pad,
+                (int) Math.floor(bounds[1] * scale + dy) - pad,
+                (int) Math.ceil(bounds[2] * scale + dx) + pad,
+                (int) Math.ceil(bounds[3] * scale + dy) + pad);
+    }
+
+    private void drawSelection(Canvas canvas) {
+        if (selectionPointCount < 4) {
+            return;
+        }
+        float[] p = selectionPoints;
+        if (selectionMode == SELECTION_MODE_RECTANGLE) {
+            canvas.drawRect(Math.min(p[0], p[2]), Math.min(p[1], p[3]),
+                    Math.max(p[0], p[2]), Math.max(p[1], p[3]), selectionPaint);
         } else {
-//            initBounds();
+            selectionPath.rewind();
+            selectionPath.moveTo(p[0], p[1]);
+            for (int i = 2; i < selectionPointCount; i += 2) {
+                selectionPath.lineTo(p[i], p[i + 1]);
+            }
+            selectionPath.close();
+            canvas.drawPath(selectionPath, selectionPaint);
         }
     }
 
     @Override
     public void reset() {
         super.reset();
-        areasToDraw = null;
-        colorsToDraw = null;
+        highlights.clear();
+        highlights.copyTo(drawnHighlights);
+    }
+
+    /**
+     * Saves the highlighted areas with their styles and the selection mode on
+     * top of the viewport saved by {@link BigImage}. Styles are restored as
+     * new {@link PaintType} instances, except the default one.
+     */
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        state.selectionMode = selectionMode;
+        int styleCount = highlights.getStyleCount();
+        state.colors = new int[styleCount];
+        state.styles = new int[styleCount];
+        state.areas = new int[styleCount][];
+        IntList list = new IntList();
+        for (int i = 0; i < styleCount; i++) {
+            PaintType paintType = highlights.getStyleAt(i);
+            state.colors[i] = paintType.color;
+            state.styles[i] = paintType.style.ordinal();
+            list.clear();
+            highlights.getAreasAt(i).toList(list);
+            state.areas[i] = list.toArray();
+        }
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState saved = (SavedState) state;
+        super.onRestoreInstanceState(saved.getSuperState());
+        selectionMode = saved.selectionMode;
+        highlights.clear();
+        Style[] values = Style.values();
+        for (int i = 0; i < saved.colors.length; i++) {
+            PaintType paintType = defaultPaintType;
+            Style style = values[saved.styles[i]];
+            if (paintType.color != saved.colors[i] || paintType.style != style) {
+                paintType = new PaintType(style, saved.colors[i]);
+            }
+            AreaSet set = highlights.get(paintType);
+            for (int areaId : saved.areas[i]) {
+                set.add(areaId);
+            }
+        }
+        invalidateHighlights();
+    }
+
+    static class SavedState extends BaseSavedState {
+        int selectionMode;
+        int[] colors;
+        int[] styles;
+        int[][] areas;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            selectionMode = in.readInt();
+            colors = in.createIntArray();
+            styles = in.createIntArray();
+            areas = new int[colors.length][];
+            for (int i = 0; i < areas.length; i++) {
+                areas[i] = in.createIntArray();
+            }
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(selectionMode);
+            out.writeIntArray(colors);
+            out.writeIntArray(styles);
+            for (int[] a : areas) {
+                out.writeIntArray(a);
+            }
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
     }
 
     @Override
     protected synchronized void initBounds() {
         super.initBounds();
-        if (pathsInitialized && taskAreasIds != null) {
-            showAreasSync(taskAreasIds, colorsToDraw);
+        if (pathsInitialized) {
+            showPendingAreas();
         }
     }
 
@@ -198,6 +771,206 @@ public class ImageMap extends BigImage implements GestureDetector.OnDoubleTapLis
         this.imageMapListener = imageMapListener;
     }
 
+    /**
+     * Adds a map drawn over the image together with the view's own map and
+     * the other layers, sharing the image and the zoom. The layer is loaded
+     * in the background; maps shown by several layers or views are parsed
+     * once through {@link MapRegistry}.
+     *
+     * @return the new layer, on top of the layers with the same z-order
+     */
+    public MapLayer addLayer(MapResource resource) {
+        final MapLayer layer = new MapLayer(this, resource, defaultPaintType);
+        layers.add(layer);
+        onLayerOrderChanged();
+        final Context context = getContext();
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    layer.load(context, COMPACT_PATH_CACHE_SIZE);
+                    postInvalidate();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }).start();
+        return layer;
+    }
+
+    /**
+     * Removes the layer and releases its map.
+     */
+    public void removeLayer(MapLayer layer) {
+        if (layers.remove(layer)) {
+            layer.release(false, true);
+            invalidate();
+        }
+    }
+
+    public int getLayerCount() {
+        return layers.size();
+    }
+
+    /**
+     * @return the layer at the index in drawing order, bottom first
+     */
+    public MapLayer getLayerAt(int index) {
+        return layers.get(index);
+    }
+
+    /**
+     * Sets the listener receiving taps won by areas of layers.
+     */
+    public void setImageMapLayerListener(ImageMapLayerListener layerListener) {
+        this.layerListener = layerListener;
+    }
+
+    void onLayerOrderChanged() {
+        Collections.sort(layers, LAYER_ORDER);
+        invalidate();
+    }
+
+    /**
+     * Sets the listener receiving both area and data id of the area that won a
+     * tap. It is notified together with the {@link ImageMapListener}.
+     *
+     * @param tapListener
+     */
+    public void setImageMapTapListener(ImageMapTapListener tapListener) {
+        this.tapListener = tapListener;
+    }
+
+    /**
+     * Chooses which area wins a tap when several areas contain the point.
+     *
+     * @param hitPolicy
+     */
+    public void setHitPolicy(HitPolicy hitPolicy) {
+        this.hitPolicy = hitPolicy;
+        tracker = null;
+    }
+
+    /**
+     * Sets the listener following the area under a hovering pointer, or under
+     * a finger dragged after a long press. While such a drag lasts the map
+     * does not pan. Areas are resolved with the hit policy and target used
+     * for taps.
+     *
+     * @param trackingListener listener or null to stop tracking
+     */
+    public void setImageMapTrackingListener(ImageMapTrackingListener trackingListener) {
+        this.trackingListener = trackingListener;
+        trackingTouch = false;
+        trackedArea = -1;
+    }
+
+    public HitPolicy getHitPolicy() {
+        return hitPolicy;
+    }
+
+    /**
+     * Restricts taps to areas with the given target attribute.
+     *
+     * @param hitTarget target to accept, -1 accepts every area
+     */
+    public void setHitTarget(int hitTarget) {
+        this.hitTarget = hitTarget;
+        tracker = null;
+    }
+
+    public int getHitTarget() {
+        return hitTarget;
+    }
+
+    /**
+     * Sets the listener notified when a rectangle or lasso selection completes.
+     *
+     * @param selectionListener
+     */
+    public void setImageMapSelectionListener(ImageMapSelectionListener selectionListener) {
+        this.selectionListener = selectionListener;
+    }
+
+    /**
+     * Switches single finger drags between panning and area selection.
+     *
+     * @param selectionMode one of {@link #SELECTION_MODE_NONE},
+     *                      {@link #SELECTION_MODE_RECTANGLE} or {@link #SELECTION_MODE_LASSO}
+     */
+    public void setSelectionMode(int selectionMode) {
+        this.selectionMode = selectionMode;
+        selectionPointCount = 0;
+        invalidate();
+    }
+
+    public int getSelectionMode() {
+        return selectionMode;
+    }
+
+    /**
+     * Appends to out all areas intersecting the rectangle given in view
+     * coordinates.
+     */
+    public void findAreasInRect(float left, float top, float right, float bottom, IntList out) {
+        MapData mapData = this.mapData;
+        if (mapData == null || !boundsInitialized) {
+            return;
+        }
+        mapData.findAreasInRect(toImageX(Math.min(left, right)), toImageY(Math.min(top, bottom)),
+                toImageX(Math.max(left, right)), toImageY(Math.max(top, bottom)), out);
+    }
+
+    /**
+     * Appends to out all areas intersecting the polygon given as count
+     * interleaved x,y values in view coordinates. The points are converted to
+     * image coordinates in place.
+     */
+    public void findAreasInPolygon(float[] points, int count, IntList out) {
+        MapData mapData = this.mapData;
+        if (mapData == null || !boundsInitialized) {
+            return;
+        }
+        for (int i = 0; i < count; i += 2) {
+            points[i] = toImageX(points[i]);
+            points[i + 1] = toImageY(points[i + 1]);
+        }
+        mapData.findAreasInPolygon(points, count, out);
+    }
+
+    /**
+     * Appends to out all areas within radius view pixels of the given point in
+     * view coordinates.
+     */
+    public void findAreasInCircle(float x, float y, float radius, IntList out) {
+        MapData mapData = this.mapData;
+        if (mapData == null || !boundsInitialized) {
+            return;
+        }
+        mapData.findAreasInCircle(toImageX(x), toImageY(y), radius / scale, out);
+    }
+
+    /**
+     * Hit-tests every pointer of the event at once. results must hold at least
+     * {@link MotionEvent#getPointerCount()} values, each receives the area
+     * under the pointer with the same index or -1.
+     */
+    public void findAreasAt(MotionEvent event, int[] results) {
+        MapData mapData = this.mapData;
+        int count = event.getPointerCount();
+        for (int i = 0; i < count; i++) {
+            results[i] = mapData == null || !boundsInitialized ? -1
+                    : mapData.findArea(toImageX(event.getX(i)), toImageY(event.getY(i)));
+        }
+    }
+
+    private float toImageX(float viewX) {
+        return (viewX - dx) / scale;
+    }
+
+    private float toImageY(float viewY) {
+        return (viewY - dy) / scale;
+    }
+
     /**
      * Highlights the area specified by the areaId with the green color.
      * Automatically adjusts scale and centers the area on the screen.
@@ -230,7 +1003,8 @@ public class ImageMap extends BigImage implements GestureDetector.OnDoubleTapLis
     public void showAreas(final int[] showAreaIds, final PaintType[] colors) {
         if (!(pathsInitialized && boundsInitialized)) {
             taskAreasIds = showAreaIds;
-            colorsToDraw = colors;
+            taskColors = colors;
+            taskGroupPending = false;
             return;
         }
         postDelayed(new Runnable() {
@@ -240,28 +1014,167 @@ public class ImageMap extends BigImage implements GestureDetector.OnDoubleTapLis
         }, 0);
     }
 
+    /**
+     * Replaces the highlighted areas. If the viewport does not move only the
+     * previously and the newly highlighted areas are redrawn.
+     */
     void showAreasSync(final int[] showAreaIds, final PaintType[] colors) {
-        Path p = new Path();
-        areasToDraw = new int[showAreaIds.length];
-        colorsToDraw = colors;
-        int j = 0;
-        for (int i : showAreaIds) {
-            p.addPath(areaPaths[i]);
-            areasToDraw[j++] = i;
+        taskGroupPending = false;
+        highlights.clearAreas();
+        PaintType paintType = defaultPaintType;
+        int count = showAreaIds.length;
+        for (int k = 0; k < count; k++) {
+            if (colors != null && k < colors.length) {
+                paintType = colors[k];
+            }
+            highlights.get(paintType).add(showAreaIds[k]);
         }
-        p.computeBounds(bounds, false);
+        highlights.removeEmptyStyles();
+        moveToHighlights(mapData.getBounds(showAreaIds, count, bounds));
+    }
 
-        DisplayMetrics outMetrics = new DisplayMetrics();
-        manager.getDefaultDisplay().getMetrics(outMetrics);
+    /**
+     * Highlights every area whose href is dataId, for example all rooms of a
+     * department, and moves the viewport to the group like
+     * {@link #showAreas(int[], PaintType[])} does.
+     *
+     * @param style style of the areas, null for the default one
+     */
+    public void showGroup(final int dataId, PaintType style) {
+        final PaintType paintType = style != null ? style : getDefaultPaintType();
+        if (!(pathsInitialized && boundsInitialized)) {
+            taskAreasIds = null;
+            taskGroupPending = true;
+            taskGroupId = dataId;
+            taskColors = new PaintType[]{paintType};
+            return;
+        }
+        postDelayed(new Runnable() {
+            public void run() {
+                showGroupSync(dataId, paintType);
+            }
+        }, 0);
+    }
+
+    void showGroupSync(int dataId, PaintType style) {
+        taskAreasIds = null;
+        highlights.clearAreas();
+        AreaSet areas = highlights.get(style);
+        groupAreas.clear();
+        mapData.getGroupAreas(dataId, groupAreas);
+        int[] values = groupAreas.values();
+        for (int k = 0; k < groupAreas.size(); k++) {
+            areas.add(values[k]);
+        }
+        highlights.removeEmptyStyles();
+        moveToHighlights(mapData.getGroupBounds(dataId, bounds));
+    }
+
+    /**
+     * Stores the union of the bounds of all areas whose href is dataId into
+     * out, in view coordinates.
+     *
+     * @return false if the map is not loaded or no area has the id
+     */
+    public boolean getGroupBounds(int dataId, RectF out) {
+        MapData mapData = this.mapData;
+        if (mapData == null || !boundsInitialized || !mapData.getGroupBounds(dataId, bounds)) {
+            return false;
+        }
+        out.set(bounds[0] * scale + dx, bounds[1] * scale + dy, bounds[2] * scale + dx, bounds[3] * scale + dy);
+        return true;
+    }
 
-        if (panAndZoomSelection) {
-            float w = bounds.width() + boundPad;
-            float h = bounds.height() + boundPad;
-            scale = Math.min(viewWidth / w, viewHeight / h);
+    private void showPendingAreas() {
+        if (taskGroupPending) {
+            showGroupSync(taskGroupId, taskColors[0]);
+        } else if (taskAreasIds != null) {
+            showAreasSync(taskAreasIds, taskColors);
+        }
+    }
+
+    /**
+     * Fits or centers the viewport on the highlights whose bounds are in
+     * {@link #bounds}, redrawing only the changed areas if it stays put.
+     */
+    private void moveToHighlights(boolean hasBounds) {
+        if (hasBounds) {
+            if (panAndZoomSelection) {
+                ViewportFit.fit(bounds[0], bounds[1], bounds[2], bounds[3], boundPad, viewWidth, viewHeight, fit);
+            } else {
+                ViewportFit.center(bounds[0], bounds[1], bounds[2], bounds[3], scale, viewWidth, viewHeight, fit);
+            }
+            scale = fit[ViewportFit.SCALE];
+            dx = fit[ViewportFit.DX];
+            dy = fit[ViewportFit.DY];
+            if (applyMatrix()) {
+                highlights.copyTo(drawnHighlights);
+                scheduleRedraw();
+                return;
+            }
+        }
+        invalidateHighlights();
+    }
+
+    /**
+     * Removes all highlights, redrawing only the areas that were highlighted.
+     * Unlike {@link #reset()} the viewport is kept.
+     */
+    public void clearAreas() {
+        taskAreasIds = null;
+        taskGroupPending = false;
+        highlights.clear();
+        invalidateHighlights();
+    }
+
+    /**
+     * Returns the highlighted areas. After changing them call
+     * {@link #invalidateHighlights()}, which redraws only the areas whose
+     * highlighting changed. The viewport is not moved.
+     */
+    public Highlights getHighlights() {
+        return highlights;
+    }
+
+    /**
+     * Redraws the areas whose highlighting changed since the last call.
+     */
+    public void invalidateHighlights() {
+        invalidateChanges(highlights, drawnHighlights, mapData);
+    }
+
+    void invalidateLayer(MapLayer layer) {
+        if (layer.isVisible()) {
+            invalidateChanges(layer.getHighlights(), layer.drawnHighlights, layer.getMapData());
+        } else {
+            layer.getHighlights().copyTo(layer.drawnHighlights);
+        }
+    }
+
+    /**
+     * Redraws the areas of mapData whose highlighting differs between
+     * highlights and drawn, then makes drawn a copy of highlights.
+     */
+    private void invalidateChanges(Highlights highlights, Highlights drawn, MapData mapData) {
+        changedAreas.clear();
+        highlights.collectChanges(drawn, changedAreas, scratchAreas);
+        highlights.copyTo(drawn);
+        if (mapData == null) {
+            return;
+        }
+        dirty.setEmpty();
+        for (int i = changedAreas.nextArea(0); i >= 0 && i < mapData.size(); i = changedAreas.nextArea(i + 1)) {
+            addDirtyBounds(mapData, i);
+        }
+        if (dirty.isEmpty()) {
+            return;
+        }
+        // Pending highlights are shown from the loading thread.
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            invalidate(dirty);
+        } else {
+            postInvalidate(dirty.left, dirty.top, dirty.right, dirty.bottom);
         }
-        dx = (-bounds.left - bounds.width() / 2) * scale + viewWidth / 2;
-        dy = (-bounds.top - bounds.height() / 2) * scale + viewHeight / 2;
-        updateMatrix();
     }
 
     public int getDataId(int areaId) {
@@ -272,15 +1185,37 @@ public class ImageMap extends BigImage implements GestureDetector.OnDoubleTapLis
         return getCache().getAreaId(getContext(), mapResource, dataId);
     }
 
-    private ImageMapResourcesCache getCache() {
-        Context applicationContext = getContext().getApplicationContext();
-        if (applicationContext instanceof ImageMapResourcesCache) {
-            return (ImageMapResourcesCache) applicationContext;
+    /**
+     * Returns the application's cache if it provides one, otherwise the cache
+     * shared through {@link MapRegistry} by all views showing the same map.
+     * An application cache implementing only {@link ImageMapResourcesCache}
+     * still provides paths and ids of the shared map until it is edited.
+     */
+    private synchronized ImageMapDataCache getCache() {
+        ImageMapDataCache applicationCache = MapCaches.getApplicationCache(getContext());
+        if (applicationCache != null) {
+            return applicationCache;
         } else {
-            if (simpleResourceCache == null) {
-                simpleResourceCache = new SimpleResourceCache(new XmlMapParser());
+            if (ownsMapCopy) {
+                return simpleResourceCache;
             }
-            return simpleResourceCache;
+            if (simpleResourceCache == null || !mapResource.equals(sharedResource)) {
+                if (sharedCacheHeld) {
+                    MapRegistry.release(sharedResource);
+                    sharedCacheHeld = false;
+                }
+                sharedResource = mapResource;
+                Object edited = ConfigurationRetainer.claim(getEditedMapKey());
+                if (edited != null) {
+                    simpleResourceCache = (SimpleResourceCache) edited;
+                    ownsMapCopy = true;
+                    return simpleResourceCache;
+                }
+                simpleResourceCache = MapRegistry.acquire(mapResource);
+                sharedCacheHeld = true;
+            }
+            sharedCache = MapCaches.forShared(getContext(), simpleResourceCache, sharedCache);
+            return sharedCache;
         }
     }
 
@@ -329,26 +1264,54 @@ public class ImageMap extends BigImage implements GestureDetector.OnDoubleTapLis
 //            if (scale < targetScale) {
 //                scaleTo(x, y, targetScale);
 //            } else {
-        if (areaPaths == null)
+        if (dispatchLayerTap(x, y)) {
             return;
-        int length = areaPaths.length;
-        Region region = this.region;
-        RectF bounds = this.bounds;
-        Path[] areaPaths = this.areaPaths;
-        for (int i = 0; i < length; i++) {
-            Path areaPath = areaPaths[i];
-            areaPath.computeBounds(bounds, false);
-            region.set((int) bounds.left, (int) bounds.top, (int) bounds.right, (int) bounds.bottom);
-            if (region.contains(x, y)) {
-                region.setPath(areaPath, region);
-                if (region.contains(x, y)) {
-                    if (imageMapListener != null) {
-                        imageMapListener.onAreaClicked(i);
-                    }
-//                    return true;
-                }
+        }
+        MapData mapData = this.mapData;
+        if (mapData == null)
+            return;
+        int areaId = mapData.findArea(x, y, hitPolicy, hitTarget);
+        if (areaId < 0)
+            return;
+        if (imageMapListener != null) {
+            imageMapListener.onAreaClicked(areaId);
+        }
+        if (tapListener != null) {
+            tapListener.onAreaTapped(areaId, mapData.getDataId(areaId));
+        }
+    }
+
+    /**
+     * Hit-tests the visible layers that outrank the view's own map.
+     *
+     * @return true if a layer won the tap
+     */
+    private boolean dispatchLayerTap(float x, float y) {
+        MapLayer winner = null;
+        int winnerArea = -1;
+        int winnerPriority = Integer.MIN_VALUE;
+        // Top to bottom, so the upper of two layers with equal priority wins.
+        for (int k = layers.size() - 1; k >= 0; k--) {
+            MapLayer layer = layers.get(k);
+            if (layer.getHitPriority() <= winnerPriority) {
+                continue;
+            }
+            int areaId = layer.findArea(x, y);
+            if (areaId >= 0) {
+                winner = layer;
+                winnerArea = areaId;
+                winnerPriority = layer.getHitPriority();
             }
         }
+        MapData mapData = this.mapData;
+        if (winner == null || winnerPriority < 0 && mapData != null
+                && mapData.findArea(x, y, hitPolicy, hitTarget) >= 0) {
+            return false;
+        }
+        if (layerListener != null) {
+            layerListener.onLayerAreaTapped(winner, winnerArea, winner.getMapData().getDataId(winnerArea));
+        }
+        return true;
     }
 
     public PaintType getDefaultPaintType() {
@@ -356,6 +1319,201 @@ public class ImageMap extends BigImage implements GestureDetector.OnDoubleTapLis
     }
 
 
+    /**
+     * Paths of compact maps come from a small cache of recently drawn areas,
+     * all other maps keep a path per area.
+     */
+    private Path getPath(MapData mapData, int areaIndex) {
+        PathLru pathLru = this.pathLru;
+        return pathLru != null ? pathLru.get(mapData, areaIndex) : AreaPaths.get(areaPaths, mapData, areaIndex);
+    }
+
+    @Override
+    protected boolean hasViewportPrediction() {
+        MapData mapData = this.mapData;
+        return mapData != null && mapData.isLazy() && !mapData.isCompact();
+    }
+
+    /**
+     * Loads the geometry and paths of lazily loaded areas in the viewport the
+     * current gesture is heading to, so they are ready when drawn or tapped.
+     */
+    @Override
+    protected void onPredictViewport(final float left, final float top, final float right, final float bottom) {
+        final MapData mapData = this.mapData;
+        final Path[] paths = this.areaPaths;
+        if (mapData == null || paths == null || !mapData.isLazy() || mapData.isCompact()) {
+            return;
+        }
+        getPrefetchScheduler().submitPredicted(new PrefetchScheduler.Task() {
+            @Override
+            public void run() {
+                IntList visible = new IntList();
+                mapData.findAreasInRect(left, top, right, bottom, visible);
+                final IntList prepared = new IntList(visible.size());
+                final Path[] created = new Path[visible.size()];
+                for (int k = 0; k < visible.size() && !isStale(); k++) {
+                    int i = visible.get(k);
+                    if (paths[i] == null) {
+                        created[prepared.size()] = AreaPaths.toPath(mapData.getArea(i));
+                        prepared.add(i);
+                    }
+                }
+                if (prepared.isEmpty()) {
+                    return;
+                }
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int k = 0; k < prepared.size(); k++) {
+                            int i = prepared.get(k);
+                            if (paths[i] == null) {
+                                paths[i] = created[k];
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void onLongPress(MotionEvent e) {
+        super.onLongPress(e);
+        if (trackingListener != null && selectionMode == SELECTION_MODE_NONE) {
+            trackingTouch = true;
+            trackPointer(e.getX(), e.getY());
+        }
+    }
+
+    @Override
+    public boolean onHoverEvent(MotionEvent event) {
+        if (trackingListener == null) {
+            return super.onHoverEvent(event);
+        }
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_HOVER_ENTER:
+            case MotionEvent.ACTION_HOVER_MOVE:
+                trackPointer(event.getX(), event.getY());
+                break;
+            case MotionEvent.ACTION_HOVER_EXIT:
+                stopTracking();
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Reports the area under the pointer at the given view coordinates if it
+     * changed since the last call.
+     */
+    private void trackPointer(float x, float y) {
+        MapData mapData = this.mapData;
+        if (mapData == null || !boundsInitialized) {
+            return;
+        }
+        if (tracker == null || trackedMap != mapData) {
+            tracker = new AreaTracker(mapData, hitPolicy, hitTarget);
+            trackedMap = mapData;
+        }
+        int areaId = tracker.find(toImageX(x), toImageY(y));
+        if (areaId != trackedArea) {
+            int left = trackedArea;
+            trackedArea = areaId;
+            trackingListener.onAreaUnderPointerChanged(left, areaId);
+        }
+    }
+
+    private void stopTracking() {
+        trackingTouch = false;
+        if (trackedArea != -1 && trackingListener != null) {
+            int left = trackedArea;
+            trackedArea = -1;
+            trackingListener.onAreaUnderPointerChanged(left, -1);
+        }
+    }
+
+    @Override
+    public boolean onTouch(View v, MotionEvent event) {
+        if (trackingTouch) {
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_MOVE:
+                    trackPointer(event.getX(), event.getY());
+                    break;
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                case MotionEvent.ACTION_POINTER_DOWN:
+                    stopTracking();
+                    break;
+            }
+        }
+        if (selectionMode == SELECTION_MODE_NONE
+                || (event.getPointerCount() > 1 && selectionPointCount == 0)) {
+            return super.onTouch(v, event);
+        }
+        trackSelection(event);
+        return true;
+    }
+
+    private void trackSelection(MotionEvent event) {
+        float x = event.getX();
+        float y = event.getY();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                selectionPointCount = 0;
+                addSelectionPoint(x, y);
+                addSelectionPoint(x, y);
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (selectionMode == SELECTION_MODE_RECTANGLE) {
+                    selectionPoints[2] = x;
+                    selectionPoints[3] = y;
+                } else {
+                    float lastX = selectionPoints[selectionPointCount - 2];
+                    float lastY = selectionPoints[selectionPointCount - 1];
+                    if (Math.abs(x - lastX) + Math.abs(y - lastY) >= LASSO_MIN_STEP) {
+                        addSelectionPoint(x, y);
+                    }
+                }
+                invalidate();
+                break;
+            case MotionEvent.ACTION_UP:
+                finishSelection();
+                break;
+            case MotionEvent.ACTION_CANCEL:
+            case MotionEvent.ACTION_POINTER_DOWN:
+                selectionPointCount = 0;
+                invalidate();
+                break;
+        }
+    }
+
+    private void addSelectionPoint(float x, float y) {
+        if (selectionPointCount + 2 > selectionPoints.length) {
+            float[] grown = new float[selectionPoints.length * 2];
+            System.arraycopy(selectionPoints, 0, grown, 0, selectionPointCount);
+            selectionPoints = grown;
+        }
+        selectionPoints[selectionPointCount++] = x;
+        selectionPoints[selectionPointCount++] = y;
+    }
+
+    private void finishSelection() {
+        IntList selected = selectedAreas;
+        selected.clear();
+        float[] p = selectionPoints;
+        if (selectionMode == SELECTION_MODE_RECTANGLE) {
+            findAreasInRect(p[0], p[1], p[2], p[3], selected);
+        } else if (selectionPointCount >= 6) {
+            findAreasInPolygon(p, selectionPointCount, selected);
+        }
+        selectionPointCount = 0;
+        invalidate();
+        if (selectionListener != null) {
+            selectionListener.onAreasSelected(selected);
+        }
+    }
+
     @Override
     public boolean onSingleTapConfirmed(MotionEvent e) {
         clickOnImage(e);
@@ -0,0 +1,22 @@
+package com.android.imagemap;
+
+import android.content.Context;
+
+import com.android.imagemap.core.MapData;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+
+/**
+ * Cache that also hands out the parsed {@link MapData}, which
+ * {@link ImageMap} needs for hit tests, highlights and labels. An
+ * application object implementing it is used instead of the maps shared
+ * through {@link MapRegistry}; applications that only implement
+ * {@link ImageMapResourcesCache} get the shared maps, with paths and ids
+ * still taken from their cache.
+ */
+public interface ImageMapDataCache extends ImageMapResourcesCache {
+
+  MapData getMapData(Context context, MapResource resource) throws IOException, XmlPullParserException;
+}
@@ -0,0 +1,18 @@
+package com.android.imagemap;
+
+/**
+ * Receives taps won by an area of a {@link MapLayer}.
+ */
+public interface ImageMapLayerListener {
+
+  /**
+   * Invoked once per tap when a layer wins it, see
+   * {@link MapLayer#setHitPriority(int)}. Taps won by the view's own map go
+   * to the {@link ImageMapTapListener} instead.
+   *
+   * @param layer  layer of the area
+   * @param areaId index of the area within the layer
+   * @param dataId href of the area
+   */
+  void onLayerAreaTapped(MapLayer layer, int areaId, int dataId);
+}
@@ -0,0 +1,18 @@
+package com.android.imagemap;
+
+import com.android.imagemap.core.IntList;
+
+/**
+ * Receives the result of rectangle and lasso selections made on an
+ * {@link ImageMap}.
+ */
+public interface ImageMapSelectionListener {
+
+  /**
+   * Invoked when a drag selection has been completed.
+   *
+   * @param areaIds indices of all areas intersecting the selection. The list
+   *                is reused by the view and is only valid during this call.
+   */
+  void onAreasSelected(IntList areaIds);
+}
@@ -0,0 +1,16 @@
+package com.android.imagemap;
+
+/**
+ * Receives the single area that won a tap on an {@link ImageMap}.
+ */
+public interface ImageMapTapListener {
+
+  /**
+   * Invoked once per tap for the winning area, see
+   * {@link ImageMap#setHitPolicy(com.android.imagemap.core.HitPolicy)}.
+   *
+   * @param areaId index of the area
+   * @param dataId href of the area, same as {@link ImageMap#getDataId(int)}
+   */
+  void onAreaTapped(int areaId, int dataId);
+}
@@ -0,0 +1,18 @@
+package com.android.imagemap;
+
+/**
+ * Receives the area under a moving pointer of an {@link ImageMap}: a hovering
+ * mouse or stylus, or a finger dragged after a long press.
+ */
+public interface ImageMapTrackingListener {
+
+  /**
+   * Invoked when the pointer leaves an area, enters one, or both at once.
+   *
+   * @param leftAreaId    index of the area the pointer left, -1 if it was over
+   *                      no area
+   * @param enteredAreaId index of the area now under the pointer, -1 if the
+   *                      pointer left the map or was lifted
+   */
+  void onAreaUnderPointerChanged(int leftAreaId, int enteredAreaId);
+}
@@ -0,0 +1,174 @@
+package com.android.imagemap;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import com.android.imagemap.core.IntList;
+import com.android.imagemap.core.Labels;
+
+/**
+ * Draws area labels on top of the map. Which labels are shown depends on the
+ * zoom only: a label is placed if it fits into its area and does not overlap
+ * a label placed before it. Placement runs once per zoom step, panning only
+ * culls the placed labels against the viewport.
+ */
+class LabelLayer {
+
+    /**
+     * Zoom steps between placements, four per doubling of the scale.
+     */
+    private static final double STEPS_PER_OCTAVE = 4;
+    private static final int MAX_GRID_SIDE = 256;
+
+    private final Labels labels;
+    private final Paint paint;
+    private final float[] widths;
+    private final IntList placed = new IntList();
+    private final Paint.FontMetrics metrics = new Paint.FontMetrics();
+    private float measuredTextSize;
+    private float baseline;
+    private float halfHeight;
+    private int placedStep = Integer.MIN_VALUE;
+    private boolean fitToArea = true;
+    private IntList[] grid;
+
+    LabelLayer(Labels labels, Paint paint) {
+        this.labels = labels;
+        this.paint = paint;
+        widths = new float[labels.size()];
+    }
+
+    void setFitToArea(boolean fitToArea) {
+        this.fitToArea = fitToArea;
+        placedStep = Integer.MIN_VALUE;
+    }
+
+    void draw(Canvas canvas, float scale, float dx, float dy, float viewWidth, float viewHeight) {
+        if (labels.size() == 0 || scale <= 0) {
+            return;
+        }
+        measure();
+        int step = (int) Math.floor(Math.log(scale) / Math.log(2) * STEPS_PER_OCTAVE);
+        if (step != placedStep) {
+            place((float) Math.pow(2, step / STEPS_PER_OCTAVE));
+            placedStep = step;
+        }
+        float baseline = this.baseline;
+        float halfHeight = this.halfHeight;
+        int[] values = placed.values();
+        for (int k = 0; k < placed.size(); k++) {
+            int label = values[k];
+            float x = labels.getX(label) * scale + dx;
+            float y = labels.getY(label) * scale + dy;
+            float halfWidth = widths[label] / 2;
+            if (x + halfWidth < 0 || x - halfWidth > viewWidth
+                    || y + halfHeight < 0 || y - halfHeight > viewHeight) {
+                continue;
+            }
+            canvas.drawText(labels.getText(label), x, y + baseline, paint);
+        }
+    }
+
+    /**
+     * Measures all texts and the line height once for the current text size.
+     */
+    private void measure() {
+        float textSize = paint.getTextSize();
+        if (textSize == measuredTextSize) {
+            return;
+        }
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = paint.measureText(labels.getText(i));
+        }
+        paint.getFontMetrics(metrics);
+        baseline = -(metrics.ascent + metrics.descent) / 2;
+        halfHeight = (metrics.descent - metrics.ascent) / 2;
+        measuredTextSize = textSize;
+        placedStep = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Greedy placement in label order. Accepted labels are bucketed into a
+     * grid of cells at least as large as the widest label, so every label is
+     * only compared against labels in the cells it covers.
+     */
+    private void place(float scale) {
+        placed.clear();
+        float height = halfHeight * 2 / scale;
+        float maxWidth = 0;
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < widths.length; i++) {
+            maxWidth = Math.max(maxWidth, widths[i]);
+            minX = Math.min(minX, labels.getX(i));
+            minY = Math.min(minY, labels.getY(i));
+            maxX = Math.max(maxX, labels.getX(i));
+            maxY = Math.max(maxY, labels.getY(i));
+        }
+        float cellSize = Math.max(maxWidth / scale, height);
+        cellSize = Math.max(cellSize, Math.max(maxX - minX, maxY - minY) / MAX_GRID_SIDE);
+        int columns = (int) ((maxX - minX) / cellSize) + 1;
+        int rows = (int) ((maxY - minY) / cellSize) + 1;
+        if (grid == null || grid.length < columns * rows) {
+            grid = new IntList[columns * rows];
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            if (grid[c] == null) {
+                grid[c] = new IntList();
+            } else {
+                grid[c].clear();
+            }
+        }
+
+        for (int label = 0; label < widths.length; label++) {
+            float halfWidth = widths[label] / scale / 2;
+            // Rooms are often elongated, so a label may be as wide as twice
+            // the diameter of the largest circle fitting around its anchor.
+            if (fitToArea && halfWidth > labels.getRadius(label) * 2) {
+                continue;
+            }
+            float x = labels.getX(label);
+            float y = labels.getY(label);
+            int c0 = (int) ((x - halfWidth - minX) / cellSize);
+            int c1 = (int) ((x + halfWidth - minX) / cellSize);
+            int r0 = (int) ((y - height / 2 - minY) / cellSize);
+            int r1 = (int) ((y + height / 2 - minY) / cellSize);
+            c0 = Math.max(c0, 0);
+            r0 = Math.max(r0, 0);
+            c1 = Math.min(c1, columns - 1);
+            r1 = Math.min(r1, rows - 1);
+            if (overlaps(label, scale, height, c0, r0, c1, r1, columns)) {
+                continue;
+            }
+            placed.add(label);
+            for (int row = r0; row <= r1; row++) {
+                for (int column = c0; column <= c1; column++) {
+                    grid[row * columns + column].add(label);
+                }
+            }
+        }
+    }
+
+    private boolean overlaps(int label, float scale, float height, int c0, int r0, int c1, int r1,
+                             int columns) {
+        float x = labels.getX(label);
+        float y = labels.getY(label);
+        float width = widths[label] / scale;
+        for (int row = r0; row <= r1; row++) {
+            for (int column = c0; column <= c1; column++) {
+                IntList cell = grid[row * columns + column];
+                int[] values = cell.values();
+                for (int k = 0; k < cell.size(); k++) {
+                    int other = values[k];
+                    if (Math.abs(labels.getX(other) - x) * 2 < width + widths[other] / scale
+                            && Math.abs(labels.getY(other) - y) < height) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
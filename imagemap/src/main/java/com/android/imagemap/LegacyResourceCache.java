@@ -0,0 +1,101 @@
+package com.android.imagemap;
+
+import android.content.Context;
+import android.graphics.Path;
+
+import com.android.imagemap.core.MapData;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Adapts an application that only implements the legacy
+ * {@link ImageMapResourcesCache}. Paths and ids still come from the
+ * application's cache, while the {@link MapData} needed for hit tests,
+ * highlights and labels is the one shared through {@link MapRegistry}.
+ * The legacy cache indexes areas in document order, {@link MapData} sorts
+ * them by id, so indices are translated with {@link MapData#getOrder(int)}.
+ */
+class LegacyResourceCache implements ImageMapDataCache {
+
+    private final ImageMapResourcesCache legacy;
+    private final SimpleResourceCache shared;
+    private Path[] legacyPaths;
+    private Path[] paths;
+
+    LegacyResourceCache(ImageMapResourcesCache legacy, SimpleResourceCache shared) {
+        this.legacy = legacy;
+        this.shared = shared;
+    }
+
+    /**
+     * @return true if this adapter serves the geometry of the given cache
+     */
+    boolean wraps(ImageMapResourcesCache legacy, SimpleResourceCache shared) {
+        return this.legacy == legacy && this.shared == shared;
+    }
+
+    /**
+     * Returns the application's paths reordered to area indices. Areas the
+     * application's cache has no path for are created from the map when
+     * drawn.
+     */
+    @Override
+    public synchronized Path[] getAreaPaths(Context context, MapResource resource)
+            throws IOException, XmlPullParserException {
+        Path[] source = legacy.getAreaPaths(context, resource);
+        MapData mapData = shared.getMapData(context, resource);
+        if (source != legacyPaths || paths == null) {
+            Path[] ordered = new Path[mapData.size()];
+            for (int i = 0; i < ordered.length; i++) {
+                int order = mapData.getOrder(i);
+                if (source != null && order >= 0 && order < source.length) {
+                    ordered[i] = source[order];
+                }
+            }
+            legacyPaths = source;
+            paths = ordered;
+        }
+        return paths;
+    }
+
+    @Override
+    public MapData getMapData(Context context, MapResource resource)
+            throws IOException, XmlPullParserException {
+        return shared.getMapData(context, resource);
+    }
+
+    @Override
+    public int getDataId(Context context, MapResource resource, Integer pathIndex) {
+        return legacy.getDataId(context, resource, requireMapData(context, resource).getOrder(pathIndex));
+    }
+
+    @Override
+    public int getAreaId(Context context, MapResource resource, Integer dataId, Integer target) {
+        return toAreaIndex(context, resource, legacy.getAreaId(context, resource, dataId, target));
+    }
+
+    @Override
+    public int getAreaId(Context context, MapResource resource, Integer dataId) {
+        return toAreaIndex(context, resource, legacy.getAreaId(context, resource, dataId));
+    }
+
+    @Override
+    public ArrayList<Integer> getAreaGroups(Context context, MapResource resource, Integer dataId) {
+        return legacy.getAreaGroups(context, resource, dataId);
+    }
+
+    private int toAreaIndex(Context context, MapResource resource, int order) {
+        return order < 0 ? -1 : requireMapData(context, resource).getAreaIndexForOrder(order);
+    }
+
+    private MapData requireMapData(Context context, MapResource resource) {
+        try {
+            return shared.getMapData(context, resource);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to init image map areas", e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.android.imagemap;
+
+import android.content.Context;
+
+/**
+ * Chooses where views and layers take their maps from: the application's
+ * {@link ImageMapDataCache} if it implements one, otherwise the maps shared
+ * through {@link MapRegistry}, served through a {@link LegacyResourceCache}
+ * if the application implements only {@link ImageMapResourcesCache}.
+ */
+final class MapCaches {
+
+    private MapCaches() {
+    }
+
+    /**
+     * @return the application's cache, null if maps are shared through
+     * {@link MapRegistry}
+     */
+    static ImageMapDataCache getApplicationCache(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        return applicationContext instanceof ImageMapDataCache ? (ImageMapDataCache) applicationContext : null;
+    }
+
+    /**
+     * Returns the cache to read a map acquired from {@link MapRegistry}
+     * through: the shared cache itself, or an adapter for a legacy
+     * application cache.
+     *
+     * @param previous returned again if it already serves shared, may be null
+     */
+    static ImageMapDataCache forShared(Context context, SimpleResourceCache shared, ImageMapDataCache previous) {
+        Context applicationContext = context.getApplicationContext();
+        if (!(applicationContext instanceof ImageMapResourcesCache)) {
+            return shared;
+        }
+        ImageMapResourcesCache legacy = (ImageMapResourcesCache) applicationContext;
+        if (previous instanceof LegacyResourceCache && ((LegacyResourceCache) previous).wraps(legacy, shared)) {
+            return previous;
+        }
+        return new LegacyResourceCache(legacy, shared);
+    }
+}
@@ -0,0 +1,222 @@
+package com.android.imagemap;
+
+import android.content.Context;
+import android.graphics.Path;
+
+import com.android.imagemap.core.HitPolicy;
+import com.android.imagemap.core.MapData;
+
+/**
+ * An additional map drawn over the image of an {@link ImageMap}, for example
+ * desks or Wi-Fi zones over the rooms of a floor. Every layer has its own
+ * areas and spatial index, highlights, visibility, drawing order and tap
+ * priority, while the image and the zoom are shared with the view. Hidden
+ * layers are neither drawn nor hit-tested.
+ * <p>
+ * Layers are created with {@link ImageMap#addLayer(MapResource)} and loaded
+ * in the background. Must be used on the UI thread.
+ */
+public class MapLayer {
+
+    private final ImageMap owner;
+    private final MapResource resource;
+    private final Highlights highlights = new Highlights();
+    final Highlights drawnHighlights = new Highlights();
+    private volatile MapData mapData;
+    private volatile Path[] paths;
+    private volatile PathLru pathLru;
+    private SimpleResourceCache sharedCache;
+    private boolean cacheHeld;
+    private boolean removed;
+    private boolean visible = true;
+    private int zOrder;
+    private int hitPriority;
+    private HitPolicy hitPolicy = HitPolicy.TOPMOST;
+    private int hitTarget = -1;
+    private PaintType defaultStyle;
+
+    MapLayer(ImageMap owner, MapResource resource, PaintType defaultStyle) {
+        this.owner = owner;
+        this.resource = resource;
+        this.defaultStyle = defaultStyle;
+    }
+
+    public MapResource getResource() {
+        return resource;
+    }
+
+    /**
+     * @return the areas of the layer, null until it is loaded
+     */
+    public MapData getMapData() {
+        return mapData;
+    }
+
+    public boolean isLoaded() {
+        return mapData != null;
+    }
+
+    /**
+     * Returns the highlighted areas of the layer, see
+     * {@link ImageMap#getHighlights()}. After changing them call
+     * {@link #invalidateHighlights()}.
+     */
+    public Highlights getHighlights() {
+        return highlights;
+    }
+
+    /**
+     * Redraws the areas of the layer whose highlighting changed since the
+     * last call.
+     */
+    public void invalidateHighlights() {
+        owner.invalidateLayer(this);
+    }
+
+    /**
+     * Highlights the area with the default style of the layer only.
+     */
+    public void showArea(int areaId) {
+        highlights.show(areaId, defaultStyle);
+        invalidateHighlights();
+    }
+
+    public PaintType getDefaultStyle() {
+        return defaultStyle;
+    }
+
+    public void setDefaultStyle(PaintType defaultStyle) {
+        this.defaultStyle = defaultStyle;
+    }
+
+    public void setVisible(boolean visible) {
+        if (this.visible != visible) {
+            this.visible = visible;
+            owner.invalidate();
+        }
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    /**
+     * Layers are drawn over the highlights of the view's own map in
+     * ascending z-order, layers with the same z-order in the order they were
+     * added.
+     */
+    public void setZOrder(int zOrder) {
+        if (this.zOrder != zOrder) {
+            this.zOrder = zOrder;
+            owner.onLayerOrderChanged();
+        }
+    }
+
+    public int getZOrder() {
+        return zOrder;
+    }
+
+    /**
+     * Taps go to the visible layer with the highest priority that has an area
+     * under the finger. The view's own map has priority 0 and loses ties
+     * against layers; among layers of equal priority the one drawn on top
+     * wins.
+     */
+    public void setHitPriority(int hitPriority) {
+        if (this.hitPriority != hitPriority) {
+            this.hitPriority = hitPriority;
+            owner.onLayerOrderChanged();
+        }
+    }
+
+    public int getHitPriority() {
+        return hitPriority;
+    }
+
+    /**
+     * Chooses which area of this layer wins a tap when several contain the
+     * point, see {@link ImageMap#setHitPolicy(HitPolicy)}.
+     */
+    public void setHitPolicy(HitPolicy hitPolicy) {
+        this.hitPolicy = hitPolicy;
+    }
+
+    public HitPolicy getHitPolicy() {
+        return hitPolicy;
+    }
+
+    /**
+     * @param hitTarget target attribute to accept, -1 accepts every area
+     */
+    public void setHitTarget(int hitTarget) {
+        this.hitTarget = hitTarget;
+    }
+
+    public int getHitTarget() {
+        return hitTarget;
+    }
+
+    /**
+     * @return the area at the point given in image coordinates, -1 if there
+     * is none or the layer is hidden or not loaded yet
+     */
+    public int findArea(float x, float y) {
+        MapData mapData = this.mapData;
+        if (!visible || mapData == null) {
+            return -1;
+        }
+        return mapData.findArea(x, y, hitPolicy, hitTarget);
+    }
+
+    Path getPath(MapData mapData, int areaIndex) {
+        PathLru pathLru = this.pathLru;
+        return pathLru != null ? pathLru.get(mapData, areaIndex) : AreaPaths.get(paths, mapData, areaIndex);
+    }
+
+    /**
+     * Parses the map, or picks up the copy shared through
+     * {@link MapRegistry}, from the same cache the view would use, see
+     * {@link MapCaches}. Runs in the background.
+     */
+    void load(Context context, int compactPathCacheSize) throws Exception {
+        ImageMapDataCache cache;
+        synchronized (this) {
+            if (removed) {
+                return;
+            }
+            cache = MapCaches.getApplicationCache(context);
+            if (cache == null) {
+                sharedCache = MapRegistry.acquire(resource);
+                cacheHeld = true;
+                cache = MapCaches.forShared(context, sharedCache, null);
+            }
+        }
+        Path[] areaPaths = cache.getAreaPaths(context, resource);
+        MapData data = cache.getMapData(context, resource);
+        pathLru = data.isCompact() ? new PathLru(compactPathCacheSize) : null;
+        paths = areaPaths;
+        mapData = data;
+    }
+
+    /**
+     * Lets go of the shared map while the view is detached or after the
+     * layer was removed.
+     */
+    synchronized void release(boolean changingConfigurations, boolean remove) {
+        removed |= remove;
+        if (cacheHeld) {
+            MapRegistry.release(resource, changingConfigurations);
+            cacheHeld = false;
+        }
+    }
+
+    /**
+     * Takes the shared map back when the view is attached again.
+     */
+    synchronized void reacquire() {
+        if (!removed && !cacheHeld && sharedCache != null) {
+            sharedCache = MapRegistry.acquire(resource, sharedCache);
+            cacheHeld = true;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.android.imagemap;
+
+import android.content.Context;
+
+import com.android.bigimage.ConfigurationRetainer;
+import com.android.imagemap.core.AreaParser;
+
+import java.util.HashMap;
+
+/**
+ * Process wide, reference counted store of parsed maps. Views showing the same
+ * {@link MapResource} share one {@link SimpleResourceCache}, so the map is
+ * parsed and indexed once no matter how many views display it. The cache is
+ * dropped when the last view releases it, unless it is released for a
+ * configuration change, in which case it is handed to the view that replaces
+ * the released one through {@link ConfigurationRetainer}.
+ */
+public final class MapRegistry {
+
+    private static final HashMap<MapResource, Entry> ENTRIES = new HashMap<>();
+
+    private static final class Entry {
+        final SimpleResourceCache cache;
+        int references;
+        /**
+         * One of the references is held by {@link #preload}, the first view
+         * to acquire the map takes it over.
+         */
+        boolean preloaded;
+
+        Entry(SimpleResourceCache cache) {
+            this.cache = cache;
+        }
+    }
+
+    private MapRegistry() {
+    }
+
+    /**
+     * Returns the shared cache of the map, creating it if no one holds it yet.
+     * Every call must be balanced by {@link #release(MapResource)}.
+     */
+    public static SimpleResourceCache acquire(MapResource resource) {
+        return acquire(resource, null);
+    }
+
+    /**
+     * Same as {@link #acquire(MapResource)}, but registers the given cache if
+     * the map is not held by anyone, so a view coming back to the screen can
+     * keep geometry it already loaded.
+     */
+    static synchronized SimpleResourceCache acquire(MapResource resource, SimpleResourceCache existing) {
+        Entry entry = ENTRIES.get(resource);
+        if (entry == null) {
+            SimpleResourceCache cache = existing;
+            if (cache == null) {
+                cache = (SimpleResourceCache) ConfigurationRetainer.claim(resource);
+            }
+            entry = new Entry(cache != null ? cache : new SimpleResourceCache(new AreaParser()));
+            ENTRIES.put(resource, entry);
+        }
+        if (entry.preloaded) {
+            entry.preloaded = false;
+        } else {
+            entry.references++;
+        }
+        return entry.cache;
+    }
+
+    /**
+     * Starts parsing the map in the background unless someone holds it
+     * already. The parsed map is kept until the first view showing it is
+     * detached; a view created while the map is still parsed waits for it.
+     */
+    public static void preload(Context context, final MapResource resource) {
+        final Context applicationContext = context.getApplicationContext();
+        final SimpleResourceCache cache;
+        synchronized (MapRegistry.class) {
+            if (ENTRIES.containsKey(resource)) {
+                return;
+            }
+            cache = acquire(resource, null);
+            ENTRIES.get(resource).preloaded = true;
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cache.init(applicationContext, resource);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * Releases a reference obtained from {@link #acquire(MapResource)}.
+     */
+    public static void release(MapResource resource) {
+        release(resource, false);
+    }
+
+    /**
+     * Same as {@link #release(MapResource)}, but if this was the last
+     * reference and retain is true the cache is kept for the next
+     * {@link #acquire(MapResource)} for a few seconds.
+     */
+    static synchronized void release(MapResource resource, boolean retain) {
+        Entry entry = ENTRIES.get(resource);
+        if (entry != null && --entry.references <= 0) {
+            ENTRIES.remove(resource);
+            if (retain) {
+                ConfigurationRetainer.retain(resource, entry.cache);
+            }
+        }
+    }
+
+    /**
+     * @return true if at least one view holds the map
+     */
+    public static synchronized boolean isShared(MapResource resource) {
+        return ENTRIES.containsKey(resource);
+    }
+}
@@ -3,6 +3,11 @@ package com.android.imagemap;
 import android.content.Context;
 import android.view.View;
 
+import com.android.imagemap.core.AreaParser;
+import com.android.imagemap.core.ByteBufferInputStream;
+import com.android.imagemap.core.CompiledMap;
+import com.android.imagemap.core.MapData;
+
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -10,7 +15,10 @@ import org.xmlpull.v1.XmlPullParserFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.StringReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Created by Android on 22-10-2018.
@@ -18,19 +26,24 @@ import java.io.StringReader;
 
 public class MapResource {
 
+    private static XmlPullParserFactory parserFactory;
+
     private ResourceType resourceType = null;
     private int resourceId = View.NO_ID;
     private String url = "";
     private String rawString = "";
+    private final boolean compactGeometry;
 
 
     public MapResource(int resourceId) {
         this.resourceType = ResourceType.INTERNAL_RESOURCE;
         this.resourceId = resourceId;
+        compactGeometry = false;
     }
 
     public MapResource(ResourceType resourceType, String resValue) {
         this.resourceType = resourceType;
+        compactGeometry = false;
         if (resourceType == ResourceType.LOCAL_FILE)
             this.url = resValue;
         else if (resourceType == ResourceType.RAW_STRING)
@@ -40,9 +53,56 @@ public class MapResource {
     public MapResource(String rawString) {
         resourceType = ResourceType.RAW_STRING;
         this.rawString = rawString;
+        compactGeometry = false;
+    }
+
+    private MapResource(MapResource source, boolean compactGeometry) {
+        resourceType = source.resourceType;
+        resourceId = source.resourceId;
+        url = source.url;
+        rawString = source.rawString;
+        this.compactGeometry = compactGeometry;
     }
 
 
+    /**
+     * Keeps the geometry of parsed maps packed instead of holding an area
+     * object and a path per area, see {@link MapData#compact()}. Meant for
+     * maps with tens of thousands of areas; compact maps cannot be edited.
+     * Resources are keys of the maps shared between views, so the flag is
+     * part of their identity and cannot be changed afterwards.
+     *
+     * @return a resource for the same map with the given flag
+     */
+    public MapResource withCompactGeometry(boolean compactGeometry) {
+        return compactGeometry == this.compactGeometry ? this : new MapResource(this, compactGeometry);
+    }
+
+    public boolean isCompactGeometry() {
+        return compactGeometry;
+    }
+
+    /**
+     * Loads the map. Local files are memory mapped; if such a file holds a
+     * {@link CompiledMap} only its index is read and areas are loaded lazily,
+     * otherwise the xml is parsed straight from the mapping.
+     */
+    MapData loadMapData(Context context, AreaParser areaParser)
+            throws XmlPullParserException, IOException {
+        if (resourceType == ResourceType.LOCAL_FILE) {
+            MappedByteBuffer buffer = mapFile();
+            if (CompiledMap.isCompiledMap(buffer)) {
+                return CompiledMap.read(buffer);
+            }
+            return compact(new MapData(areaParser.parseAreas(newParser(buffer))));
+        }
+        return compact(new MapData(areaParser.parseAreas(getParser(context))));
+    }
+
+    private MapData compact(MapData data) {
+        return compactGeometry ? data.compact() : data;
+    }
+
     XmlPullParser getParser(Context context) throws XmlPullParserException, FileNotFoundException {
         switch (resourceType) {
             case INTERNAL_RESOURCE:
@@ -50,21 +110,75 @@ public class MapResource {
                     throw new IllegalStateException("please supply valid resource for map");
                 return context.getResources().getXml(resourceId);
             case LOCAL_FILE:
-                if (url == null || url.trim().isEmpty())
-                    throw new IllegalStateException("please supply valid resource for map");
-                File file = new File(url);
-                XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-                XmlPullParser xpp = factory.newPullParser();
-                xpp.setInput(new FileInputStream(file), "UTF-8");
-                return xpp;
+                try {
+                    return newParser(mapFile());
+                } catch (FileNotFoundException e) {
+                    throw e;
+                } catch (IOException e) {
+                    throw new XmlPullParserException("Failed to read map file " + url, null, e);
+                }
             case RAW_STRING:
                 if (rawString == null || rawString.trim().isEmpty())
                     throw new IllegalStateException("please supply valid resource for map");
-                factory = XmlPullParserFactory.newInstance();
-                xpp = factory.newPullParser();
+                XmlPullParser xpp = getParserFactory().newPullParser();
                 xpp.setInput(new StringReader(rawString));
                 return xpp;
         }
         return null;
     }
+
+    /**
+     * Maps the local file read-only. The mapping stays valid after the
+     * channel is closed, so no file handle outlives this call.
+     */
+    private MappedByteBuffer mapFile() throws IOException {
+        if (url == null || url.trim().isEmpty())
+            throw new IllegalStateException("please supply valid resource for map");
+        FileInputStream stream = new FileInputStream(new File(url));
+        try {
+            FileChannel channel = stream.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static XmlPullParser newParser(MappedByteBuffer buffer) throws XmlPullParserException {
+        XmlPullParser xpp = getParserFactory().newPullParser();
+        xpp.setInput(new ByteBufferInputStream(buffer), "UTF-8");
+        return xpp;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MapResource)) {
+            return false;
+        }
+        MapResource that = (MapResource) o;
+        return resourceType == that.resourceType
+                && resourceId == that.resourceId
+                && compactGeometry == that.compactGeometry
+                && (url == null ? that.url == null : url.equals(that.url))
+                && (rawString == null ? that.rawString == null : rawString.equals(that.rawString));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = resourceType != null ? resourceType.hashCode() : 0;
+        result = 31 * result + resourceId;
+        result = 31 * result + (compactGeometry ? 1 : 0);
+        result = 31 * result + (url != null ? url.hashCode() : 0);
+        result = 31 * result + (rawString != null ? rawString.hashCode() : 0);
+        return result;
+    }
+
+    private static synchronized XmlPullParserFactory getParserFactory() throws XmlPullParserException {
+        if (parserFactory == null) {
+            parserFactory = XmlPullParserFactory.newInstance();
+        }
+        return parserFactory;
+    }
 }
@@ -0,0 +1,90 @@
+package com.android.imagemap;
+
+import android.graphics.Path;
+
+import com.android.imagemap.core.Area;
+import com.android.imagemap.core.IntIntMap;
+import com.android.imagemap.core.MapData;
+
+/**
+ * Keeps the paths of the most recently drawn areas of a compact map, see
+ * {@link MapData#compact()}. Entries live in fixed slots linked into a list
+ * from most to least recently used; a miss reuses the slot at the tail and
+ * rewinds its path instead of allocating a new one.
+ */
+class PathLru {
+
+    private final IntIntMap slotByArea;
+    private final int[] areas;
+    private final Path[] paths;
+    private final int[] previous;
+    private final int[] next;
+    private final Area scratch = new Area();
+    private int head = -1;
+    private int tail = -1;
+    private int size;
+
+    PathLru(int capacity) {
+        slotByArea = new IntIntMap(capacity);
+        areas = new int[capacity];
+        paths = new Path[capacity];
+        previous = new int[capacity];
+        next = new int[capacity];
+    }
+
+    /**
+     * Returns the path of the area, decoding it on a miss. The path stays
+     * valid until capacity other areas were requested.
+     */
+    Path get(MapData mapData, int areaIndex) {
+        int slot = slotByArea.get(areaIndex, -1);
+        if (slot >= 0) {
+            if (slot != head) {
+                unlink(slot);
+                pushFront(slot);
+            }
+            return paths[slot];
+        }
+        if (size < areas.length) {
+            slot = size++;
+            paths[slot] = new Path();
+        } else {
+            slot = tail;
+            unlink(slot);
+            slotByArea.remove(areas[slot], -1);
+            paths[slot].rewind();
+        }
+        AreaPaths.addArea(paths[slot], mapData.getArea(areaIndex, scratch));
+        areas[slot] = areaIndex;
+        slotByArea.put(areaIndex, slot);
+        pushFront(slot);
+        return paths[slot];
+    }
+
+    private void unlink(int slot) {
+        int p = previous[slot];
+        int n = next[slot];
+        if (p >= 0) {
+            next[p] = n;
+        } else {
+            head = n;
+        }
+        if (n >= 0) {
+            previous[n] = p;
+        } else {
+            tail = p;
+        }
+    }
+
+    private void pushFront(int slot) {
+        previous[slot] = -1;
+        next[slot] = head;
+        if (head >= 0) {
+            previous[head] = slot;
+        }
+        head = slot;
+        if (tail < 0) {
+            tail = slot;
+        }
+    }
+}
@@ -17,7 +17,9 @@ package com.android.imagemap;
 
 import android.content.Context;
 import android.graphics.Path;
-import android.util.SparseArray;
+
+import com.android.imagemap.core.AreaParser;
+import com.android.imagemap.core.MapData;
 
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -25,91 +27,101 @@ import java.io.IOException;
 import java.util.ArrayList;
 
 /**
- * TODO
+ * Keeps the parsed {@link MapData} of a single map together with the
+ * {@link Path} objects used for drawing its areas. Paths of lazily loaded maps
+ * are null until {@link AreaPaths#get(Path[], MapData, int)} creates them.
+ * Instances handed out by {@link MapRegistry} are shared between views and
+ * never edited; a view that edits its map keeps a private instance created
+ * from a copy, see {@link MapData#copy()}.
  *
  * @author aectann@gmail.com (Konstantin Burov)
  */
-public class SimpleResourceCache implements ImageMapResourcesCache {
+public class SimpleResourceCache implements ImageMapDataCache {
 
-    private Object dataIds;
-    private Object paths;
-    private MapParser mapParser;
-    private SparseArray<ArrayList<Integer>> areaGroups;
+    private MapData mapData;
+    private volatile Path[] paths;
+    private AreaParser areaParser;
 
-    SimpleResourceCache(MapParser mapParser) {
-        dataIds = null;
+    SimpleResourceCache(AreaParser areaParser) {
+        mapData = null;
         paths = null;
-        areaGroups = null;
-        this.mapParser = mapParser;
+        this.areaParser = areaParser;
+    }
+
+    /**
+     * Creates a cache holding an already loaded map.
+     */
+    SimpleResourceCache(MapData mapData, Path[] paths) {
+        this.mapData = mapData;
+        this.paths = paths;
     }
 
     @Override
     public synchronized Path[] getAreaPaths(Context context, MapResource mapResource) throws IOException, XmlPullParserException {
-        if (dataIds != null) {
-            return (Path[]) paths;
+        if (mapData != null) {
+            return paths;
         }
 
         init(context, mapResource);
 
         notify();
-        return (Path[]) paths;
+        return paths;
+    }
+
+    @Override
+    public synchronized MapData getMapData(Context context, MapResource mapResource) throws IOException, XmlPullParserException {
+        init(context, mapResource);
+        return mapData;
     }
 
     public synchronized void init(Context context, MapResource mapResource)
             throws XmlPullParserException, IOException {
-        if (dataIds == null) {
-            ArrayList<MapParser.Area> areas = mapParser.parseAreas(context, mapResource);
-            int size = areas.size();
-            int[][] areaIds = new int[size][2];
+        if (mapData == null) {
+            MapData data = mapResource.loadMapData(context, areaParser);
+            int size = data.size();
             Path[] areaPaths = new Path[size];
-            SparseArray<ArrayList<Integer>> groupsByData = new SparseArray<ArrayList<Integer>>();
-            int i = 0;
-            for (MapParser.Area a : areas) {
-                areaIds[i][0] = a.id;
-                areaIds[i][1] = a.target;
-                areaPaths[i] = a.path;
-                if (groupsByData.indexOfKey(a.id) < 0) {
-                    groupsByData.put(a.id, new ArrayList<Integer>());
+            // Lazy maps keep their paths unset until an area is drawn.
+            if (!data.isLazy()) {
+                for (int i = 0; i < size; i++) {
+                    areaPaths[i] = AreaPaths.toPath(data.getArea(i));
                 }
-                groupsByData.get(a.id).add(a.target);
-                i++;
             }
-            dataIds = areaIds;
             paths = areaPaths;
-            areaGroups = groupsByData;
+            mapData = data;
         }
     }
 
-    @Override
-    public int getDataId(Context context, MapResource resource, Integer pathIndex) {
-        if (dataIds == null) {
+    /**
+     * Drops the path of an area after the {@link MapData} was edited.
+     *
+     * @return the path array to draw with from now on
+     */
+    synchronized Path[] invalidatePath(int areaIndex) {
+        paths = AreaPaths.invalidate(paths, areaIndex);
+        return paths;
+    }
+
+    private MapData requireMapData(Context context, MapResource mapResource) {
+        if (mapData == null) {
             try {
-                init(context, resource);
+                init(context, mapResource);
             } catch (Exception e) {
                 throw new IllegalStateException("Failed to init image map areas", e);
             }
         }
-        return ((int[][]) dataIds)[pathIndex][0];
+        return mapData;
+    }
+
+    @Override
+    public int getDataId(Context context, MapResource resource, Integer pathIndex) {
+        return requireMapData(context, resource).getDataId(pathIndex);
     }
 
 
     @Override
     public int getAreaId(Context context, MapResource mapResource, Integer dataId,
                          Integer target) {
-        if (dataIds == null) {
-            try {
-                init(context, mapResource);
-            } catch (Exception e) {
-                throw new IllegalStateException("Failed to init image map areas", e);
-            }
-        }
-        int[][] ids = (int[][]) this.dataIds;
-        for (int i = 0; i < ids.length; i++) {
-            if (dataId == ids[i][0] && (target == -1 || target == ids[i][1])) {
-                return i;
-            }
-        }
-        return -1;
+        return requireMapData(context, mapResource).getAreaId(dataId, target);
     }
 
     @Override
@@ -119,13 +131,14 @@ public class SimpleResourceCache implements ImageMapResourcesCache {
 
     @Override
     public ArrayList<Integer> getAreaGroups(Context context, MapResource mapResource, Integer dataId) {
-        if (areaGroups == null) {
-            try {
-                init(context, mapResource);
-            } catch (Exception e) {
-                throw new IllegalStateException("Failed to init image map areas", e);
-            }
+        int[] targets = requireMapData(context, mapResource).getAreaGroups(dataId);
+        if (targets.length == 0) {
+            return null;
+        }
+        ArrayList<Integer> groups = new ArrayList<Integer>(targets.length);
+        for (int target : targets) {
+            groups.add(target);
         }
-        return areaGroups.get(dataId);
+        return groups;
     }
 }
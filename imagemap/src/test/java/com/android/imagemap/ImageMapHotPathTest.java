@@ -0,0 +1,454 @@
+package com.android.imagemap;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint.Style;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.MotionEvent.PointerCoords;
+import android.view.MotionEvent.PointerProperties;
+import android.view.ViewGroup.LayoutParams;
+
+import com.android.imagemap.core.IntList;
+import com.android.imagemap.core.tiles.DirectoryTileStore;
+import com.android.imagemap.core.tiles.TilePyramid;
+import com.android.imagemap.core.tiles.TileRenderer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.annotation.LooperMode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Drives gestures and highlight updates through an attached {@link ImageMap}
+ * showing a large generated map, and checks that steady state frames do not
+ * allocate. Gestures are also run with labels shown and with the image
+ * streamed from a tile pyramid. Graphics run natively, so only Java allocations of the view and
+ * the framework code it calls are counted. Median frame times are appended
+ * to build/hot-path-baselines.txt of the module to compare runs, or to the
+ * file named by the {@value #BASELINES_PROPERTY} system property.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ImageMapHotPathTest {
+
+    private static final int COLUMNS = 150;
+    private static final int ROWS = 100;
+    private static final int CELL = 40;
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 1920;
+    private static final int FRAMES = 300;
+    private static final int TILE_SIZE = 256;
+    private static final int TILE_CACHE_BYTES = 96 * 1024 * 1024;
+    private static final long LOAD_TIMEOUT_MS = 30000;
+    /**
+     * Set by the build to the baseline file in the module's build directory.
+     */
+    private static final String BASELINES_PROPERTY = "imagemap.hotPathBaselines";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private ImageMap map;
+    private Bitmap target;
+    private Canvas canvas;
+    private long downTime;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(THREADS.isThreadAllocatedMemorySupported());
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        downTime = SystemClock.uptimeMillis();
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        map = new ImageMap(activity, Robolectric.buildAttributeSet().build());
+        Bitmap image = Bitmap.createBitmap(COLUMNS * CELL, ROWS * CELL, Bitmap.Config.ARGB_8888);
+        // Remote keys are not read back from disk, the drawable is all there is.
+        map.setImageFile("http://localhost/floor.png", new BitmapDrawable(activity.getResources(), image));
+        map.setMap(new MapResource(generateMap()));
+        activity.setContentView(map, new LayoutParams(VIEW_WIDTH, VIEW_HEIGHT));
+        target = Bitmap.createBitmap(VIEW_WIDTH, VIEW_HEIGHT, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(target);
+        awaitMap();
+    }
+
+    @After
+    public void tearDown() {
+        if (target != null) {
+            target.recycle();
+        }
+    }
+
+    @Test
+    public void dragDoesNotAllocate() throws Exception {
+        drag("drag");
+    }
+
+    @Test
+    public void pinchDoesNotAllocate() throws Exception {
+        pinch("pinch");
+    }
+
+    @Test
+    public void labelledDragDoesNotAllocate() throws Exception {
+        showLabels();
+        drag("labelled drag");
+    }
+
+    @Test
+    public void labelledPinchDoesNotAllocate() throws Exception {
+        showLabels();
+        pinch("labelled pinch");
+    }
+
+    @Test
+    public void tiledDragDoesNotAllocate() throws Exception {
+        showTiles();
+        drag("tiled drag");
+    }
+
+    @Test
+    public void tiledPinchDoesNotAllocate() throws Exception {
+        showTiles();
+        pinch("tiled pinch");
+    }
+
+    private void drag(String name) throws Exception {
+        MotionEvent[] moves = new MotionEvent[FRAMES];
+        for (int k = 0; k < FRAMES; k++) {
+            // Back and forth, so the viewport moves on every frame without
+            // hitting the image edges for long.
+            float offset = (k % 100 < 50 ? k % 50 : 50 - k % 50) * 12;
+            moves[k] = event(MotionEvent.ACTION_MOVE, k + 1, 900 - offset, 1500 - offset);
+        }
+        MotionEvent[] start = {event(MotionEvent.ACTION_DOWN, 0, 900, 1500)};
+        MotionEvent up = event(MotionEvent.ACTION_UP, FRAMES + 1, 900, 1500);
+
+        warmUp(start, moves, up);
+
+        dispatch(start);
+        assertFramesDoNotAllocate(name, moves);
+        map.dispatchTouchEvent(up);
+    }
+
+    private void pinch(String name) throws Exception {
+        MotionEvent[] moves = new MotionEvent[FRAMES];
+        for (int k = 0; k < FRAMES; k++) {
+            float spread = 200 + (k % 100 < 50 ? k % 50 : 50 - k % 50) * 8;
+            moves[k] = pinch(MotionEvent.ACTION_MOVE, k + 1, spread);
+        }
+        MotionEvent[] start = {
+                event(MotionEvent.ACTION_DOWN, 0, 540 - 200, 960),
+                pinch(MotionEvent.ACTION_POINTER_DOWN | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), 0, 200)
+        };
+        MotionEvent up = pinch(MotionEvent.ACTION_POINTER_UP
+                | (1 << MotionEvent.ACTION_POINTER_INDEX_SHIFT), FRAMES + 1, 200);
+
+        warmUp(start, moves, up);
+
+        dispatch(start);
+        assertFramesDoNotAllocate(name, moves);
+        map.dispatchTouchEvent(up);
+    }
+
+    /**
+     * Repeats the gesture to warm up class loading, pools and the JIT, until
+     * one run does not allocate or the load timeout passes. Tiles decode in
+     * real time in the background, so tiled gestures may take a few runs
+     * until all tiles they reach are cached.
+     */
+    private void warmUp(MotionEvent[] start, MotionEvent[] moves, MotionEvent end)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MS;
+        long allocated;
+        do {
+            dispatch(start);
+            allocated = runFrames(moves);
+            map.dispatchTouchEvent(end);
+            idle();
+            Thread.sleep(10);
+            idle();
+        } while (allocated != 0 && System.currentTimeMillis() < deadline);
+    }
+
+    private void dispatch(MotionEvent[] events) {
+        for (MotionEvent event : events) {
+            map.dispatchTouchEvent(event);
+        }
+    }
+
+    @Test
+    public void highlightUpdatesDoNotAllocate() throws IOException {
+        PaintType occupied = map.getDefaultPaintType();
+        PaintType reserved = new PaintType(Style.STROKE, 0xff0000ff);
+        PaintType[] styles = {occupied, reserved};
+        int[][] selections = new int[8][];
+        for (int s = 0; s < selections.length; s++) {
+            selections[s] = new int[64];
+            for (int k = 0; k < selections[s].length; k++) {
+                selections[s][k] = (s * 1187 + k * 37) % (COLUMNS * ROWS);
+            }
+        }
+
+        for (int k = 0; k < FRAMES; k++) {
+            showAreasFrame(selections[k % selections.length], styles);
+        }
+
+        long[] times = new long[FRAMES];
+        long calibration = allocatedBytes();
+        long overhead = allocatedBytes() - calibration;
+        long allocated = 0;
+        for (int k = 0; k < FRAMES; k++) {
+            long start = allocatedBytes();
+            long time = System.nanoTime();
+            showAreasFrame(selections[k % selections.length], styles);
+            times[k] = System.nanoTime() - time;
+            allocated += allocatedBytes() - start - overhead;
+            idle();
+        }
+        recordBaseline("highlights", times);
+        assertEquals("bytes allocated by " + FRAMES + " highlight frames", 0, allocated);
+    }
+
+    private void showAreasFrame(int[] areas, PaintType[] styles) {
+        map.showAreasSync(areas, styles);
+        map.draw(canvas);
+    }
+
+    /**
+     * Dispatches the events, drawing a frame after each, and checks that
+     * none of them allocated.
+     */
+    private void assertFramesDoNotAllocate(String name, MotionEvent[] events) throws IOException {
+        long[] times = new long[events.length];
+        long calibration = allocatedBytes();
+        long overhead = allocatedBytes() - calibration;
+        long allocated = 0;
+        for (int k = 0; k < events.length; k++) {
+            long start = allocatedBytes();
+            long time = System.nanoTime();
+            map.dispatchTouchEvent(events[k]);
+            map.draw(canvas);
+            times[k] = System.nanoTime() - time;
+            allocated += allocatedBytes() - start - overhead;
+            // Runs the coalesced redraw outside of the measured frame, the
+            // traversal it schedules is driven by Robolectric, not the view.
+            idle();
+        }
+        recordBaseline(name, times);
+        assertEquals("bytes allocated by " + events.length + " " + name + " frames", 0, allocated);
+    }
+
+    /**
+     * @return bytes allocated by dispatching the events and drawing frames,
+     * not counting the posted work run between frames
+     */
+    private long runFrames(MotionEvent[] events) {
+        long calibration = allocatedBytes();
+        long overhead = allocatedBytes() - calibration;
+        long allocated = 0;
+        for (MotionEvent event : events) {
+            long start = allocatedBytes();
+            map.dispatchTouchEvent(event);
+            map.draw(canvas);
+            allocated += allocatedBytes() - start - overhead;
+            idle();
+        }
+        return allocated;
+    }
+
+    /**
+     * Shows the titles of the areas, placed even where they are wider than
+     * their room, and waits until the labels are built.
+     */
+    private void showLabels() throws InterruptedException {
+        map.setLabelColor(Color.RED);
+        map.setLabelsFitToArea(false);
+        map.setLabelsEnabled(true);
+        // The image is transparent and nothing is highlighted, so only
+        // labels leave pixels behind.
+        int[] row = new int[VIEW_WIDTH];
+        long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MS;
+        while (true) {
+            assertTrue("labels not built", System.currentTimeMillis() < deadline);
+            idle();
+            target.eraseColor(Color.TRANSPARENT);
+            map.draw(canvas);
+            for (int y = 0; y < VIEW_HEIGHT; y++) {
+                target.getPixels(row, 0, VIEW_WIDTH, 0, y, VIEW_WIDTH, 1);
+                for (int pixel : row) {
+                    if (Color.alpha(pixel) != 0) {
+                        return;
+                    }
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Replaces the image by a tile pyramid of the same size, with a cache
+     * large enough for all tiles the gestures reach.
+     */
+    private void showTiles() throws IOException {
+        final TilePyramid pyramid = new TilePyramid(COLUMNS * CELL, ROWS * CELL, TILE_SIZE, "png");
+        File directory = folder.newFolder("pyramid");
+        DirectoryTileStore.write(directory, pyramid, new TileRenderer() {
+            private final Map<String, byte[]> tiles = new HashMap<>();
+
+            @Override
+            public byte[] renderTile(int level, int column, int row) {
+                int width = Math.min(TILE_SIZE, pyramid.getLevelWidth(level) - column * TILE_SIZE);
+                int height = Math.min(TILE_SIZE, pyramid.getLevelHeight(level) - row * TILE_SIZE);
+                String size = width + "x" + height;
+                byte[] tile = tiles.get(size);
+                if (tile == null) {
+                    Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                    bitmap.eraseColor(Color.LTGRAY);
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+                    bitmap.recycle();
+                    tile = out.toByteArray();
+                    tiles.put(size, tile);
+                }
+                return tile;
+            }
+        });
+        map.setTileCacheSize(TILE_CACHE_BYTES);
+        map.setImageTiles(new DirectoryTileStore(directory));
+        idle();
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private void awaitMap() throws InterruptedException {
+        IntList found = new IntList();
+        // The Robolectric clock stands still, the map is parsed in real time.
+        long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MS;
+        while (found.isEmpty()) {
+            assertTrue("map not loaded", System.currentTimeMillis() < deadline);
+            idle();
+            map.findAreasInRect(0, 0, VIEW_WIDTH, VIEW_HEIGHT, found);
+            if (found.isEmpty()) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private MotionEvent event(int action, int frame, float x, float y) {
+        return MotionEvent.obtain(downTime, downTime + frame * 16L, action, x, y, 0);
+    }
+
+    private MotionEvent pinch(int action, int frame, float spread) {
+        PointerProperties[] properties = new PointerProperties[2];
+        PointerCoords[] coords = new PointerCoords[2];
+        for (int p = 0; p < 2; p++) {
+            properties[p] = new PointerProperties();
+            properties[p].id = p;
+            properties[p].toolType = MotionEvent.TOOL_TYPE_FINGER;
+            coords[p] = new PointerCoords();
+            coords[p].x = VIEW_WIDTH / 2f + (p == 0 ? -spread : spread);
+            coords[p].y = VIEW_HEIGHT / 2f;
+            coords[p].pressure = 1;
+            coords[p].size = 1;
+        }
+        return MotionEvent.obtain(downTime, downTime + frame * 16L, action, 2, properties, coords,
+                0, 0, 1, 1, 0, 0, 0, 0);
+    }
+
+    /**
+     * A grid of rooms titled by their number, every fourth one an L shaped
+     * polygon, grouped into departments of ten rooms.
+     */
+    private static String generateMap() {
+        StringBuilder xml = new StringBuilder("<map name=\"floor\">");
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                int left = column * CELL + 2;
+                int top = row * CELL + 2;
+                int right = left + CELL - 4;
+                int bottom = top + CELL - 4;
+                int id = row * COLUMNS + column;
+                if (id % 4 == 0) {
+                    int midX = (left + right) / 2;
+                    int midY = (top + bottom) / 2;
+                    xml.append("<area shape=\"poly\" coords=\"")
+                            .append(left).append(',').append(top).append(',')
+                            .append(midX).append(',').append(top).append(',')
+                            .append(midX).append(',').append(midY).append(',')
+                            .append(right).append(',').append(midY).append(',')
+                            .append(right).append(',').append(bottom).append(',')
+                            .append(left).append(',').append(bottom);
+                } else {
+                    xml.append("<area shape=\"rect\" coords=\"")
+                            .append(left).append(',').append(top).append(',')
+                            .append(right).append(',').append(bottom);
+                }
+                xml.append("\" title=\"").append(id)
+                        .append("\" href=\"").append(id / 10).append("\" target=\"").append(id % 10).append("\"/>");
+            }
+        }
+        return xml.append("</map>").toString();
+    }
+
+    /**
+     * Appends the median and 90th percentile frame time to the baseline file
+     * of the module; timings are recorded, not asserted, as they depend on
+     * the machine running the tests. Runs outside of the build, for example
+     * from an IDE, record into the temporary directory.
+     */
+    private static void recordBaseline(String name, long[] times) throws IOException {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        String line = String.format("%s median=%dus p90=%dus frames=%d",
+                name, sorted[sorted.length / 2] / 1000, sorted[sorted.length * 9 / 10] / 1000, sorted.length);
+        String path = System.getProperty(BASELINES_PROPERTY);
+        File file = path != null ? new File(path)
+                : new File(System.getProperty("java.io.tmpdir"), "hot-path-baselines.txt");
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        FileWriter writer = new FileWriter(file, true);
+        try {
+            writer.write(line + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.android.imagemap;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Paint.Style;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.os.Looper;
+
+import com.android.imagemap.core.IntList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.annotation.LooperMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Recreates the activity of an {@link ImageMap} as for a rotation. The image
+ * and map files are deleted before, so the recreated view can only show
+ * them if it takes over what the destroyed view held.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ImageMapRecreationTest {
+
+    private static final long LOAD_TIMEOUT_MS = 10000;
+    private static final String MAP = "<map name=\"recreation\">"
+            + "<area shape=\"rect\" coords=\"0,0,400,300\" href=\"1\"/>"
+            + "<area shape=\"rect\" coords=\"400,300,800,600\" href=\"2\"/>"
+            + "</map>";
+
+    private File image;
+    private File map;
+
+    @Before
+    public void setUp() throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "recreation-" + System.nanoTime());
+        assertTrue(directory.mkdirs());
+        image = new File(directory, "floor.png");
+        Bitmap bitmap = Bitmap.createBitmap(800, 600, Bitmap.Config.ARGB_8888);
+        OutputStream out = new FileOutputStream(image);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } finally {
+            out.close();
+        }
+        map = new File(directory, "floor.xml");
+        out = new FileOutputStream(map);
+        try {
+            out.write(MAP.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        MapActivity.imagePath = image.getPath();
+        MapActivity.mapPath = map.getPath();
+    }
+
+    @Test
+    public void recreatedViewRestoresStateAndReusesImageAndMap() throws Exception {
+        ActivityController<MapActivity> controller = Robolectric.buildActivity(MapActivity.class).setup();
+        ImageMap before = controller.get().map;
+        awaitMap(before);
+        before.scaleIn();
+        before.centerOn(300, 200);
+        PaintType reserved = new PaintType(Style.STROKE, Color.BLUE);
+        before.getHighlights().show(0, before.getDefaultPaintType());
+        before.getHighlights().show(1, reserved);
+        before.invalidateHighlights();
+        before.setSelectionMode(ImageMap.SELECTION_MODE_RECTANGLE);
+        float scale = before.getScale();
+        RectF viewport = new RectF();
+        before.getViewport(viewport);
+        Drawable drawable = before.getDrawable();
+
+        assertTrue(image.delete());
+        assertTrue(map.delete());
+        controller.recreate();
+        idle();
+
+        ImageMap after = controller.get().map;
+        assertNotSame(before, after);
+        assertSame("image decoded again", drawable, after.getDrawable());
+        awaitMap(after);
+
+        assertEquals(scale, after.getScale(), 1e-4f);
+        RectF restored = new RectF();
+        after.getViewport(restored);
+        assertEquals(viewport.left, restored.left, 0.01f);
+        assertEquals(viewport.top, restored.top, 0.01f);
+        assertEquals(viewport.right, restored.right, 0.01f);
+        assertEquals(viewport.bottom, restored.bottom, 0.01f);
+        assertEquals(ImageMap.SELECTION_MODE_RECTANGLE, after.getSelectionMode());
+        Highlights highlights = after.getHighlights();
+        assertSame(after.getDefaultPaintType(), highlights.getStyle(0));
+        assertEquals(reserved.color, highlights.getStyle(1).color);
+        assertEquals(reserved.style, highlights.getStyle(1).style);
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    /**
+     * Waits for the map, which is loaded in the background.
+     */
+    private static void awaitMap(ImageMap view) throws InterruptedException {
+        IntList found = new IntList();
+        long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MS;
+        while (found.isEmpty()) {
+            assertTrue("map not loaded", System.currentTimeMillis() < deadline);
+            idle();
+            view.findAreasInRect(0, 0, 800, 600, found);
+            if (found.isEmpty()) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    /**
+     * Shows the image and map files set by the test in a view that saves its
+     * state.
+     */
+    public static class MapActivity extends Activity {
+
+        static String imagePath;
+        static String mapPath;
+
+        ImageMap map;
+
+        @Override
+        protected void onCreate(Bundle savedInstanceState) {
+            super.onCreate(savedInstanceState);
+            map = new ImageMap(this, Robolectric.buildAttributeSet().build());
+            map.setId(1);
+            map.setImageFile(imagePath);
+            map.setMap(new MapResource(ResourceType.LOCAL_FILE, mapPath));
+            setContentView(map);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.android.imagemap;
+
+import android.content.Context;
+import android.graphics.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Translation between the document order of a legacy
+ * {@link ImageMapResourcesCache} and the area indices of the shared map.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class LegacyResourceCacheTest {
+
+    private static final int[] DOCUMENT_IDS = {7, 3, 5};
+
+    private Context context;
+    private MapResource resource;
+    private Path[] legacyPaths;
+    private LegacyResourceCache cache;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        resource = new MapResource("<map name=\"" + System.nanoTime() + "\">"
+                + "<area shape=\"rect\" coords=\"0,0,10,10\" href=\"7\"/>"
+                + "<area shape=\"rect\" coords=\"20,0,30,10\" href=\"3\"/>"
+                + "<area shape=\"rect\" coords=\"40,0,50,10\" href=\"5\"/>"
+                + "</map>");
+        legacyPaths = new Path[DOCUMENT_IDS.length];
+        for (int i = 0; i < legacyPaths.length; i++) {
+            legacyPaths[i] = new Path();
+        }
+        cache = new LegacyResourceCache(new DocumentOrderCache(), MapRegistry.acquire(resource));
+    }
+
+    @After
+    public void tearDown() {
+        MapRegistry.release(resource);
+    }
+
+    @Test
+    public void pathsAreReorderedToAreaIndices() throws Exception {
+        Path[] paths = cache.getAreaPaths(context, resource);
+        assertEquals(3, paths.length);
+        assertSame(legacyPaths[1], paths[0]);
+        assertSame(legacyPaths[2], paths[1]);
+        assertSame(legacyPaths[0], paths[2]);
+        assertSame(paths, cache.getAreaPaths(context, resource));
+    }
+
+    @Test
+    public void idsAreLookedUpInTheLegacyCache() {
+        assertEquals(3, cache.getDataId(context, resource, 0));
+        assertEquals(7, cache.getDataId(context, resource, 2));
+        assertEquals(2, cache.getAreaId(context, resource, 7));
+        assertEquals(1, cache.getAreaId(context, resource, 5, -1));
+        assertEquals(-1, cache.getAreaId(context, resource, 9));
+        assertEquals(Arrays.asList(0), cache.getAreaGroups(context, resource, 3));
+    }
+
+    /**
+     * Indexes areas in document order, as the caches written against the
+     * original library did.
+     */
+    private class DocumentOrderCache implements ImageMapResourcesCache {
+
+        @Override
+        public Path[] getAreaPaths(Context context, MapResource resource) {
+            return legacyPaths;
+        }
+
+        @Override
+        public int getDataId(Context context, MapResource resource, Integer pathIndex) {
+            return DOCUMENT_IDS[pathIndex];
+        }
+
+        @Override
+        public int getAreaId(Context context, MapResource resource, Integer dataId, Integer target) {
+            for (int i = 0; i < DOCUMENT_IDS.length; i++) {
+                if (DOCUMENT_IDS[i] == dataId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int getAreaId(Context context, MapResource resource, Integer dataId) {
+            return getAreaId(context, resource, dataId, -1);
+        }
+
+        @Override
+        public ArrayList<Integer> getAreaGroups(Context context, MapResource resource, Integer dataId) {
+            return new ArrayList<>(Arrays.asList(0));
+        }
+    }
+}
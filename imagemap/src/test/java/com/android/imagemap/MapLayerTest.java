@@ -0,0 +1,229 @@
+package com.android.imagemap;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint.Style;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.ViewGroup.LayoutParams;
+
+import com.android.imagemap.core.IntList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.annotation.LooperMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Drawing order, visibility and tap routing of {@link MapLayer}s over the
+ * view's own map. The image is shown at its natural size, so view and image
+ * coordinates are the same.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class MapLayerTest {
+
+    private static final int SIZE = 400;
+    private static final long LOAD_TIMEOUT_MS = 10000;
+    /**
+     * One area covering the top left quarter of the image.
+     */
+    private static final String QUARTER = "<map name=\"quarter\">"
+            + "<area shape=\"rect\" coords=\"0,0,200,200\" href=\"1\"/>"
+            + "</map>";
+    private static final String WHOLE = "<map name=\"whole\">"
+            + "<area shape=\"rect\" coords=\"0,0,400,400\" href=\"2\"/>"
+            + "</map>";
+
+    private ImageMap map;
+    private Bitmap target;
+    private Canvas canvas;
+    private MapLayer tappedLayer;
+    private int tappedArea = -1;
+
+    @Before
+    public void setUp() throws Exception {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        map = new ImageMap(activity, Robolectric.buildAttributeSet().build());
+        Bitmap image = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        map.setImageFile("http://localhost/layers.png", new BitmapDrawable(activity.getResources(), image));
+        map.setMap(new MapResource(QUARTER));
+        activity.setContentView(map, new LayoutParams(SIZE, SIZE));
+        map.setImageMapLayerListener(new ImageMapLayerListener() {
+            @Override
+            public void onLayerAreaTapped(MapLayer layer, int areaId, int dataId) {
+                tappedLayer = layer;
+                tappedArea = areaId;
+            }
+        });
+        map.setImageMapTapListener(new ImageMapTapListener() {
+            @Override
+            public void onAreaTapped(int areaId, int dataId) {
+                tappedLayer = null;
+                tappedArea = areaId;
+            }
+        });
+        target = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(target);
+        awaitMap();
+    }
+
+    @After
+    public void tearDown() {
+        if (target != null) {
+            target.recycle();
+        }
+    }
+
+    @Test
+    public void hiddenLayersAreNotDrawn() throws Exception {
+        MapLayer layer = addLayer();
+        layer.setDefaultStyle(new PaintType(Style.FILL, Color.RED));
+        layer.showArea(0);
+        assertEquals(Color.RED, pixelAt(100, 100));
+
+        layer.setVisible(false);
+        assertEquals(Color.TRANSPARENT, pixelAt(100, 100));
+    }
+
+    @Test
+    public void hiddenLayersAreNotHitTested() throws Exception {
+        MapLayer layer = addLayer();
+        layer.setHitPriority(1);
+        tap(100, 100);
+        assertSame(layer, tappedLayer);
+        assertEquals(0, tappedArea);
+
+        layer.setVisible(false);
+        assertEquals(-1, layer.findArea(100, 100));
+        tap(100, 100);
+        assertNull("the view's own map wins", tappedLayer);
+        assertEquals(0, tappedArea);
+    }
+
+    @Test
+    public void theUpperLayerWinsTiesOfPriority() throws Exception {
+        MapLayer lower = addLayer();
+        MapLayer upper = addLayer();
+        lower.setHitPriority(1);
+        upper.setHitPriority(1);
+        tap(100, 100);
+        assertSame(upper, tappedLayer);
+
+        lower.setZOrder(1);
+        tap(100, 100);
+        assertSame(lower, tappedLayer);
+
+        upper.setHitPriority(2);
+        tap(100, 100);
+        assertSame(upper, tappedLayer);
+    }
+
+    @Test
+    public void layersWinTiesAgainstTheViewsOwnMap() throws Exception {
+        MapLayer layer = addLayer(WHOLE);
+        tap(100, 100);
+        assertSame(layer, tappedLayer);
+
+        layer.setHitPriority(-1);
+        tap(100, 100);
+        assertNull(tappedLayer);
+        assertEquals(0, tappedArea);
+
+        // Outside of the view's own map a layer wins at any priority.
+        tap(300, 300);
+        assertSame(layer, tappedLayer);
+    }
+
+    @Test
+    public void layersAreOrderedByZOrderThenByAddition() {
+        MapLayer first = map.addLayer(new MapResource(QUARTER));
+        MapLayer second = map.addLayer(new MapResource(QUARTER));
+        MapLayer third = map.addLayer(new MapResource(QUARTER));
+        assertLayers(first, second, third);
+
+        first.setZOrder(2);
+        assertLayers(second, third, first);
+
+        third.setZOrder(-1);
+        assertLayers(third, second, first);
+
+        second.setZOrder(2);
+        assertLayers(third, first, second);
+    }
+
+    private void assertLayers(MapLayer... expected) {
+        assertEquals(expected.length, map.getLayerCount());
+        for (int k = 0; k < expected.length; k++) {
+            assertSame("layer " + k, expected[k], map.getLayerAt(k));
+        }
+    }
+
+    private MapLayer addLayer() throws InterruptedException {
+        return addLayer(QUARTER);
+    }
+
+    /**
+     * Adds a layer showing the map and waits until it is loaded.
+     */
+    private MapLayer addLayer(String xml) throws InterruptedException {
+        MapLayer layer = map.addLayer(new MapResource(xml));
+        long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MS;
+        while (!layer.isLoaded()) {
+            assertTrue("layer not loaded", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        idle();
+        return layer;
+    }
+
+    private void tap(float x, float y) {
+        tappedLayer = null;
+        tappedArea = -1;
+        long now = SystemClock.uptimeMillis();
+        MotionEvent event = MotionEvent.obtain(now, now, MotionEvent.ACTION_UP, x, y, 0);
+        map.onSingleTapConfirmed(event);
+        event.recycle();
+    }
+
+    private int pixelAt(int x, int y) {
+        idle();
+        target.eraseColor(Color.TRANSPARENT);
+        map.draw(canvas);
+        return target.getPixel(x, y);
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private void awaitMap() throws InterruptedException {
+        IntList found = new IntList();
+        long deadline = System.currentTimeMillis() + LOAD_TIMEOUT_MS;
+        while (found.isEmpty()) {
+            assertTrue("map not loaded", System.currentTimeMillis() < deadline);
+            idle();
+            map.findAreasInRect(0, 0, SIZE, SIZE, found);
+            if (found.isEmpty()) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.android.imagemap;
+
+import android.content.Context;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Reference counting of {@link MapRegistry}, the hand-off of preloaded maps
+ * and the retention of maps across configuration changes. Every test uses
+ * its own resource, as the registry is process wide.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class MapRegistryTest {
+
+    private Context context;
+    private String xml;
+    private MapResource resource;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        xml = "<map name=\"" + System.nanoTime() + "\">"
+                + "<area shape=\"rect\" coords=\"0,0,10,10\" href=\"1\"/>"
+                + "<area shape=\"rect\" coords=\"20,0,30,10\" href=\"2\"/>"
+                + "</map>";
+        resource = new MapResource(xml);
+    }
+
+    @Test
+    public void viewsShareTheMapUntilTheLastOneReleasesIt() {
+        SimpleResourceCache first = MapRegistry.acquire(resource);
+        SimpleResourceCache second = MapRegistry.acquire(new MapResource(xml));
+        assertSame(first, second);
+
+        MapRegistry.release(resource);
+        assertTrue(MapRegistry.isShared(resource));
+        MapRegistry.release(resource);
+        assertFalse(MapRegistry.isShared(resource));
+
+        SimpleResourceCache reloaded = MapRegistry.acquire(resource);
+        assertNotSame(first, reloaded);
+        MapRegistry.release(resource);
+        assertFalse(MapRegistry.isShared(resource));
+    }
+
+    @Test
+    public void firstViewTakesOverThePreloadedReference() throws Exception {
+        MapRegistry.preload(context, resource);
+        assertTrue(MapRegistry.isShared(resource));
+        // A second preload neither parses again nor adds a reference.
+        MapRegistry.preload(context, resource);
+
+        SimpleResourceCache cache = MapRegistry.acquire(resource);
+        assertEquals(2, cache.getMapData(context, resource).size());
+        MapRegistry.release(resource);
+        assertFalse(MapRegistry.isShared(resource));
+    }
+
+    @Test
+    public void preloadedMapIsKeptForLaterViews() {
+        MapRegistry.preload(context, resource);
+        SimpleResourceCache first = MapRegistry.acquire(resource);
+        SimpleResourceCache second = MapRegistry.acquire(resource);
+        assertSame(first, second);
+        MapRegistry.release(resource);
+        assertTrue(MapRegistry.isShared(resource));
+        MapRegistry.release(resource);
+        assertFalse(MapRegistry.isShared(resource));
+    }
+
+    @Test
+    public void mapReleasedForConfigurationChangeIsHandedToTheNewView() {
+        SimpleResourceCache cache = MapRegistry.acquire(resource);
+        MapRegistry.release(resource, true);
+        assertFalse(MapRegistry.isShared(resource));
+
+        shadowOf(Looper.getMainLooper()).idleFor(1, TimeUnit.SECONDS);
+        assertSame(cache, MapRegistry.acquire(resource));
+        MapRegistry.release(resource);
+
+        // Released for good this time.
+        assertNotSame(cache, MapRegistry.acquire(resource));
+        MapRegistry.release(resource);
+    }
+
+    @Test
+    public void retainedMapExpires() {
+        SimpleResourceCache cache = MapRegistry.acquire(resource);
+        MapRegistry.release(resource, true);
+        shadowOf(Looper.getMainLooper()).idleFor(6, TimeUnit.SECONDS);
+        assertNotSame(cache, MapRegistry.acquire(resource));
+        MapRegistry.release(resource);
+    }
+}